@@ -0,0 +1,202 @@
+package com.hello.suripu.analytics.benchmarks;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import com.hello.suripu.analytics.configuration.RedisConfiguration;
+import com.hello.suripu.analytics.models.WifiInfo;
+import com.hello.suripu.analytics.utils.DeviceTracker;
+import com.hello.suripu.analytics.utils.DeviceTrackerFactory;
+import com.hello.suripu.core.models.FirmwareInfo;
+
+import io.dropwizard.jackson.Jackson;
+import io.dropwizard.lifecycle.setup.LifecycleEnvironment;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import redis.clients.jedis.JedisPool;
+
+/**
+ * Redis write cost of each DeviceTracker method, per tracker implementation, batch size and number of distinct
+ * devices. Trackers are built by {@link DeviceTrackerFactory} exactly like the worker does, so a new tracker type or
+ * key layout only needs a new value of the tracker param to be compared head to head.
+ *
+ * Runs against {@link RespStandIn} unless -Dredis.host (and -Dredis.port, -Dredis.nodes for the sharded tracker) point
+ * to a real redis. Throughput is in batches per millisecond and the sample mode reports p50/p99 batch latency. Bytes
+ * sent per batch are printed after each iteration when running against the stand-in.
+ *
+ * mvn -Pjmh package exec:exec -Djmh.args="DeviceTrackerBenchmark -p tracker=PIPELINE,LUA"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DeviceTrackerBenchmark {
+
+    private static final int BATCHES = 64;
+
+    @Param({"PIPELINE", "LUA", "SHARDED"})
+    public String tracker;
+
+    @Param({"SET"})
+    public String hourlyActiveMode;
+
+    @Param({"false"})
+    public boolean throttle;
+
+    @Param({"100", "1000"})
+    public int batchSize;
+
+    @Param({"10000", "250000"})
+    public int cardinality;
+
+    private final List<RespStandIn> standIns = Lists.newArrayList();
+    private JedisPool jedisPool;
+    private DeviceTracker deviceTracker;
+
+    private final List<Map<String, Long>> senseBatches = Lists.newArrayListWithExpectedSize(BATCHES);
+    private final List<Map<String, FirmwareInfo>> firmwareBatches = Lists.newArrayListWithExpectedSize(BATCHES);
+    private final List<Map<String, WifiInfo>> wifiBatches = Lists.newArrayListWithExpectedSize(BATCHES);
+    private final List<Map<String, Integer>> uptimeBatches = Lists.newArrayListWithExpectedSize(BATCHES);
+
+    private final AtomicLong next = new AtomicLong();
+    private final AtomicLong batchesSent = new AtomicLong();
+    private long bytesAtIterationStart;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        final Map<String, Object> redis = Maps.newHashMap();
+        redis.put("tracker", tracker);
+        redis.put("hourly_active_mode", hourlyActiveMode);
+        redis.put("last_seen_throttle", ImmutableMap.of("enabled", throttle));
+        redis.put("pool", ImmutableMap.of("max_total", 16, "max_idle", 16));
+
+        final String host = System.getProperty("redis.host");
+        if (host != null) {
+            redis.put("host", host);
+            redis.put("port", Integer.getInteger("redis.port", 6379));
+            redis.put("nodes", Lists.newArrayList(System.getProperty("redis.nodes", host).split(",")));
+        } else {
+            final List<String> nodes = Lists.newArrayList();
+            for (int i = 0; i < ("SHARDED".equals(tracker) ? 2 : 1); i++) {
+                final RespStandIn standIn = new RespStandIn();
+                standIns.add(standIn);
+                nodes.add(standIn.host() + ":" + standIn.port());
+            }
+            redis.put("host", standIns.get(0).host());
+            redis.put("port", standIns.get(0).port());
+            redis.put("nodes", nodes);
+        }
+
+        final RedisConfiguration configuration = Jackson.newObjectMapper().convertValue(redis, RedisConfiguration.class);
+        final MetricRegistry metrics = new MetricRegistry();
+        jedisPool = DeviceTrackerFactory.createJedisPool(configuration, metrics);
+        deviceTracker = DeviceTrackerFactory.create(configuration, jedisPool, metrics, new LifecycleEnvironment());
+
+        final Random random = new Random(42L);
+        final long now = System.currentTimeMillis();
+        for (int batch = 0; batch < BATCHES; batch++) {
+            final Map<String, Long> senses = Maps.newHashMapWithExpectedSize(batchSize);
+            final Map<String, FirmwareInfo> firmwares = Maps.newHashMapWithExpectedSize(batchSize);
+            final Map<String, WifiInfo> wifiInfos = Maps.newHashMapWithExpectedSize(batchSize);
+            final Map<String, Integer> uptimes = Maps.newHashMapWithExpectedSize(batchSize);
+            while (senses.size() < batchSize) {
+                final String deviceId = deviceId(random.nextInt(cardinality));
+                final long timestamp = now + batch * 1000L + senses.size();
+                final int firmware = random.nextInt(5);
+                senses.put(deviceId, timestamp);
+                firmwares.put(deviceId, new FirmwareInfo(Integer.toHexString(0x1000 + firmware), "1." + firmware + ".0", deviceId, timestamp));
+                wifiInfos.put(deviceId, new WifiInfo(-30 - random.nextInt(60), "hello-" + random.nextInt(1000)));
+                uptimes.put(deviceId, random.nextInt(86400 * 30));
+            }
+            senseBatches.add(senses);
+            firmwareBatches.add(firmwares);
+            wifiBatches.add(wifiInfos);
+            uptimeBatches.add(uptimes);
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void startIteration() {
+        bytesAtIterationStart = bytesReceived();
+        batchesSent.set(0);
+    }
+
+    @TearDown(Level.Iteration)
+    public void endIteration() {
+        final long batches = batchesSent.get();
+        if (!standIns.isEmpty() && batches > 0) {
+            System.out.println(String.format("bytes_sent_per_batch=%d", (bytesReceived() - bytesAtIterationStart) / batches));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        jedisPool.close();
+        for (final RespStandIn standIn : standIns) {
+            standIn.close();
+        }
+    }
+
+    @Benchmark
+    public void trackSenses() {
+        deviceTracker.trackSenses(senseBatches.get(nextBatch()));
+    }
+
+    @Benchmark
+    public void trackFirmwares() {
+        deviceTracker.trackFirmwares(firmwareBatches.get(nextBatch()));
+    }
+
+    @Benchmark
+    public void trackWifiInfo() {
+        deviceTracker.trackWifiInfo(wifiBatches.get(nextBatch()));
+    }
+
+    @Benchmark
+    public void trackUptime() {
+        deviceTracker.trackUptime(uptimeBatches.get(nextBatch()));
+    }
+
+    private int nextBatch() {
+        batchesSent.incrementAndGet();
+        return (int) (next.getAndIncrement() % BATCHES);
+    }
+
+    private long bytesReceived() {
+        long bytes = 0L;
+        for (final RespStandIn standIn : standIns) {
+            bytes += standIn.bytesReceived();
+        }
+        return bytes;
+    }
+
+    /**
+     * Same index, same id, so that batches overlap as much as the cardinality implies.
+     */
+    private static String deviceId(final int index) {
+        return String.format("%016X", index * 0x9E3779B97F4A7C15L);
+    }
+}
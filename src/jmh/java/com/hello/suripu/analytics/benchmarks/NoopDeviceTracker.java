@@ -0,0 +1,43 @@
+package com.hello.suripu.analytics.benchmarks;
+
+import com.hello.suripu.analytics.models.WifiInfo;
+import com.hello.suripu.analytics.utils.DeviceTracker;
+import com.hello.suripu.core.models.FirmwareInfo;
+
+import java.util.Map;
+
+/**
+ * Drops everything, so that processor benchmarks only measure decoding and analysis.
+ */
+public class NoopDeviceTracker implements DeviceTracker {
+
+    @Override
+    public boolean trackSenses(final Map<String, Long> activeSenses) {
+        return true;
+    }
+
+    @Override
+    public boolean trackPills(final Map<String, Long> activePills) {
+        return true;
+    }
+
+    @Override
+    public boolean trackFirmwares(final Map<String, FirmwareInfo> seenFirmwares) {
+        return true;
+    }
+
+    @Override
+    public boolean trackWifiInfo(final Map<String, WifiInfo> wifiInfos) {
+        return true;
+    }
+
+    @Override
+    public boolean trackUptime(final Map<String, Integer> uptimes) {
+        return true;
+    }
+
+    @Override
+    public boolean flush() {
+        return true;
+    }
+}
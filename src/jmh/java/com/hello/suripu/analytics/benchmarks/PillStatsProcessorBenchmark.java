@@ -0,0 +1,71 @@
+package com.hello.suripu.analytics.benchmarks;
+
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.kinesis.clientlibrary.interfaces.IRecordProcessor;
+import com.amazonaws.services.kinesis.clientlibrary.interfaces.IRecordProcessorCheckpointer;
+import com.amazonaws.services.kinesis.model.Record;
+import com.codahale.metrics.MetricRegistry;
+
+import com.hello.suripu.analytics.processors.PillStatsProcessorFactory;
+import com.hello.suripu.analytics.replay.Noop;
+import com.hello.suripu.analytics.replay.SyntheticPillRecords;
+import com.hello.suripu.analytics.utils.CheckpointWriter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * PillStatsProcessor.processRecords on synthetic batches, with a no-op device tracker and dynamo client. Scores are
+ * batches per second; multiply by batchSize for records.
+ *
+ * mvn -Pjmh package exec:exec -Djmh.args="PillStatsProcessorBenchmark -prof gc"
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PillStatsProcessorBenchmark {
+
+    @Param({"1000"})
+    public int senses;
+
+    @Param({"1000"})
+    public int batchSize;
+
+    @Param({"2"})
+    public int pillsPerRecord;
+
+    private List<Record> records;
+    private IRecordProcessor processor;
+    private final IRecordProcessorCheckpointer checkpointer = Noop.of(IRecordProcessorCheckpointer.class);
+
+    @Setup
+    public void setUp() {
+        records = new SyntheticPillRecords(42L, pillsPerRecord).batch(senses, batchSize);
+        final MetricRegistry metrics = new MetricRegistry();
+        final CheckpointWriter checkpointWriter = new CheckpointWriter(Noop.of(AmazonDynamoDB.class), "checkpoints",
+                CheckpointWriter.DEFAULT_MAX_PENDING, metrics);
+        processor = new PillStatsProcessorFactory(new NoopDeviceTracker(), checkpointWriter,
+                "batch_pill_data", metrics).createProcessor();
+        processor.initialize("shardId-000000000000");
+    }
+
+    @Benchmark
+    public void processRecords() {
+        processor.processRecords(records, checkpointer);
+    }
+}
@@ -0,0 +1,253 @@
+package com.hello.suripu.analytics.benchmarks;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Minimal in-process server speaking the redis protocol, enough for the device trackers to run against.
+ *
+ * Nothing is stored: writes are acknowledged with a plausible reply of the right type, MULTI/EXEC is honored so
+ * that jedis can build transaction responses, and SCRIPT LOAD returns the sha1 of the script. Bytes received are
+ * counted so benchmarks can report the wire cost of a batch. Replies to pipelined commands are flushed once the
+ * client has nothing more buffered, like redis does.
+ */
+public class RespStandIn implements Closeable {
+
+    private final static Logger LOGGER = LoggerFactory.getLogger(RespStandIn.class);
+
+    private static final byte[] CRLF = "\r\n".getBytes(Charsets.US_ASCII);
+    private static final byte[] OK = "+OK\r\n".getBytes(Charsets.US_ASCII);
+    private static final byte[] QUEUED = "+QUEUED\r\n".getBytes(Charsets.US_ASCII);
+    private static final byte[] PONG = "+PONG\r\n".getBytes(Charsets.US_ASCII);
+    private static final byte[] ONE = ":1\r\n".getBytes(Charsets.US_ASCII);
+    private static final byte[] NIL = "$-1\r\n".getBytes(Charsets.US_ASCII);
+
+    private static final Set<String> STATUS_COMMANDS = ImmutableSet.of(
+            "AUTH", "SELECT", "SET", "HMSET", "PFMERGE", "WATCH", "UNWATCH", "FLUSHALL", "FLUSHDB", "QUIT");
+
+    // only the command name and its first arguments are needed to reply, the rest is skipped
+    private static final int KEPT_ARGUMENTS = 3;
+
+    private final ServerSocket serverSocket;
+    private final ExecutorService executor;
+    private final AtomicLong bytesReceived = new AtomicLong();
+    private final AtomicLong commandsReceived = new AtomicLong();
+
+    public RespStandIn() throws IOException {
+        this.serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        this.executor = Executors.newCachedThreadPool(
+                new ThreadFactoryBuilder().setNameFormat("resp-stand-in-%d").setDaemon(true).build());
+        executor.submit(new Runnable() {
+            @Override
+            public void run() {
+                accept();
+            }
+        });
+    }
+
+    public String host() {
+        return serverSocket.getInetAddress().getHostAddress();
+    }
+
+    public int port() {
+        return serverSocket.getLocalPort();
+    }
+
+    public long bytesReceived() {
+        return bytesReceived.get();
+    }
+
+    public long commandsReceived() {
+        return commandsReceived.get();
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        executor.shutdownNow();
+    }
+
+    private void accept() {
+        while (!serverSocket.isClosed()) {
+            try {
+                final Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                executor.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        serve(socket);
+                    }
+                });
+            } catch (IOException e) {
+                if (!serverSocket.isClosed()) {
+                    LOGGER.error("error=resp-stand-in-accept-failure message={}", e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void serve(final Socket socket) {
+        try (final Socket closing = socket) {
+            final InputStream in = new BufferedInputStream(closing.getInputStream());
+            final OutputStream out = new BufferedOutputStream(closing.getOutputStream());
+            final Connection connection = new Connection(in, out);
+            while (connection.handle()) {
+                if (in.available() == 0) {
+                    out.flush();
+                }
+            }
+            out.flush();
+        } catch (EOFException e) {
+            LOGGER.debug("action=resp-stand-in-client-closed");
+        } catch (IOException e) {
+            LOGGER.debug("action=resp-stand-in-connection-closed message={}", e.getMessage());
+        }
+    }
+
+    private class Connection {
+        private final InputStream in;
+        private final OutputStream out;
+        private final List<String> queued = Lists.newArrayList();
+        private final byte[][] arguments = new byte[KEPT_ARGUMENTS][];
+        private boolean inMulti = false;
+
+        Connection(final InputStream in, final OutputStream out) {
+            this.in = in;
+            this.out = out;
+        }
+
+        /**
+         * Reads one command and replies to it.
+         *
+         * @return false once the client asked to quit
+         */
+        boolean handle() throws IOException {
+            final int argumentCount = readCommand();
+            commandsReceived.incrementAndGet();
+            final String command = new String(arguments[0], Charsets.US_ASCII).toUpperCase(Locale.ENGLISH);
+
+            switch (command) {
+                case "MULTI":
+                    inMulti = true;
+                    queued.clear();
+                    out.write(OK);
+                    return true;
+                case "EXEC":
+                    inMulti = false;
+                    writeLength('*', queued.size());
+                    for (final String queuedCommand : queued) {
+                        reply(queuedCommand, null);
+                    }
+                    queued.clear();
+                    return true;
+                case "DISCARD":
+                    inMulti = false;
+                    queued.clear();
+                    out.write(OK);
+                    return true;
+                default:
+                    if (inMulti) {
+                        queued.add(command);
+                        out.write(QUEUED);
+                        return true;
+                    }
+                    reply(command, argumentCount > 2 ? arguments[2] : null);
+                    return !"QUIT".equals(command);
+            }
+        }
+
+        private void reply(final String command, final byte[] scriptBody) throws IOException {
+            if ("PING".equals(command)) {
+                out.write(PONG);
+            } else if (STATUS_COMMANDS.contains(command)) {
+                out.write(OK);
+            } else if ("GET".equals(command)) {
+                out.write(NIL);
+            } else if ("SCRIPT".equals(command) && scriptBody != null) {
+                final byte[] sha = Hashing.sha1().hashBytes(scriptBody).toString().getBytes(Charsets.US_ASCII);
+                writeLength('$', sha.length);
+                out.write(sha);
+                out.write(CRLF);
+            } else {
+                out.write(ONE);
+            }
+        }
+
+        private int readCommand() throws IOException {
+            expect('*');
+            final int argumentCount = (int) readLength();
+            for (int i = 0; i < argumentCount; i++) {
+                expect('$');
+                final int length = (int) readLength();
+                if (i < KEPT_ARGUMENTS) {
+                    arguments[i] = new byte[length];
+                    ByteStreams.readFully(in, arguments[i]);
+                } else {
+                    ByteStreams.skipFully(in, length);
+                }
+                ByteStreams.skipFully(in, CRLF.length);
+                bytesReceived.addAndGet(length + CRLF.length);
+            }
+            return argumentCount;
+        }
+
+        private void expect(final char marker) throws IOException {
+            final int read = in.read();
+            if (read == -1) {
+                throw new EOFException();
+            }
+            bytesReceived.incrementAndGet();
+            if (read != marker) {
+                throw new IOException(String.format("Expected %s but got %s", marker, (char) read));
+            }
+        }
+
+        /**
+         * Reads the digits up to and including the CRLF.
+         */
+        private long readLength() throws IOException {
+            long value = 0;
+            int read;
+            while ((read = in.read()) != '\r') {
+                if (read == -1) {
+                    throw new EOFException();
+                }
+                value = value * 10 + (read - '0');
+                bytesReceived.incrementAndGet();
+            }
+            in.read();
+            bytesReceived.addAndGet(CRLF.length);
+            return value;
+        }
+
+        private void writeLength(final char marker, final int length) throws IOException {
+            out.write(marker);
+            out.write(Integer.toString(length).getBytes(Charsets.US_ASCII));
+            out.write(CRLF);
+        }
+    }
+}
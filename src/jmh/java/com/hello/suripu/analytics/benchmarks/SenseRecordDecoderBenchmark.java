@@ -0,0 +1,122 @@
+package com.hello.suripu.analytics.benchmarks;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.InvalidProtocolBufferException;
+
+import com.hello.suripu.analytics.decoders.DecodedSenseRecord;
+import com.hello.suripu.analytics.decoders.SenseRecordDecoder;
+import com.hello.suripu.analytics.replay.SyntheticSenseRecords;
+import com.hello.suripu.api.input.DataInputProtos;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Full parseFrom against {@link SenseRecordDecoder} on the same records, both reading every field analytics uses.
+ *
+ * mvn -Pjmh package exec:exec -Djmh.args="SenseRecordDecoderBenchmark"
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SenseRecordDecoderBenchmark {
+
+    private static final int RECORDS = 1024;
+
+    @Param({"15"})
+    public int periodicDataPerRecord;
+
+    @Param({"20"})
+    public int accessPointsPerRecord;
+
+    private ByteBuffer[] records;
+    private int next;
+
+    private final SenseRecordDecoder decoder = new SenseRecordDecoder();
+    private final DecodedSenseRecord decoded = new DecodedSenseRecord();
+
+    @Setup
+    public void setUp() {
+        final SyntheticSenseRecords generator = new SyntheticSenseRecords(42L, periodicDataPerRecord, accessPointsPerRecord, 5);
+        records = new ByteBuffer[RECORDS];
+        for (int i = 0; i < RECORDS; i++) {
+            records[i] = generator.next(generator.deviceId());
+        }
+    }
+
+    private ByteBuffer nextRecord() {
+        next = (next + 1) % RECORDS;
+        return records[next];
+    }
+
+    @Benchmark
+    public void parseFrom(final Blackhole blackhole) throws IOException {
+        final ByteBuffer buffer = nextRecord();
+        final DataInputProtos.BatchPeriodicDataWorker worker = DataInputProtos.BatchPeriodicDataWorker.parseFrom(
+                CodedInputStream.newInstance(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining()));
+        final DataInputProtos.batched_periodic_data data = worker.getData();
+        blackhole.consume(data.getDeviceId());
+        blackhole.consume(worker.getUptimeInSecond());
+        blackhole.consume(worker.getReceivedAt());
+        blackhole.consume(worker.getFirmwareTopVersion());
+        blackhole.consume(worker.getFirmwareMiddleVersion());
+        final String connectedSsid = data.getConnectedSsid();
+        for (final DataInputProtos.batched_periodic_data.wifi_access_point accessPoint : data.getScanList()) {
+            if (connectedSsid.equals(accessPoint.getSsid())) {
+                blackhole.consume(accessPoint.getRssi());
+                break;
+            }
+        }
+        for (final DataInputProtos.periodic_data periodicData : data.getDataList()) {
+            blackhole.consume(periodicData.getUnixTime());
+            blackhole.consume(periodicData.getWaveCount());
+            blackhole.consume(periodicData.getCo2());
+            blackhole.consume(periodicData.getPressure());
+            blackhole.consume(periodicData.getLight());
+            blackhole.consume(periodicData.getLightSensor().getUvCount());
+            blackhole.consume(periodicData.getDust());
+            blackhole.consume(periodicData.getHumidity());
+            blackhole.consume(periodicData.getTemperature());
+        }
+    }
+
+    @Benchmark
+    public void selectiveDecode(final Blackhole blackhole) throws InvalidProtocolBufferException {
+        decoder.decode(nextRecord(), decoded);
+        blackhole.consume(decoded.deviceId());
+        blackhole.consume(decoded.uptimeInSecond());
+        blackhole.consume(decoded.receivedAt());
+        blackhole.consume(decoded.firmwareTopVersion());
+        blackhole.consume(decoded.firmwareMiddleVersion());
+        blackhole.consume(decoded.connectedSsid(""));
+        blackhole.consume(decoded.connectedRssi(0));
+        for (int i = 0; i < decoded.periodicDataCount(); i++) {
+            blackhole.consume(decoded.unixTime(i));
+            blackhole.consume(decoded.waveCount(i));
+            blackhole.consume(decoded.co2(i));
+            blackhole.consume(decoded.pressure(i));
+            blackhole.consume(decoded.light(i));
+            blackhole.consume(decoded.uvCount(i));
+            blackhole.consume(decoded.dust(i));
+            blackhole.consume(decoded.humidity(i));
+            blackhole.consume(decoded.temperature(i));
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.hello.suripu.analytics.benchmarks;
+
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.kinesis.clientlibrary.interfaces.IRecordProcessorCheckpointer;
+import com.amazonaws.services.kinesis.model.Record;
+import com.codahale.metrics.MetricRegistry;
+
+import com.hello.suripu.analytics.processors.SenseStatsProcessor;
+import com.hello.suripu.analytics.processors.SenseStatsProcessorFactory;
+import com.hello.suripu.analytics.replay.Noop;
+import com.hello.suripu.analytics.replay.SyntheticSenseRecords;
+import com.hello.suripu.analytics.utils.CheckpointWriter;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+/**
+ * Fails the jmh build when SenseStatsProcessor.processRecords allocates more bytes per record than the budget.
+ *
+ * Runs the serial path on the calling thread with a no-op device tracker and measures with the per-thread
+ * allocation counter, so nothing but the processor hot path is counted. Raise the budget only with a reason:
+ * mvn -Pjmh verify -Dallocation.budget.bytes.per.record=...
+ */
+public class SenseStatsAllocationCheck {
+
+    private static final int DEVICES = 2000;
+    private static final int WARMUP_BATCHES = 2000;
+    private static final int MEASURED_BATCHES = 1000;
+
+    public static void main(final String[] args) {
+        final long budget = Long.getLong("allocation.budget.bytes.per.record", 1536L);
+
+        final List<Record> records = new SyntheticSenseRecords(42L, 15, 20, 5).batch(DEVICES, DEVICES);
+
+        final MetricRegistry metrics = new MetricRegistry();
+
+        final SenseStatsProcessor processor = (SenseStatsProcessor) new SenseStatsProcessorFactory(new NoopDeviceTracker(),
+                new CheckpointWriter(Noop.of(AmazonDynamoDB.class), "checkpoints", CheckpointWriter.DEFAULT_MAX_PENDING, metrics),
+                "sense_sensors_data", metrics).createProcessor();
+        processor.initialize("shardId-000000000000");
+        final IRecordProcessorCheckpointer checkpointer = Noop.of(IRecordProcessorCheckpointer.class);
+
+        for (int i = 0; i < WARMUP_BATCHES; i++) {
+            processor.processRecords(records, checkpointer);
+        }
+
+        final com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        final long threadId = Thread.currentThread().getId();
+        final long before = threadMXBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < MEASURED_BATCHES; i++) {
+            processor.processRecords(records, checkpointer);
+        }
+        final long allocated = threadMXBean.getThreadAllocatedBytes(threadId) - before;
+        final long perRecord = allocated / ((long) MEASURED_BATCHES * DEVICES);
+
+        System.out.println(String.format("allocated_bytes_per_record=%d budget=%d", perRecord, budget));
+        if (perRecord > budget) {
+            System.err.println("SenseStatsProcessor allocates more per record than its budget");
+            System.exit(1);
+        }
+    }
+}
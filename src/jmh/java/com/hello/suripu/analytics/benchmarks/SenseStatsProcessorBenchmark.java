@@ -0,0 +1,81 @@
+package com.hello.suripu.analytics.benchmarks;
+
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.kinesis.clientlibrary.interfaces.IRecordProcessor;
+import com.amazonaws.services.kinesis.clientlibrary.interfaces.IRecordProcessorCheckpointer;
+import com.amazonaws.services.kinesis.model.Record;
+import com.codahale.metrics.MetricRegistry;
+
+import com.hello.suripu.analytics.processors.SenseStatsProcessorFactory;
+import com.hello.suripu.analytics.replay.Noop;
+import com.hello.suripu.analytics.replay.SyntheticSenseRecords;
+import com.hello.suripu.analytics.utils.CheckpointWriter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SenseStatsProcessor.processRecords on synthetic batches, built by the production factory with a no-op device
+ * tracker and dynamo client. Scores are batches per second; multiply by batchSize for records.
+ *
+ * mvn -Pjmh package exec:exec -Djmh.args="SenseStatsProcessorBenchmark -prof gc"
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SenseStatsProcessorBenchmark {
+
+    @Param({"1000"})
+    public int devices;
+
+    @Param({"1000"})
+    public int batchSize;
+
+    @Param({"15"})
+    public int periodicDataPerRecord;
+
+    @Param({"20"})
+    public int accessPointsPerRecord;
+
+    @Param({"5"})
+    public int firmwareVersions;
+
+    @Param({"1", "4"})
+    public int lanes;
+
+    private List<Record> records;
+    private IRecordProcessor processor;
+    private final IRecordProcessorCheckpointer checkpointer = Noop.of(IRecordProcessorCheckpointer.class);
+
+    @Setup
+    public void setUp() {
+        records = new SyntheticSenseRecords(42L, periodicDataPerRecord, accessPointsPerRecord, firmwareVersions)
+                .batch(devices, batchSize);
+        final MetricRegistry metrics = new MetricRegistry();
+        final CheckpointWriter checkpointWriter = new CheckpointWriter(Noop.of(AmazonDynamoDB.class), "checkpoints",
+                CheckpointWriter.DEFAULT_MAX_PENDING, metrics);
+        processor = new SenseStatsProcessorFactory(new NoopDeviceTracker(), checkpointWriter,
+                "sense_sensors_data", metrics, lanes).createProcessor();
+        processor.initialize("shardId-000000000000");
+    }
+
+    @Benchmark
+    public void processRecords() {
+        processor.processRecords(records, checkpointer);
+    }
+}
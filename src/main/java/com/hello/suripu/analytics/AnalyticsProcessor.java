@@ -12,12 +12,18 @@ import com.amazonaws.services.kinesis.clientlibrary.lib.worker.Worker;
 import com.codahale.metrics.graphite.Graphite;
 import com.codahale.metrics.graphite.GraphiteReporter;
 import com.google.common.collect.ImmutableList;
+import com.hello.suripu.analytics.capture.CapturingRecordProcessorFactory;
 import com.hello.suripu.analytics.cli.CreateDynamoDBTables;
+import com.hello.suripu.analytics.cli.ReplayCommand;
+import com.hello.suripu.analytics.cli.SeekCheckpointCommand;
 import com.hello.suripu.analytics.configuration.AnalyticsConfiguration;
 import com.hello.suripu.analytics.processors.KinesisWorkerManager;
 import com.hello.suripu.analytics.processors.PillStatsProcessorFactory;
 import com.hello.suripu.analytics.processors.SenseStatsCommand;
 import com.hello.suripu.analytics.processors.SenseStatsProcessorFactory;
+import com.hello.suripu.analytics.utils.CheckpointWriter;
+import com.hello.suripu.analytics.utils.DeviceTracker;
+import com.hello.suripu.analytics.utils.DeviceTrackerFactory;
 import com.hello.suripu.coredropwizard.metrics.RegexMetricFilter;
 import io.dropwizard.Application;
 import io.dropwizard.setup.Bootstrap;
@@ -73,6 +79,8 @@ public class AnalyticsProcessor extends Application<AnalyticsConfiguration>
         bootstrap.addCommand(new SenseStatsCommand("sense_stats", "Analyzing incoming sense data."));
 //        bootstrap.addCommand(new PillStatsCommand("pill_stats", "Analyzing incoming pill data."));
         bootstrap.addCommand(new CreateDynamoDBTables());
+        bootstrap.addCommand(new ReplayCommand());
+        bootstrap.addCommand(new SeekCheckpointCommand());
     }
 
     @Override
@@ -120,20 +128,34 @@ public class AnalyticsProcessor extends Application<AnalyticsConfiguration>
         pillKinesisConfig.withKinesisEndpoint(configuration.getKinesisEndpoints().get(PILL_COMMAND_STREAM_NAME));
         pillKinesisConfig.withIdleTimeBetweenReadsInMillis(10000);
 
-        final JedisPool jedisPool = new JedisPool(
-                configuration.getRedisConfiguration().getHost(),
-                configuration.getRedisConfiguration().getPort()
+        final CheckpointWriter checkpointWriter = new CheckpointWriter(
+                checkpoinTrackerclient,
+                configuration.dynamoDBConfiguration().tables().get(CHECKPOINT_TABLE_NAME),
+                CheckpointWriter.DEFAULT_MAX_PENDING,
+                environment.metrics()
         );
+        environment.lifecycle().manage(checkpointWriter);
 
-        final IRecordProcessorFactory pillProcessorFactory = new PillStatsProcessorFactory(
+        final JedisPool jedisPool = DeviceTrackerFactory.createJedisPool(configuration.getRedisConfiguration(), environment.metrics());
+
+        final DeviceTracker deviceTracker = DeviceTrackerFactory.create(
+                configuration.getRedisConfiguration(),
                 jedisPool,
-                checkpoinTrackerclient,
+                environment.metrics(),
+                environment.lifecycle()
+        );
+
+        final IRecordProcessorFactory pillProcessorFactory = new PillStatsProcessorFactory(
+                deviceTracker,
+                checkpointWriter,
                 configuration.getKinesisStreams().get(PILL_COMMAND_STREAM_NAME),
-                configuration.dynamoDBConfiguration().tables().get(CHECKPOINT_TABLE_NAME),
-                environment.metrics()
+                environment.metrics(),
+                configuration.getCheckpoint()
         );
 
-        final Worker pillWorker = new Worker(pillProcessorFactory , pillKinesisConfig);
+        final Worker pillWorker = new Worker(
+                CapturingRecordProcessorFactory.wrapIfEnabled(pillProcessorFactory, configuration.getKinesisStreams().get(PILL_COMMAND_STREAM_NAME), configuration.getCapture()),
+                pillKinesisConfig);
         final ExecutorService executorService = environment.lifecycle()
                 .executorService("analytics")
                 .workQueue(new LinkedBlockingQueue(configuration.maxThreads()))
@@ -153,20 +175,31 @@ public class AnalyticsProcessor extends Application<AnalyticsConfiguration>
         kinesisConfig.withKinesisEndpoint(configuration.getKinesisEndpoints().get(SENSE_COMMAND_STREAM_NAME));
         kinesisConfig.withIdleTimeBetweenReadsInMillis(10000);
 
-        final IRecordProcessorFactory senseProcessorFactory = new SenseStatsProcessorFactory(
-                jedisPool,
-                checkpoinTrackerclient,
+        final SenseStatsProcessorFactory senseProcessorFactory = new SenseStatsProcessorFactory(
+                deviceTracker,
+                checkpointWriter,
                 configuration.getKinesisStreams().get(SENSE_COMMAND_STREAM_NAME),
-                configuration.dynamoDBConfiguration().tables().get(CHECKPOINT_TABLE_NAME),
-                environment.metrics()
+                environment.metrics(),
+                configuration.getSenseLanes(),
+                configuration.getCheckpoint(),
+                configuration.getLowUptimeFilter(),
+                configuration.getFirmwareUptime(),
+                configuration.getDataQualityRules(),
+                configuration.getNoisyDevices()
         );
 
-        final Worker senseWorker = new Worker(senseProcessorFactory, kinesisConfig);
+        final Worker senseWorker = new Worker(
+                CapturingRecordProcessorFactory.wrapIfEnabled(senseProcessorFactory, configuration.getKinesisStreams().get(SENSE_COMMAND_STREAM_NAME), configuration.getCapture()),
+                kinesisConfig);
 
 
         // Wiring
         environment.lifecycle().manage(new KinesisWorkerManager(executorService, pillWorker));
         environment.lifecycle().manage(new KinesisWorkerManager(executorService, senseWorker));
         environment.jersey().register(new ConfigurationResource(configuration));
+        environment.jersey().register(new NoisyDevicesResource(senseProcessorFactory.noisyDevices()));
+        environment.admin()
+                .addServlet("firmware-uptime", new FirmwareUptimeServlet(senseProcessorFactory.firmwareUptimeHistograms(), environment.getObjectMapper()))
+                .addMapping("/firmware-uptime");
     }
 }
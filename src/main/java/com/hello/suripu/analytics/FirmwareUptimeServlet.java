@@ -0,0 +1,61 @@
+package com.hello.suripu.analytics;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.Maps;
+import com.hello.suripu.analytics.utils.FirmwareUptimeHistograms;
+import org.HdrHistogram.Histogram;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Uptime distribution, in seconds, of each firmware version over the last complete interval.
+ */
+public class FirmwareUptimeServlet extends HttpServlet {
+
+    private final FirmwareUptimeHistograms firmwareUptimeHistograms;
+    private final ObjectMapper objectMapper;
+
+    public FirmwareUptimeServlet(final FirmwareUptimeHistograms firmwareUptimeHistograms, final ObjectMapper objectMapper) {
+        this.firmwareUptimeHistograms = firmwareUptimeHistograms;
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    protected void doGet(final HttpServletRequest request, final HttpServletResponse response) throws IOException {
+        final FirmwareUptimeHistograms.Snapshot snapshot = firmwareUptimeHistograms.latest();
+
+        final Map<String, Object> firmwares = Maps.newLinkedHashMap();
+        for (final Map.Entry<String, Histogram> entry : snapshot.histograms.entrySet()) {
+            firmwares.put(entry.getKey(), summary(entry.getValue()));
+        }
+        final Map<String, Object> body = Maps.newLinkedHashMap();
+        body.put("interval_start_millis", snapshot.startMillis);
+        body.put("interval_end_millis", snapshot.endMillis);
+        body.put("firmwares", firmwares);
+
+        response.setStatus(HttpServletResponse.SC_OK);
+        response.setContentType("application/json");
+        response.setHeader("Cache-Control", "must-revalidate,no-cache,no-store");
+        objectMapper.writeValue(response.getOutputStream(), body);
+    }
+
+    private static Map<String, Object> summary(final Histogram histogram) {
+        final Map<String, Object> summary = Maps.newLinkedHashMap();
+        summary.put("count", histogram.getTotalCount());
+        if (histogram.getTotalCount() == 0L) {
+            return summary;
+        }
+        summary.put("min", histogram.getMinValue());
+        summary.put("p01", histogram.getValueAtPercentile(1.0));
+        summary.put("p05", histogram.getValueAtPercentile(5.0));
+        summary.put("p50", histogram.getValueAtPercentile(50.0));
+        summary.put("p95", histogram.getValueAtPercentile(95.0));
+        summary.put("max", histogram.getMaxValue());
+        summary.put("mean", histogram.getMean());
+        return summary;
+    }
+}
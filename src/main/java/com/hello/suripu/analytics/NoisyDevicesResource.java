@@ -0,0 +1,73 @@
+package com.hello.suripu.analytics;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.hello.suripu.analytics.utils.NoisyDevices;
+import com.hello.suripu.analytics.utils.SpaceSavingSketch;
+
+import javax.ws.rs.DefaultValue;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.MediaType;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Devices and firmware versions with the most bad readings of each data quality metric, across all shards of the
+ * worker. Counts are upper bounds, at most error above the true count.
+ */
+@Path("/noisy-devices")
+public class NoisyDevicesResource {
+
+    private static final int DEFAULT_TOP = 10;
+
+    private final NoisyDevices noisyDevices;
+
+    public NoisyDevicesResource(final NoisyDevices noisyDevices) {
+        this.noisyDevices = noisyDevices;
+    }
+
+    /**
+     * @param metric only this data quality metric, e.g. high-co2, all when left out
+     * @param current the interval in progress instead of the last complete one
+     */
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    public Map<String, Object> noisyDevices(@QueryParam("metric") final String metric,
+                                            @QueryParam("current") @DefaultValue("false") final boolean current,
+                                            @QueryParam("top") @DefaultValue("10") final int top) {
+        final int k = (top > 0) ? top : DEFAULT_TOP;
+        final NoisyDevices.Snapshot snapshot = current ? noisyDevices.current(k) : noisyDevices.latest();
+
+        final Map<String, Object> metrics = Maps.newLinkedHashMap();
+        for (final Map.Entry<String, NoisyDevices.Top> entry : snapshot.metrics.entrySet()) {
+            if (metric != null && !metric.equals(entry.getKey())) {
+                continue;
+            }
+            final Map<String, Object> summary = Maps.newLinkedHashMap();
+            summary.put("bad_readings", entry.getValue().badReadings);
+            summary.put("devices", entries(entry.getValue().devices, "device_id", k));
+            summary.put("firmwares", entries(entry.getValue().firmwares, "fw_version", k));
+            metrics.put(entry.getKey(), summary);
+        }
+        final Map<String, Object> body = Maps.newLinkedHashMap();
+        body.put("interval_start_millis", snapshot.startMillis);
+        body.put("interval_end_millis", snapshot.endMillis);
+        body.put("metrics", metrics);
+        return body;
+    }
+
+    private static List<Map<String, Object>> entries(final List<SpaceSavingSketch.Entry> entries, final String keyName, final int k) {
+        final List<Map<String, Object>> top = Lists.newArrayList();
+        for (final SpaceSavingSketch.Entry entry : entries.subList(0, Math.min(k, entries.size()))) {
+            final Map<String, Object> item = Maps.newLinkedHashMap();
+            item.put(keyName, entry.key);
+            item.put("count", entry.count);
+            item.put("error", entry.error);
+            top.add(item);
+        }
+        return top;
+    }
+}
@@ -0,0 +1,42 @@
+package com.hello.suripu.analytics.analyzers;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+
+import com.hello.suripu.analytics.decoders.DecodedSenseRecord;
+import com.hello.suripu.analytics.processors.SenseBatchResult;
+import com.hello.suripu.analytics.processors.SenseStatsProcessor;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+/**
+ * Last time each sense was seen, and wave gestures across the fleet.
+ */
+public class ActivityAnalyzer implements SenseAnalyzer {
+
+    private final Meter waveCounts;
+
+    public ActivityAnalyzer(final MetricRegistry metrics) {
+        waveCounts = metrics.meter(name(SenseStatsProcessor.class, "wave-counts"));
+    }
+
+    @Override
+    public void begin(final String shardId) {
+    }
+
+    @Override
+    public void onPeriodicData(final DecodedSenseRecord record, final int index, final SenseBatchResult lane) {
+        lane.waveCountSum += record.waveCount(index);
+    }
+
+    @Override
+    public void onRecord(final DecodedSenseRecord record, final SenseBatchResult lane) {
+        //Filter out PCH IPs from active sense tracking
+        lane.activeSenses.put(record.deviceId(), record.receivedAt());
+    }
+
+    @Override
+    public void end(final SenseBatchResult batch) {
+        waveCounts.mark(batch.waveCountSum);
+    }
+}
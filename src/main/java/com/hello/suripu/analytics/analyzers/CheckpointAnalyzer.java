@@ -0,0 +1,43 @@
+package com.hello.suripu.analytics.analyzers;
+
+import com.hello.suripu.analytics.decoders.DecodedSenseRecord;
+import com.hello.suripu.analytics.processors.SenseBatchResult;
+import com.hello.suripu.analytics.utils.CheckpointTracker;
+
+/**
+ * Records which sequence number was reached at which sample time, see {@link CheckpointTracker}.
+ */
+public class CheckpointAnalyzer implements SenseAnalyzer {
+
+    private final CheckpointTracker checkpointTracker;
+    private String shardId = "No Lease Key";
+    private long lastCheckpointTimestamp;
+
+    public CheckpointAnalyzer(final CheckpointTracker checkpointTracker) {
+        this.checkpointTracker = checkpointTracker;
+    }
+
+    @Override
+    public void begin(final String shardId) {
+        this.shardId = shardId;
+        this.lastCheckpointTimestamp = checkpointTracker.getLastCheckpointTimestamp();
+    }
+
+    @Override
+    public void onPeriodicData(final DecodedSenseRecord record, final int index, final SenseBatchResult lane) {
+        lane.offerCheckpoint(record.sequenceNumber(), record.unixTime(index) * 1000L, lastCheckpointTimestamp, lane.nowMillis);
+    }
+
+    @Override
+    public void onRecord(final DecodedSenseRecord record, final SenseBatchResult lane) {
+    }
+
+    @Override
+    public void end(final SenseBatchResult batch) {
+        for (final SenseBatchResult.CheckpointCandidate candidate : batch.sortedCheckpointCandidates()) {
+            if (checkpointTracker.isEligibleForTracking(candidate.timestampMillis)) {
+                checkpointTracker.trackCheckpoint(shardId, candidate.sequenceNumber, candidate.timestampMillis);
+            }
+        }
+    }
+}
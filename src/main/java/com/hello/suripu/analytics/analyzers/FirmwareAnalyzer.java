@@ -0,0 +1,84 @@
+package com.hello.suripu.analytics.analyzers;
+
+import com.hello.suripu.analytics.decoders.DecodedSenseRecord;
+import com.hello.suripu.analytics.processors.SenseBatchResult;
+import com.hello.suripu.analytics.utils.AggregatedErrorLog;
+import com.hello.suripu.core.models.FirmwareInfo;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+
+/**
+ * Firmware running on each sense: the top/middle versions sent by the worker when known, otherwise the most recent
+ * firmware version found in the periodic data (EVT units).
+ *
+ * The periodic data fallback is kept as primitives in the lane while records are processed, its FirmwareInfo is only
+ * built once per device when the batch ends.
+ */
+public class FirmwareAnalyzer implements SenseAnalyzer {
+
+    private final static Logger LOGGER = LoggerFactory.getLogger(FirmwareAnalyzer.class);
+
+    private final AggregatedErrorLog errorLog;
+
+    /**
+     * @param errorLog shared by the analyzers of every shard, see {@link #newErrorLog()}
+     */
+    public FirmwareAnalyzer(final AggregatedErrorLog errorLog) {
+        this.errorLog = errorLog;
+    }
+
+    /**
+     * Every record of an older firmware lacks a top version, they are summarized once a minute.
+     */
+    public static AggregatedErrorLog newErrorLog() {
+        return new AggregatedErrorLog(LOGGER, "error", 60000L, 10000, 1.0);
+    }
+
+    @Override
+    public void begin(final String shardId) {
+    }
+
+    @Override
+    public void onPeriodicData(final DecodedSenseRecord record, final int index, final SenseBatchResult lane) {
+        if (hasTopVersion(record)) {
+            return;
+        }
+        // Grab FW version from Batch or periodic data for EVT units
+        final int firmwareVersion = (record.hasFirmwareVersion())
+                ? record.firmwareVersion()
+                : record.firmwareVersion(index);
+        lane.offerPeriodicFirmware(record.deviceId(), firmwareVersion, record.unixTime(index) * 1000L);
+    }
+
+    @Override
+    public void onRecord(final DecodedSenseRecord record, final SenseBatchResult lane) {
+        //If we're getting top fw info from the protobuf, only store that
+        if (hasTopVersion(record)) {
+            final String topFWVersion = record.firmwareTopVersion();
+            final String middleFWVersion = record.firmwareMiddleVersion();
+            lane.seenFirmwares.put(record.deviceId(), new FirmwareInfo(middleFWVersion, topFWVersion, record.deviceId(), record.receivedAt()));
+        } else {
+            errorLog.record("no-top-fw", record.deviceId(), record.firmwareVersion());
+        }
+    }
+
+    @Override
+    public void end(final SenseBatchResult batch) {
+        for (final Map.Entry<String, SenseBatchResult.PeriodicFirmware> entry : batch.periodicFirmwares.entrySet()) {
+            // top version info from the worker wins over the periodic data
+            if (!batch.seenFirmwares.containsKey(entry.getKey())) {
+                final SenseBatchResult.PeriodicFirmware latest = entry.getValue();
+                batch.seenFirmwares.put(entry.getKey(),
+                        new FirmwareInfo(Integer.toString(latest.version), "0", entry.getKey(), latest.timestampMillis));
+            }
+        }
+        errorLog.flushIfDue();
+    }
+
+    private static boolean hasTopVersion(final DecodedSenseRecord record) {
+        return record.hasFirmwareTopVersion() && !record.firmwareTopVersion().equals("0");
+    }
+}
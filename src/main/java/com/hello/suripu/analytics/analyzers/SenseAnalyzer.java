@@ -0,0 +1,31 @@
+package com.hello.suripu.analytics.analyzers;
+
+import com.hello.suripu.analytics.decoders.DecodedSenseRecord;
+import com.hello.suripu.analytics.processors.SenseBatchResult;
+
+/**
+ * One metric (or experiment) computed over the sense stream.
+ *
+ * Every decoded record is handed once to every analyzer in a single pass: first each of its periodic data entries,
+ * in order, then the record itself. Record callbacks may run concurrently on several lanes of the same batch, so
+ * they must only write to the lane result they are given; begin and end always run on the processor thread.
+ */
+public interface SenseAnalyzer {
+
+    /**
+     * Called before a batch of the given shard is processed.
+     */
+    void begin(String shardId);
+
+    void onPeriodicData(DecodedSenseRecord record, int index, SenseBatchResult lane);
+
+    /**
+     * Called once every periodic data entry of the record went through {@link #onPeriodicData}.
+     */
+    void onRecord(DecodedSenseRecord record, SenseBatchResult lane);
+
+    /**
+     * Called with the merged result of every lane, before it is checkpointed and written to redis.
+     */
+    void end(SenseBatchResult batch);
+}
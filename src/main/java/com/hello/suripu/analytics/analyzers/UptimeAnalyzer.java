@@ -0,0 +1,91 @@
+package com.hello.suripu.analytics.analyzers;
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+
+import com.hello.suripu.analytics.decoders.DecodedSenseRecord;
+import com.hello.suripu.analytics.processors.SenseBatchResult;
+import com.hello.suripu.analytics.processors.SenseStatsProcessor;
+import com.hello.suripu.analytics.utils.FirmwareUptimeHistograms;
+import com.hello.suripu.analytics.utils.RotatingMembershipFilter;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+/**
+ * Latest uptime of every sense, uptime distribution in days, uptime distribution of each firmware version and senses
+ * that rebooted within the last hour (counted once per reboot across every shard of the worker, see
+ * {@link #newLowUptimeFilter}).
+ */
+public class UptimeAnalyzer implements SenseAnalyzer {
+
+    private final static long LOW_UPTIME_THRESHOLD = 3600L; //seconds
+    private final static int SECONDS_PER_DAY = 86400;
+
+    private final Meter lowUptimeCount;
+    private final Histogram uptimeDays;
+
+    private final RotatingMembershipFilter lowUptimeFilter;
+    private final FirmwareUptimeHistograms firmwareUptimes;
+
+    /**
+     * @param lowUptimeFilter shared by the analyzers of every shard
+     * @param firmwareUptimes shared by the analyzers of every shard
+     */
+    public UptimeAnalyzer(final MetricRegistry metrics, final RotatingMembershipFilter lowUptimeFilter, final FirmwareUptimeHistograms firmwareUptimes) {
+        this.lowUptimeFilter = lowUptimeFilter;
+        this.firmwareUptimes = firmwareUptimes;
+        lowUptimeCount = metrics.meter(name(SenseStatsProcessor.class, "low-uptime"));
+        uptimeDays = metrics.histogram(name(SenseStatsProcessor.class, "uptime-days"));
+    }
+
+    /**
+     * A sense reports a low uptime for at most {@link #LOW_UPTIME_THRESHOLD} after rebooting, remembering it for one to
+     * two such windows counts it once.
+     */
+    public static RotatingMembershipFilter newLowUptimeFilter(final int expectedSenses, final double falsePositiveProbability) {
+        return new RotatingMembershipFilter(expectedSenses, falsePositiveProbability, LOW_UPTIME_THRESHOLD * 1000L);
+    }
+
+    @Override
+    public void begin(final String shardId) {
+    }
+
+    @Override
+    public void onPeriodicData(final DecodedSenseRecord record, final int index, final SenseBatchResult lane) {
+    }
+
+    @Override
+    public void onRecord(final DecodedSenseRecord record, final SenseBatchResult lane) {
+        final String deviceName = record.deviceId();
+        final int deviceUptime = record.uptimeInSecond();
+
+        lane.uptimeBySense.put(deviceName, deviceUptime);
+        // whole days in UTC, same as Days.daysBetween(now - uptime, now)
+        final int days = deviceUptime / SECONDS_PER_DAY;
+
+        if (deviceUptime <= LOW_UPTIME_THRESHOLD) {
+            lane.lowUptimeSenses.add(deviceName);
+        }
+
+        uptimeDays.update(days);
+
+        // versions only known from the periodic data (EVT units) are not worth a histogram
+        if (record.hasFirmwareTopVersion() && !record.firmwareTopVersion().equals("0")) {
+            firmwareUptimes.record(record.firmwareTopVersion(), deviceUptime);
+        }
+    }
+
+    @Override
+    public void end(final SenseBatchResult batch) {
+        firmwareUptimes.rotateIfDue();
+
+        if (batch.lowUptimeSenses.isEmpty()) {
+            return;
+        }
+        final int rebooted = lowUptimeFilter.addAbsent(batch.lowUptimeSenses);
+        if (rebooted > 0) {
+            lowUptimeCount.mark(rebooted);
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.hello.suripu.analytics.analyzers;
+
+import com.hello.suripu.analytics.decoders.DecodedSenseRecord;
+import com.hello.suripu.analytics.models.WifiInfo;
+import com.hello.suripu.analytics.processors.SenseBatchResult;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Connected ssid of each sense and the rssi of that access point in the scan list.
+ */
+public class WifiAnalyzer implements SenseAnalyzer {
+
+    private final static Logger LOGGER = LoggerFactory.getLogger(WifiAnalyzer.class);
+    private final static String DEFAULT_SSID = "";
+    private final static int DEFAULT_RSSI = 0;
+
+    @Override
+    public void begin(final String shardId) {
+    }
+
+    @Override
+    public void onPeriodicData(final DecodedSenseRecord record, final int index, final SenseBatchResult lane) {
+    }
+
+    @Override
+    public void onRecord(final DecodedSenseRecord record, final SenseBatchResult lane) {
+        final String connectedSSID = record.connectedSsid(DEFAULT_SSID);
+        final int rssi = record.connectedRssi(DEFAULT_RSSI);
+
+        if (!DEFAULT_SSID.equals(connectedSSID) && rssi != DEFAULT_RSSI) {
+            LOGGER.trace("{} {} {}", record.deviceId(), connectedSSID, rssi);
+        }
+
+        lane.wifiInfos.put(record.deviceId(), new WifiInfo(rssi, connectedSSID));
+    }
+
+    @Override
+    public void end(final SenseBatchResult batch) {
+    }
+}
@@ -0,0 +1,102 @@
+package com.hello.suripu.analytics.capture;
+
+import com.amazonaws.services.kinesis.clientlibrary.interfaces.IRecordProcessor;
+import com.amazonaws.services.kinesis.clientlibrary.interfaces.IRecordProcessorCheckpointer;
+import com.amazonaws.services.kinesis.clientlibrary.interfaces.IRecordProcessorFactory;
+import com.amazonaws.services.kinesis.clientlibrary.types.ShutdownReason;
+import com.amazonaws.services.kinesis.model.Record;
+
+import com.hello.suripu.analytics.configuration.CaptureConfiguration;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Wraps the processors of another factory so that every record they receive is first appended to the capture
+ * segments of its shard. Capture failures are logged and stop the capture, never the processing.
+ *
+ * Captured segments can be replayed with the replay command.
+ */
+public class CapturingRecordProcessorFactory implements IRecordProcessorFactory {
+
+    private final static Logger LOGGER = LoggerFactory.getLogger(CapturingRecordProcessorFactory.class);
+
+    private final IRecordProcessorFactory delegate;
+    private final String streamName;
+    private final CaptureConfiguration configuration;
+
+    public CapturingRecordProcessorFactory(final IRecordProcessorFactory delegate, final String streamName, final CaptureConfiguration configuration) {
+        this.delegate = delegate;
+        this.streamName = streamName;
+        this.configuration = configuration;
+    }
+
+    /**
+     * @return the given factory, wrapped to capture its records when capture is enabled
+     */
+    public static IRecordProcessorFactory wrapIfEnabled(final IRecordProcessorFactory factory, final String streamName, final CaptureConfiguration configuration) {
+        if (!configuration.getEnabled()) {
+            return factory;
+        }
+        return new CapturingRecordProcessorFactory(factory, streamName, configuration);
+    }
+
+    @Override
+    public IRecordProcessor createProcessor() {
+        return new CapturingRecordProcessor(delegate.createProcessor());
+    }
+
+    private class CapturingRecordProcessor implements IRecordProcessor {
+
+        private final IRecordProcessor processor;
+        private SegmentWriter writer;
+
+        CapturingRecordProcessor(final IRecordProcessor processor) {
+            this.processor = processor;
+        }
+
+        @Override
+        public void initialize(final String shardId) {
+            try {
+                writer = new SegmentWriter(
+                        new File(configuration.getDirectory()),
+                        streamName,
+                        shardId,
+                        configuration.getSegmentSizeMb() * 1024 * 1024,
+                        configuration.getMaxSegmentsPerShard());
+                LOGGER.info("action=capture-started stream={} shard_id={} directory={}", streamName, shardId, configuration.getDirectory());
+            } catch (IOException e) {
+                LOGGER.error("error=capture-start-failure shard_id={} message={}", shardId, e.getMessage());
+            }
+            processor.initialize(shardId);
+        }
+
+        @Override
+        public void processRecords(final List<Record> records, final IRecordProcessorCheckpointer checkpointer) {
+            if (writer != null && !writer.isFull()) {
+                try {
+                    for (final Record record : records) {
+                        writer.append(record);
+                    }
+                } catch (IOException e) {
+                    LOGGER.error("error=capture-failure message={}", e.getMessage());
+                    writer.close();
+                    writer = null;
+                }
+            }
+            processor.processRecords(records, checkpointer);
+        }
+
+        @Override
+        public void shutdown(final IRecordProcessorCheckpointer checkpointer, final ShutdownReason reason) {
+            processor.shutdown(checkpointer, reason);
+            if (writer != null) {
+                writer.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.hello.suripu.analytics.capture;
+
+import com.amazonaws.services.kinesis.model.Record;
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads back the records of segments written by {@link SegmentWriter}, in order.
+ *
+ * Payloads are copied to heap buffers, like the ones the kinesis client hands to processors.
+ */
+public class SegmentReader {
+
+    private final List<File> segments;
+    private int nextSegment = 0;
+    private MappedByteBuffer current;
+
+    /**
+     * @param segments segments of one shard, oldest first
+     */
+    public SegmentReader(final List<File> segments) {
+        this.segments = segments;
+    }
+
+    /**
+     * @return segments of the given directory grouped by shard id, each list oldest first
+     */
+    public static Map<String, List<File>> segmentsByShard(final File directory) throws IOException {
+        final File[] files = directory.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(final File dir, final String name) {
+                return name.endsWith(SegmentWriter.SEGMENT_SUFFIX);
+            }
+        });
+        if (files == null) {
+            throw new IOException(String.format("Could not list capture directory %s", directory));
+        }
+        // file names carry the start time and segment index of the writer
+        Arrays.sort(files);
+
+        final Map<String, List<File>> segmentsByShard = Maps.newTreeMap();
+        for (final File file : files) {
+            final String shardId = readHeader(map(file), file);
+            if (!segmentsByShard.containsKey(shardId)) {
+                segmentsByShard.put(shardId, Lists.<File>newArrayList());
+            }
+            segmentsByShard.get(shardId).add(file);
+        }
+        return segmentsByShard;
+    }
+
+    /**
+     * @return up to maxRecords records, empty once every segment has been read
+     */
+    public List<Record> nextBatch(final int maxRecords) throws IOException {
+        final List<Record> batch = Lists.newArrayListWithExpectedSize(maxRecords);
+        Record record;
+        while (batch.size() < maxRecords && (record = next()) != null) {
+            batch.add(record);
+        }
+        return batch;
+    }
+
+    /**
+     * @return the next record, or null once every segment has been read
+     */
+    public Record next() throws IOException {
+        while (true) {
+            if (current != null && current.remaining() >= SegmentWriter.ENTRY_HEADER_BYTES) {
+                final int length = current.getInt();
+                if (length > 0) {
+                    final long arrivalMillis = current.getLong();
+                    final String partitionKey = getString(current);
+                    final String sequenceNumber = getString(current);
+                    final byte[] data = new byte[length];
+                    current.get(data);
+                    return new Record()
+                            .withPartitionKey(partitionKey)
+                            .withSequenceNumber(sequenceNumber)
+                            .withApproximateArrivalTimestamp(arrivalMillis < 0 ? null : new Date(arrivalMillis))
+                            .withData(ByteBuffer.wrap(data));
+                }
+            }
+            if (nextSegment == segments.size()) {
+                current = null;
+                return null;
+            }
+            final File file = segments.get(nextSegment++);
+            current = map(file);
+            readHeader(current, file);
+        }
+    }
+
+    private static MappedByteBuffer map(final File file) throws IOException {
+        try (final RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r")) {
+            return randomAccessFile.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, randomAccessFile.length());
+        }
+    }
+
+    /**
+     * Checks the header and leaves the buffer at the first entry.
+     *
+     * @return the shard id the segment was captured from
+     */
+    private static String readHeader(final ByteBuffer segment, final File file) throws IOException {
+        if (segment.remaining() < 8 || segment.getInt() != SegmentWriter.MAGIC) {
+            throw new IOException(String.format("%s is not a capture segment", file));
+        }
+        final int version = segment.getInt();
+        if (version != SegmentWriter.VERSION) {
+            throw new IOException(String.format("%s has unsupported version %d", file, version));
+        }
+        getString(segment);
+        return getString(segment);
+    }
+
+    private static String getString(final ByteBuffer buffer) {
+        final byte[] bytes = new byte[buffer.getShort()];
+        buffer.get(bytes);
+        return new String(bytes, Charsets.UTF_8);
+    }
+}
@@ -0,0 +1,139 @@
+package com.hello.suripu.analytics.capture;
+
+import com.amazonaws.services.kinesis.model.Record;
+import com.google.common.base.Charsets;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Appends the kinesis records of one shard to preallocated, memory-mapped segment files, so that capturing costs the
+ * processing thread a copy into the page cache and no system call per record.
+ *
+ * A segment starts with a header (magic, version, stream name, shard id) followed by entries of
+ * [int payload length][long approximate arrival millis][partition key][sequence number][payload], strings being
+ * prefixed by their short byte length. The payload length is written last, so a zero length marks the end of the
+ * data, even after a crash. Not thread-safe: each shard processor owns its writer.
+ */
+public class SegmentWriter implements Closeable {
+
+    static final int MAGIC = 0x53454731;
+    static final int VERSION = 1;
+    static final String SEGMENT_SUFFIX = ".seg";
+    static final int ENTRY_HEADER_BYTES = 4 + 8 + 2 + 2;
+
+    private final static Logger LOGGER = LoggerFactory.getLogger(SegmentWriter.class);
+
+    private final File directory;
+    private final String streamName;
+    private final String shardId;
+    private final int segmentSizeBytes;
+    private final int maxSegments;
+    private final long startMillis;
+
+    private int segmentCount = 0;
+    private MappedByteBuffer segment;
+    private boolean full = false;
+
+    public SegmentWriter(final File directory, final String streamName, final String shardId, final int segmentSizeBytes, final int maxSegments) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException(String.format("Could not create capture directory %s", directory));
+        }
+        this.directory = directory;
+        this.streamName = streamName;
+        this.shardId = shardId;
+        this.segmentSizeBytes = segmentSizeBytes;
+        this.maxSegments = maxSegments;
+        this.startMillis = System.currentTimeMillis();
+    }
+
+    public void append(final Record record) throws IOException {
+        if (full) {
+            return;
+        }
+        final ByteBuffer data = record.getData().duplicate();
+        // put() drains data, the length is read before
+        final int length = data.remaining();
+        final byte[] partitionKey = encode(record.getPartitionKey());
+        final byte[] sequenceNumber = encode(record.getSequenceNumber());
+        final int entryBytes = ENTRY_HEADER_BYTES + partitionKey.length + sequenceNumber.length + length;
+
+        if (segment == null || segment.remaining() < entryBytes) {
+            if (!roll(entryBytes)) {
+                return;
+            }
+        }
+
+        final int start = segment.position();
+        segment.position(start + 4);
+        segment.putLong(record.getApproximateArrivalTimestamp() == null ? -1L : record.getApproximateArrivalTimestamp().getTime());
+        putString(segment, partitionKey);
+        putString(segment, sequenceNumber);
+        segment.put(data);
+        segment.putInt(start, length);
+    }
+
+    /**
+     * @return true once the segment budget is used up and records are no longer captured
+     */
+    public boolean isFull() {
+        return full;
+    }
+
+    @Override
+    public void close() {
+        if (segment != null) {
+            segment.force();
+            segment = null;
+        }
+    }
+
+    private boolean roll(final int entryBytes) throws IOException {
+        final byte[] streamNameBytes = encode(streamName);
+        final byte[] shardIdBytes = encode(shardId);
+        final int headerBytes = 4 + 4 + 2 + streamNameBytes.length + 2 + shardIdBytes.length;
+        if (headerBytes + entryBytes > segmentSizeBytes) {
+            LOGGER.warn("warning=capture-record-too-large shard_id={} bytes={} segment_bytes={}", shardId, entryBytes, segmentSizeBytes);
+            return false;
+        }
+
+        // the previous segment is left to the page cache, only close() waits for the disk
+        segment = null;
+        if (segmentCount == maxSegments) {
+            LOGGER.warn("warning=capture-segments-exhausted shard_id={} segments={}", shardId, segmentCount);
+            full = true;
+            return false;
+        }
+
+        final File file = new File(directory, String.format("%s-%s-%d-%05d%s", streamName, shardId, startMillis, segmentCount, SEGMENT_SUFFIX));
+        try (final RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+            // the mapping outlives the channel
+            segment = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, segmentSizeBytes);
+        }
+        segmentCount++;
+
+        segment.putInt(MAGIC);
+        segment.putInt(VERSION);
+        putString(segment, streamNameBytes);
+        putString(segment, shardIdBytes);
+        LOGGER.info("action=capture-segment-created file={}", file);
+        return true;
+    }
+
+    private static void putString(final ByteBuffer buffer, final byte[] bytes) {
+        buffer.putShort((short) bytes.length);
+        buffer.put(bytes);
+    }
+
+    private static byte[] encode(final String value) {
+        return (value == null) ? new byte[0] : value.getBytes(Charsets.UTF_8);
+    }
+}
@@ -6,27 +6,51 @@ import com.amazonaws.auth.DefaultAWSCredentialsProviderChain;
 import com.amazonaws.services.dynamodbv2.AmazonDynamoDBClient;
 import com.amazonaws.services.dynamodbv2.model.CreateTableResult;
 import com.amazonaws.services.dynamodbv2.model.TableDescription;
+import com.amazonaws.services.dynamodbv2.util.TableUtils;
 import com.hello.suripu.analytics.configuration.AnalyticsConfiguration;
 import com.hello.suripu.analytics.configuration.NewDynamoDBConfiguration;
 import com.hello.suripu.analytics.utils.CheckpointTracker;
 import io.dropwizard.cli.ConfiguredCommand;
 import io.dropwizard.setup.Bootstrap;
 import net.sourceforge.argparse4j.inf.Namespace;
+import net.sourceforge.argparse4j.inf.Subparser;
 
 public class CreateDynamoDBTables extends ConfiguredCommand<AnalyticsConfiguration> {
 
+    // one item per shard every few minutes, written in batches; reads only happen when seeking
+    private static final long DEFAULT_READ_CAPACITY_UNITS = 5L;
+    private static final long DEFAULT_WRITE_CAPACITY_UNITS = 10L;
+
     public CreateDynamoDBTables() {
         super("create_dynamodb_tables", "Create dynamoDB tables");
     }
 
+    @Override
+    public void configure(final Subparser subparser) {
+        super.configure(subparser);
+
+        subparser.addArgument("--read-capacity")
+                .dest("read_capacity")
+                .type(Long.class)
+                .setDefault(DEFAULT_READ_CAPACITY_UNITS)
+                .help("read capacity units of the checkpoint tracking table");
+        subparser.addArgument("--write-capacity")
+                .dest("write_capacity")
+                .type(Long.class)
+                .setDefault(DEFAULT_WRITE_CAPACITY_UNITS)
+                .help("write capacity units of the checkpoint tracking table");
+    }
+
     @Override
     protected void run(Bootstrap<AnalyticsConfiguration> bootstrap, Namespace namespace, AnalyticsConfiguration configuration) throws Exception {
         final AWSCredentialsProvider awsCredentialsProvider = new DefaultAWSCredentialsProviderChain();
 
-        createCheckpointTrackingTable(configuration, awsCredentialsProvider);
+        createCheckpointTrackingTable(configuration, awsCredentialsProvider,
+                namespace.getLong("read_capacity"), namespace.getLong("write_capacity"));
     }
 
-    private void createCheckpointTrackingTable(final AnalyticsConfiguration configuration, final AWSCredentialsProvider awsCredentialsProvider) {
+    private void createCheckpointTrackingTable(final AnalyticsConfiguration configuration, final AWSCredentialsProvider awsCredentialsProvider,
+                                               final long readCapacityUnits, final long writeCapacityUnits) throws InterruptedException {
         final NewDynamoDBConfiguration config = configuration.dynamoDBConfiguration();
         final AmazonDynamoDBClient client = new AmazonDynamoDBClient(awsCredentialsProvider);
 
@@ -37,9 +61,17 @@ public class CreateDynamoDBTables extends ConfiguredCommand<AnalyticsConfigurati
             client.describeTable(tableName);
             System.out.println(String.format("%s already exists.", tableName));
         } catch (AmazonServiceException exception) {
-            final CreateTableResult result = CheckpointTracker.createTable(tableName, client);
+            final CreateTableResult result = CheckpointTracker.createTable(tableName, client, readCapacityUnits, writeCapacityUnits);
             final TableDescription description = result.getTableDescription();
             System.out.println(tableName + " " + description.getTableStatus());
         }
+
+        // also covers tables created before checkpoints expired
+        TableUtils.waitUntilActive(client, tableName);
+        if (CheckpointTracker.enableTimeToLive(tableName, client)) {
+            System.out.println(String.format("%s expiring items on %s.", tableName, CheckpointTracker.EXPIRES_AT_ATTRIBUTE_NAME));
+        } else {
+            System.out.println(String.format("%s already expiring items.", tableName));
+        }
     }
 }
@@ -0,0 +1,299 @@
+package com.hello.suripu.analytics.cli;
+
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.kinesis.clientlibrary.interfaces.IRecordProcessor;
+import com.amazonaws.services.kinesis.clientlibrary.interfaces.IRecordProcessorCheckpointer;
+import com.amazonaws.services.kinesis.clientlibrary.interfaces.IRecordProcessorFactory;
+import com.amazonaws.services.kinesis.clientlibrary.types.ShutdownReason;
+import com.amazonaws.services.kinesis.model.Record;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.Timer;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.RateLimiter;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.hello.suripu.analytics.capture.SegmentReader;
+import com.hello.suripu.analytics.configuration.AnalyticsConfiguration;
+import com.hello.suripu.analytics.framework.AnalyticsEnvironmentCommand;
+import com.hello.suripu.analytics.processors.PillStatsProcessorFactory;
+import com.hello.suripu.analytics.processors.SenseStatsProcessorFactory;
+import com.hello.suripu.analytics.replay.InMemoryDeviceTracker;
+import com.hello.suripu.analytics.replay.Noop;
+import com.hello.suripu.analytics.replay.RecordBatchSource;
+import com.hello.suripu.analytics.replay.SyntheticPillRecords;
+import com.hello.suripu.analytics.replay.SyntheticSenseRecords;
+import com.hello.suripu.analytics.utils.CheckpointWriter;
+import com.hello.suripu.analytics.utils.DeviceTracker;
+import com.hello.suripu.analytics.utils.DeviceTrackerFactory;
+import io.dropwizard.setup.Environment;
+import net.sourceforge.argparse4j.impl.Arguments;
+import net.sourceforge.argparse4j.inf.Namespace;
+import net.sourceforge.argparse4j.inf.Subparser;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+/**
+ * Feeds synthetic or captured records through the real sense or pill processors, one thread per shard, without
+ * kinesis, dynamo or (by default) redis, and prints sustained throughput, batch latency and heap usage.
+ *
+ * e.g. java -jar suripu-analytics.jar replay --shards 4 --rate 20000 --duration 600 configs/dev.yml
+ * or, for segments captured by the workers (see capture in the configuration), at full speed:
+ * java -jar suripu-analytics.jar replay --capture-directory /tmp/suripu-analytics-capture --duration 3600 configs/dev.yml
+ */
+public class ReplayCommand extends AnalyticsEnvironmentCommand<AnalyticsConfiguration> {
+
+    private final static String SENSE_STREAM_NAME = "sense_sensors_data";
+    private final static String PILL_STREAM_NAME = "batch_pill_data";
+    private final static String CHECKPOINT_TABLE_NAME = "kinesis_checkpoint_track";
+
+    private final static int MAX_PREPARED_BATCHES = 256;
+    private final static int PERIODIC_DATA_PER_RECORD = 15;
+    private final static int ACCESS_POINTS_PER_RECORD = 20;
+    private final static int FIRMWARE_VERSIONS = 5;
+    private final static int PILLS_PER_RECORD = 2;
+
+    public ReplayCommand() {
+        super("replay", "Replay synthetic records through the stats processors and report throughput");
+    }
+
+    @Override
+    public void configure(final Subparser subparser) {
+        super.configure(subparser);
+        subparser.addArgument("--stream")
+                .dest("stream")
+                .choices("sense", "pill")
+                .setDefault("sense")
+                .help("processor to replay records through");
+        subparser.addArgument("--shards")
+                .dest("shards")
+                .type(Integer.class)
+                .setDefault(1)
+                .help("number of shards of synthetic records, each processed by its own processor and thread");
+        subparser.addArgument("--rate")
+                .dest("rate")
+                .type(Integer.class)
+                .setDefault(0)
+                .help("records per second across all shards, 0 for as fast as possible");
+        subparser.addArgument("--duration")
+                .dest("duration")
+                .type(Integer.class)
+                .setDefault(60)
+                .help("seconds to run for");
+        subparser.addArgument("--devices")
+                .dest("devices")
+                .type(Integer.class)
+                .setDefault(10000)
+                .help("number of distinct senses sending records");
+        subparser.addArgument("--batch-size")
+                .dest("batch_size")
+                .type(Integer.class)
+                .help("records per processRecords call, defaults to max_records");
+        subparser.addArgument("--report-interval")
+                .dest("report_interval")
+                .type(Integer.class)
+                .setDefault(10)
+                .help("seconds between two progress lines");
+        subparser.addArgument("--capture-directory")
+                .dest("capture_directory")
+                .help("replay the segments captured in this directory, one shard per captured shard, instead of synthetic records");
+        subparser.addArgument("--redis")
+                .dest("redis")
+                .action(Arguments.storeTrue())
+                .help("write to the configured redis instead of memory");
+    }
+
+    @Override
+    protected void run(final Environment environment, final Namespace namespace, final AnalyticsConfiguration configuration) throws Exception {
+        final boolean pills = "pill".equals(namespace.getString("stream"));
+        final String captureDirectory = namespace.getString("capture_directory");
+        final int rate = namespace.getInt("rate");
+        final long durationSeconds = namespace.getInt("duration");
+        final int devices = namespace.getInt("devices");
+        final int batchSize = (namespace.getInt("batch_size") == null) ? configuration.getMaxRecords() : namespace.getInt("batch_size");
+        final long reportIntervalSeconds = namespace.getInt("report_interval");
+
+        final DeviceTracker deviceTracker;
+        if (namespace.getBoolean("redis")) {
+            deviceTracker = DeviceTrackerFactory.create(
+                    configuration.getRedisConfiguration(),
+                    DeviceTrackerFactory.createJedisPool(configuration.getRedisConfiguration(), environment.metrics()),
+                    environment.metrics(),
+                    environment.lifecycle()
+            );
+        } else {
+            deviceTracker = new InMemoryDeviceTracker();
+        }
+
+        final CheckpointWriter checkpointWriter = new CheckpointWriter(Noop.of(AmazonDynamoDB.class), CHECKPOINT_TABLE_NAME,
+                CheckpointWriter.DEFAULT_MAX_PENDING, environment.metrics());
+        environment.lifecycle().manage(checkpointWriter);
+        final IRecordProcessorFactory processorFactory = pills
+                ? new PillStatsProcessorFactory(deviceTracker, checkpointWriter, PILL_STREAM_NAME, environment.metrics(), configuration.getCheckpoint())
+                : new SenseStatsProcessorFactory(deviceTracker, checkpointWriter, SENSE_STREAM_NAME, environment.metrics(),
+                        configuration.getSenseLanes(), configuration.getCheckpoint(), configuration.getLowUptimeFilter(),
+                        configuration.getFirmwareUptime(), configuration.getDataQualityRules(),
+                        configuration.getNoisyDevices());
+
+        final Map<String, RecordBatchSource> sourcesByShard = (captureDirectory == null)
+                ? syntheticSources(pills, namespace.getInt("shards"), devices, batchSize)
+                : capturedSources(new File(captureDirectory), batchSize);
+        final int shards = sourcesByShard.size();
+        System.out.println(String.format("action=replay-start stream=%s source=%s shards=%d rate=%d batch_size=%d",
+                pills ? PILL_STREAM_NAME : SENSE_STREAM_NAME, (captureDirectory == null) ? "synthetic" : captureDirectory, shards, rate, batchSize));
+
+        startManagedObjects(environment);
+        try {
+            final Timer batchLatency = environment.metrics().timer(name(ReplayCommand.class, "batch-latency"));
+            final Meter recordsProcessed = environment.metrics().meter(name(ReplayCommand.class, "records-processed"));
+            final RateLimiter rateLimiter = (rate > 0) ? RateLimiter.create(rate) : null;
+            final long startNanos = System.nanoTime();
+            final long deadlineNanos = startNanos + TimeUnit.SECONDS.toNanos(durationSeconds);
+
+            final ExecutorService executorService = Executors.newFixedThreadPool(shards,
+                    new ThreadFactoryBuilder().setNameFormat("replay-shard-%d").setDaemon(true).build());
+            final List<Future<Void>> futures = Lists.newArrayListWithExpectedSize(shards);
+            for (final Map.Entry<String, RecordBatchSource> entry : sourcesByShard.entrySet()) {
+                futures.add(executorService.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws IOException {
+                        replay(processorFactory.createProcessor(), entry.getKey(), entry.getValue(), rateLimiter, deadlineNanos, batchLatency, recordsProcessed);
+                        return null;
+                    }
+                }));
+            }
+            executorService.shutdown();
+
+            final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+            long peakHeapUsed = 0L;
+            long lastCount = 0L;
+            long lastReportNanos = startNanos;
+            while (!executorService.awaitTermination(reportIntervalSeconds, TimeUnit.SECONDS)) {
+                final long nowNanos = System.nanoTime();
+                final long count = recordsProcessed.getCount();
+                final long heapUsed = memory.getHeapMemoryUsage().getUsed();
+                peakHeapUsed = Math.max(peakHeapUsed, heapUsed);
+                report("replay-progress", nowNanos - startNanos, (count - lastCount) / seconds(nowNanos - lastReportNanos),
+                        batchLatency.getSnapshot(), heapUsed);
+                lastCount = count;
+                lastReportNanos = nowNanos;
+            }
+            for (final Future<Void> future : futures) {
+                future.get();
+            }
+
+            final long elapsedNanos = System.nanoTime() - startNanos;
+            final long heapUsed = memory.getHeapMemoryUsage().getUsed();
+            report("replay-done", elapsedNanos, recordsProcessed.getCount() / seconds(elapsedNanos), batchLatency.getSnapshot(), Math.max(peakHeapUsed, heapUsed));
+            if (deviceTracker instanceof InMemoryDeviceTracker) {
+                final InMemoryDeviceTracker inMemoryDeviceTracker = (InMemoryDeviceTracker) deviceTracker;
+                System.out.println(String.format("action=replay-tracked active_senses=%d active_pills=%d",
+                        inMemoryDeviceTracker.activeSenseCount(), inMemoryDeviceTracker.activePillCount()));
+            }
+        } finally {
+            stopManagedObjects(environment);
+        }
+    }
+
+    /**
+     * Batches generated up front and replayed in a loop, enough of them to cycle through every device.
+     */
+    private static Map<String, RecordBatchSource> syntheticSources(final boolean pills, final int shards, final int devices, final int batchSize) {
+        final int devicesPerShard = Math.max(1, devices / shards);
+        final int preparedBatches = Math.max(1, Math.min(MAX_PREPARED_BATCHES, (devicesPerShard + batchSize - 1) / batchSize));
+        final Map<String, RecordBatchSource> sources = Maps.newTreeMap();
+        for (int shard = 0; shard < shards; shard++) {
+            final List<List<Record>> batches = pills
+                    ? new SyntheticPillRecords(shard, PILLS_PER_RECORD).batches(devicesPerShard, batchSize, preparedBatches)
+                    : new SyntheticSenseRecords(shard, PERIODIC_DATA_PER_RECORD, ACCESS_POINTS_PER_RECORD, FIRMWARE_VERSIONS)
+                            .batches(devicesPerShard, batchSize, preparedBatches);
+            sources.put(String.format("shardId-%012d", shard), new RecordBatchSource() {
+                private int next = 0;
+
+                @Override
+                public List<Record> nextBatch() {
+                    final List<Record> batch = batches.get(next);
+                    next = (next + 1) % batches.size();
+                    return batch;
+                }
+            });
+        }
+        return sources;
+    }
+
+    /**
+     * Captured segments, read straight from disk and started over once every segment of the shard has been replayed.
+     */
+    private static Map<String, RecordBatchSource> capturedSources(final File directory, final int batchSize) throws IOException {
+        final Map<String, RecordBatchSource> sources = Maps.newTreeMap();
+        for (final Map.Entry<String, List<File>> entry : SegmentReader.segmentsByShard(directory).entrySet()) {
+            final List<File> segments = entry.getValue();
+            sources.put(entry.getKey(), new RecordBatchSource() {
+                private SegmentReader reader = new SegmentReader(segments);
+
+                @Override
+                public List<Record> nextBatch() throws IOException {
+                    List<Record> batch = reader.nextBatch(batchSize);
+                    if (batch.isEmpty()) {
+                        reader = new SegmentReader(segments);
+                        batch = reader.nextBatch(batchSize);
+                    }
+                    if (batch.isEmpty()) {
+                        throw new IOException(String.format("No record captured in %s", segments));
+                    }
+                    return batch;
+                }
+            });
+        }
+        if (sources.isEmpty()) {
+            throw new IOException(String.format("No capture segment in %s", directory));
+        }
+        return sources;
+    }
+
+    private static void replay(final IRecordProcessor processor,
+                               final String shardId,
+                               final RecordBatchSource source,
+                               final RateLimiter rateLimiter,
+                               final long deadlineNanos,
+                               final Timer batchLatency,
+                               final Meter recordsProcessed) throws IOException {
+        final IRecordProcessorCheckpointer checkpointer = Noop.of(IRecordProcessorCheckpointer.class);
+        processor.initialize(shardId);
+        while (System.nanoTime() < deadlineNanos) {
+            final List<Record> batch = source.nextBatch();
+            if (rateLimiter != null) {
+                rateLimiter.acquire(batch.size());
+            }
+            final Timer.Context context = batchLatency.time();
+            processor.processRecords(batch, checkpointer);
+            context.stop();
+            recordsProcessed.mark(batch.size());
+        }
+        processor.shutdown(checkpointer, ShutdownReason.ZOMBIE);
+    }
+
+    private static void report(final String action, final long elapsedNanos, final double recordsPerSecond, final Snapshot latency, final long heapUsed) {
+        System.out.println(String.format(
+                "action=%s elapsed_seconds=%.0f records_per_second=%.0f batch_p50_ms=%.2f batch_p99_ms=%.2f batch_max_ms=%.2f heap_used_mb=%d",
+                action, seconds(elapsedNanos), recordsPerSecond,
+                latency.getMedian() / 1e6, latency.get99thPercentile() / 1e6, latency.getMax() / 1e6,
+                heapUsed / (1024 * 1024)));
+    }
+
+    private static double seconds(final long nanos) {
+        return Math.max(nanos, 1L) / 1e9;
+    }
+}
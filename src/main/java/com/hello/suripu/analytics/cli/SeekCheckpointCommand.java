@@ -0,0 +1,111 @@
+package com.hello.suripu.analytics.cli;
+
+import com.amazonaws.auth.AWSCredentialsProvider;
+import com.amazonaws.auth.DefaultAWSCredentialsProviderChain;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDBClient;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.kinesis.clientlibrary.types.ExtendedSequenceNumber;
+import com.amazonaws.services.kinesis.leases.impl.KinesisClientLease;
+import com.amazonaws.services.kinesis.leases.impl.KinesisClientLeaseManager;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableMap;
+import com.hello.suripu.analytics.configuration.AnalyticsConfiguration;
+import com.hello.suripu.analytics.utils.CheckpointTracker;
+import io.dropwizard.cli.ConfiguredCommand;
+import io.dropwizard.setup.Bootstrap;
+import net.sourceforge.argparse4j.impl.Arguments;
+import net.sourceforge.argparse4j.inf.Namespace;
+import net.sourceforge.argparse4j.inf.Subparser;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+
+import java.util.Map;
+
+/**
+ * Rewinds the KCL checkpoint of a shard to the latest checkpoint tracked at or before a given time, so a shard can be
+ * reprocessed from minutes ago instead of from TRIM_HORIZON.
+ *
+ * Workers of the application must be stopped first: a running worker owns the lease and would overwrite the rewound
+ * checkpoint with its own.
+ */
+public class SeekCheckpointCommand extends ConfiguredCommand<AnalyticsConfiguration> {
+
+    private final static String CHECKPOINT_TABLE_NAME = "kinesis_checkpoint_track";
+
+    // KCL application, hence lease table, of each stream
+    private final static Map<String, String> APP_NAME_BY_STREAM = ImmutableMap.of(
+            "sense_sensors_data", "sense_stats",
+            "batch_pill_data", "pill_stats");
+
+    public SeekCheckpointCommand() {
+        super("seek_checkpoint", "Reset the KCL checkpoint of a shard to the tracked checkpoint nearest a given time");
+    }
+
+    @Override
+    public void configure(final Subparser subparser) {
+        super.configure(subparser);
+        subparser.addArgument("--stream")
+                .dest("stream")
+                .choices(APP_NAME_BY_STREAM.keySet())
+                .required(true)
+                .help("stream the shard belongs to");
+        subparser.addArgument("--shard")
+                .dest("shard")
+                .required(true)
+                .help("shard to rewind, e.g. shardId-000000000000");
+        subparser.addArgument("--time")
+                .dest("time")
+                .required(true)
+                .help("ISO-8601 time to rewind to, UTC unless an offset is given, e.g. 2016-11-02T17:30:00Z");
+        subparser.addArgument("--dry-run")
+                .dest("dry_run")
+                .action(Arguments.storeTrue())
+                .help("only print the checkpoint the shard would be rewound to");
+    }
+
+    @Override
+    protected void run(final Bootstrap<AnalyticsConfiguration> bootstrap, final Namespace namespace, final AnalyticsConfiguration configuration) throws Exception {
+        final String stream = namespace.getString("stream");
+        final String shardId = namespace.getString("shard");
+        final DateTime time = DateTime.parse(namespace.getString("time")).withZone(DateTimeZone.UTC);
+        final String streamName = configuration.getKinesisStreams().get(stream);
+        final String leaseTableName = configuration.getAppNames().get(APP_NAME_BY_STREAM.get(stream));
+
+        final AWSCredentialsProvider awsCredentialsProvider = new DefaultAWSCredentialsProviderChain();
+
+        final AmazonDynamoDB checkpointTrackerClient = new AmazonDynamoDBClient(awsCredentialsProvider);
+        checkpointTrackerClient.setEndpoint(configuration.dynamoDBConfiguration().endpoints().get(CHECKPOINT_TABLE_NAME));
+        final String checkpointTableName = configuration.dynamoDBConfiguration().tables().get(CHECKPOINT_TABLE_NAME);
+
+        final Optional<Map<String, AttributeValue>> tracked = CheckpointTracker.latestCheckpointAtOrBefore(
+                checkpointTableName, checkpointTrackerClient, streamName + ":" + shardId, time);
+        if (!tracked.isPresent()) {
+            System.out.println(String.format("error=no-tracked-checkpoint stream=%s shard=%s time=%s", streamName, shardId, time));
+            return;
+        }
+        final String sequenceNumber = tracked.get().get(CheckpointTracker.CHECKPOINT_ATTRIBUTE_NAME).getS();
+        final String createdAt = tracked.get().get(CheckpointTracker.TIMESTAMP_ATTRIBUTE_NAME).getS();
+
+        // same client as the workers, which leave the KCL dynamo endpoint to its default
+        final KinesisClientLeaseManager leaseManager = new KinesisClientLeaseManager(leaseTableName, new AmazonDynamoDBClient(awsCredentialsProvider));
+        final KinesisClientLease lease = leaseManager.getLease(shardId);
+        if (lease == null) {
+            System.out.println(String.format("error=no-lease lease_table=%s shard=%s", leaseTableName, shardId));
+            return;
+        }
+
+        System.out.println(String.format("action=seek-checkpoint lease_table=%s shard=%s lease_owner=%s current=%s target=%s tracked_at=%s",
+                leaseTableName, shardId, lease.getLeaseOwner(), lease.getCheckpoint(), sequenceNumber, createdAt));
+        if (namespace.getBoolean("dry_run")) {
+            return;
+        }
+
+        lease.setCheckpoint(new ExtendedSequenceNumber(sequenceNumber));
+        if (!leaseManager.updateLease(lease)) {
+            System.out.println(String.format("error=lease-changed lease_table=%s shard=%s, stop the workers and retry", leaseTableName, shardId));
+            return;
+        }
+        System.out.println(String.format("action=seek-checkpoint-done lease_table=%s shard=%s checkpoint=%s", leaseTableName, shardId, sequenceNumber));
+    }
+}
@@ -6,7 +6,9 @@ import io.dropwizard.Configuration;
 
 import javax.validation.Valid;
 import javax.validation.constraints.Max;
+import javax.validation.constraints.Min;
 import javax.validation.constraints.NotNull;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -71,6 +73,18 @@ public class AnalyticsConfiguration extends Configuration {
         return maxRecords;
     }
 
+    /**
+     * Sense batches are split by device into this many lanes processed in parallel, 1 processes them serially
+     */
+    @Min(1)
+    @Max(64)
+    @JsonProperty("sense_lanes")
+    private Integer senseLanes = 1;
+
+    public Integer getSenseLanes() {
+        return senseLanes;
+    }
+
     @Valid
     @NotNull
     @JsonProperty("redis")
@@ -79,6 +93,60 @@ public class AnalyticsConfiguration extends Configuration {
         return redisConfiguration;
     }
 
+    @Valid
+    @NotNull
+    @JsonProperty("capture")
+    private CaptureConfiguration capture = new CaptureConfiguration();
+
+    public CaptureConfiguration getCapture() {
+        return capture;
+    }
+
+    @Valid
+    @NotNull
+    @JsonProperty("checkpoint")
+    private CheckpointConfiguration checkpoint = new CheckpointConfiguration();
+
+    public CheckpointConfiguration getCheckpoint() {
+        return checkpoint;
+    }
+
+    @Valid
+    @NotNull
+    @JsonProperty("low_uptime_filter")
+    private LowUptimeFilterConfiguration lowUptimeFilter = new LowUptimeFilterConfiguration();
+
+    public LowUptimeFilterConfiguration getLowUptimeFilter() {
+        return lowUptimeFilter;
+    }
+
+    @Valid
+    @NotNull
+    @JsonProperty("firmware_uptime")
+    private FirmwareUptimeConfiguration firmwareUptime = new FirmwareUptimeConfiguration();
+
+    public FirmwareUptimeConfiguration getFirmwareUptime() {
+        return firmwareUptime;
+    }
+
+    @Valid
+    @NotNull
+    @JsonProperty("data_quality_rules")
+    private List<DataQualityRuleConfiguration> dataQualityRules = DataQualityRuleConfiguration.defaults();
+
+    public List<DataQualityRuleConfiguration> getDataQualityRules() {
+        return dataQualityRules;
+    }
+
+    @Valid
+    @NotNull
+    @JsonProperty("noisy_devices")
+    private NoisyDevicesConfiguration noisyDevices = new NoisyDevicesConfiguration();
+
+    public NoisyDevicesConfiguration getNoisyDevices() {
+        return noisyDevices;
+    }
+
     @Valid
     @NotNull
     @JsonProperty("graphite")
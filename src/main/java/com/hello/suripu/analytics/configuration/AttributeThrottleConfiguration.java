@@ -0,0 +1,49 @@
+package com.hello.suripu.analytics.configuration;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import javax.validation.constraints.Max;
+import javax.validation.constraints.Min;
+
+public class AttributeThrottleConfiguration {
+
+    @JsonProperty("enabled")
+    private Boolean enabled = Boolean.FALSE;
+
+    public Boolean getEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Unchanged firmware and wifi info are written again after this long, which keeps the firmware seen timestamps
+     * within that resolution
+     */
+    @Min(60)
+    @Max(86400)
+    @JsonProperty("refresh_seconds")
+    private Integer refreshSeconds = 3600;
+
+    public Integer getRefreshSeconds() {
+        return refreshSeconds;
+    }
+
+    /**
+     * Rssi changes within the same bucket of this many dB are not written until the next refresh
+     */
+    @Min(1)
+    @Max(100)
+    @JsonProperty("rssi_bucket_db")
+    private Integer rssiBucketDb = 10;
+
+    public Integer getRssiBucketDb() {
+        return rssiBucketDb;
+    }
+
+    @Min(1)
+    @JsonProperty("max_devices")
+    private Integer maxDevices = 250000;
+
+    public Integer getMaxDevices() {
+        return maxDevices;
+    }
+}
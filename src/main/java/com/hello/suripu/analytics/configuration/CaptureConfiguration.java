@@ -0,0 +1,45 @@
+package com.hello.suripu.analytics.configuration;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import javax.validation.constraints.Max;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+
+public class CaptureConfiguration {
+
+    @JsonProperty("enabled")
+    private Boolean enabled = Boolean.FALSE;
+
+    public Boolean getEnabled() {
+        return enabled;
+    }
+
+    @NotNull
+    @JsonProperty("directory")
+    private String directory = "/tmp/suripu-analytics-capture";
+
+    public String getDirectory() {
+        return directory;
+    }
+
+    @Min(1)
+    @Max(1024)
+    @JsonProperty("segment_size_mb")
+    private Integer segmentSizeMb = 128;
+
+    public Integer getSegmentSizeMb() {
+        return segmentSizeMb;
+    }
+
+    /**
+     * Capture of a shard stops once it has filled this many segments, to bound disk usage
+     */
+    @Min(1)
+    @JsonProperty("max_segments_per_shard")
+    private Integer maxSegmentsPerShard = 16;
+
+    public Integer getMaxSegmentsPerShard() {
+        return maxSegmentsPerShard;
+    }
+}
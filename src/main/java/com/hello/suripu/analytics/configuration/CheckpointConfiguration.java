@@ -0,0 +1,30 @@
+package com.hello.suripu.analytics.configuration;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import javax.validation.constraints.Min;
+
+public class CheckpointConfiguration {
+
+    /**
+     * A shard checkpoints with the KCL once this many seconds have passed since its last checkpoint...
+     */
+    @Min(0)
+    @JsonProperty("interval_seconds")
+    private Integer intervalSeconds = 60;
+
+    public Integer getIntervalSeconds() {
+        return intervalSeconds;
+    }
+
+    /**
+     * ...or once it has processed this many records since, whichever comes first
+     */
+    @Min(1)
+    @JsonProperty("max_records")
+    private Integer maxRecords = 25000;
+
+    public Integer getMaxRecords() {
+        return maxRecords;
+    }
+}
@@ -0,0 +1,140 @@
+package com.hello.suripu.analytics.configuration;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.collect.ImmutableList;
+import io.dropwizard.validation.ValidationMethod;
+import org.hibernate.validator.constraints.NotEmpty;
+
+import javax.validation.constraints.NotNull;
+import java.util.List;
+
+/**
+ * A periodic data reading outside of [min, max] marks the meter and is logged as a bad reading. Either bound may be
+ * left out, not both.
+ */
+public class DataQualityRuleConfiguration {
+
+    /**
+     * A disabled rule is not evaluated, its meter is still registered
+     */
+    @NotNull
+    @JsonProperty("enabled")
+    private Boolean enabled = Boolean.TRUE;
+
+    public Boolean getEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Meter marked for every bad reading, several rules may share one
+     */
+    @NotEmpty
+    @JsonProperty("metric")
+    private String metric;
+
+    public String getMetric() {
+        return metric;
+    }
+
+    /**
+     * Name of the sensor in the bad_sensor log lines, the field name when left out
+     */
+    @JsonProperty("sensor")
+    private String sensor;
+
+    public String getSensor() {
+        return (sensor == null) ? field.name().toLowerCase() : sensor;
+    }
+
+    @NotNull
+    @JsonProperty("field")
+    private SenseReadingField field;
+
+    public SenseReadingField getField() {
+        return field;
+    }
+
+    @JsonProperty("min")
+    private Integer min;
+
+    public Integer getMin() {
+        return min;
+    }
+
+    @JsonProperty("max")
+    private Integer max;
+
+    public Integer getMax() {
+        return max;
+    }
+
+    @NotNull
+    @JsonProperty("hardware")
+    private SenseHardware hardware = SenseHardware.ANY;
+
+    public SenseHardware getHardware() {
+        return hardware;
+    }
+
+    /**
+     * Firmware versions the rule applies to, inclusive, all when left out
+     */
+    @JsonProperty("min_firmware")
+    private Integer minFirmware;
+
+    public Integer getMinFirmware() {
+        return minFirmware;
+    }
+
+    @JsonProperty("max_firmware")
+    private Integer maxFirmware;
+
+    public Integer getMaxFirmware() {
+        return maxFirmware;
+    }
+
+    @ValidationMethod(message = "data quality rules need a min or a max")
+    public boolean isBounded() {
+        return min != null || max != null;
+    }
+
+    public DataQualityRuleConfiguration() {
+    }
+
+    private DataQualityRuleConfiguration(final String metric, final String sensor, final SenseReadingField field, final Integer min, final Integer max,
+                                         final SenseHardware hardware) {
+        this.metric = metric;
+        this.sensor = sensor;
+        this.field = field;
+        this.min = min;
+        this.max = max;
+        this.hardware = hardware;
+    }
+
+    private DataQualityRuleConfiguration disabled() {
+        this.enabled = Boolean.FALSE;
+        return this;
+    }
+
+    /**
+     * Rules used when the configuration has none, same as the ones in the example configuration.
+     */
+    public static List<DataQualityRuleConfiguration> defaults() {
+        return ImmutableList.of(
+                new DataQualityRuleConfiguration("low-co2", "co2", SenseReadingField.CO2, 400, null, SenseHardware.ANY),
+                new DataQualityRuleConfiguration("high-co2", "co2", SenseReadingField.CO2, null, 3500, SenseHardware.ANY), // in ppm
+                new DataQualityRuleConfiguration("low-pa", "pa", SenseReadingField.PRESSURE, 900 * 256 * 100, null, SenseHardware.ANY), // in mbar
+                new DataQualityRuleConfiguration("high-pa", "pa", SenseReadingField.PRESSURE, null, 1086 * 256 * 100, SenseHardware.ANY), // strongest sea level
+                new DataQualityRuleConfiguration("high-uv", "uv", SenseReadingField.UV, null, 6, SenseHardware.ANY),
+                new DataQualityRuleConfiguration("high-dust", "dust", SenseReadingField.DUST, null, 250 * 6, SenseHardware.ANY), // 6 is roughly density to raw conversion, rounded up
+                new DataQualityRuleConfiguration("high-lux", "onefivelux", SenseReadingField.LIGHT, null, 100000, SenseHardware.ONE_FIVE), // highest range of direct sunlight
+                new DataQualityRuleConfiguration("high-lux", "onelux", SenseReadingField.LIGHT, null, 4194304, SenseHardware.ONE), // max counts
+                new DataQualityRuleConfiguration("low-hum", "hum", SenseReadingField.HUMIDITY, 1 * 100, null, SenseHardware.ANY),
+                new DataQualityRuleConfiguration("high-hum", "hum", SenseReadingField.HUMIDITY, null, 99 * 100, SenseHardware.ANY),
+                new DataQualityRuleConfiguration("low-tmp", "tmp", SenseReadingField.TEMPERATURE, 0 * 100, null, SenseHardware.ANY), // in deg C
+                new DataQualityRuleConfiguration("high-tmp", "tmp", SenseReadingField.TEMPERATURE, null, 100 * 100, SenseHardware.ANY),
+                new DataQualityRuleConfiguration("high-db", "db", SenseReadingField.AUDIO_PEAK_BACKGROUND_ENERGY_DB, null, (150 + 40) * 100, SenseHardware.ANY)
+                        .disabled()
+        );
+    }
+}
@@ -0,0 +1,13 @@
+package com.hello.suripu.analytics.configuration;
+
+/**
+ * How the latest wifi info and uptime of each sense are stored in redis.
+ */
+public enum DeviceInfoLayout {
+    /** One fleet-wide hash per kind, wifi_info and sense_uptimes, with plain text values. */
+    HASH,
+    /** Small hashes, each holding the senses of one bucket, with compact values. */
+    BUCKETED,
+    /** Both, while readers move to the bucketed layout. */
+    BOTH
+}
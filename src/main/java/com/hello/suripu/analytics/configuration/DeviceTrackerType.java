@@ -0,0 +1,13 @@
+package com.hello.suripu.analytics.configuration;
+
+/**
+ * How device state is written to redis.
+ */
+public enum DeviceTrackerType {
+    /** One MULTI/EXEC pipeline per batch, one command per device and key. */
+    PIPELINE,
+    /** One EVALSHA per batch, fan-out done by a lua script server-side. */
+    LUA,
+    /** Plain pipelines over several redis nodes, fleet-wide keys split into logical sub-keys by device id. */
+    SHARDED
+}
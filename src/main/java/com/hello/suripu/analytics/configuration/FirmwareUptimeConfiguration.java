@@ -0,0 +1,30 @@
+package com.hello.suripu.analytics.configuration;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import javax.validation.constraints.Max;
+import javax.validation.constraints.Min;
+
+public class FirmwareUptimeConfiguration {
+
+    /**
+     * Uptime is tracked separately for at most this many firmware versions, the most active ones; senses running any
+     * other version share one histogram
+     */
+    @Min(1)
+    @Max(200)
+    @JsonProperty("max_firmwares")
+    private Integer maxFirmwares = 20;
+
+    public Integer getMaxFirmwares() {
+        return maxFirmwares;
+    }
+
+    @Min(1)
+    @JsonProperty("interval_seconds")
+    private Integer intervalSeconds = 60;
+
+    public Integer getIntervalSeconds() {
+        return intervalSeconds;
+    }
+}
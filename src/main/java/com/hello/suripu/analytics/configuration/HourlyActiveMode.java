@@ -0,0 +1,15 @@
+package com.hello.suripu.analytics.configuration;
+
+/**
+ * How hourly active devices are recorded in redis.
+ */
+public enum HourlyActiveMode {
+    /** Plain sets of device ids, one per hour. */
+    SET,
+    /** HyperLogLogs only, one per hour plus a daily rollup. */
+    HYPERLOGLOG,
+    /** Both sets and HyperLogLogs. */
+    BOTH,
+    /** Roaring bitmaps of interned device ids, built in-process and persisted periodically. */
+    BITMAP
+}
@@ -0,0 +1,33 @@
+package com.hello.suripu.analytics.configuration;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import javax.validation.constraints.Max;
+import javax.validation.constraints.Min;
+
+public class LastSeenThrottleConfiguration {
+
+    @JsonProperty("enabled")
+    private Boolean enabled = Boolean.FALSE;
+
+    public Boolean getEnabled() {
+        return enabled;
+    }
+
+    @Min(1)
+    @Max(3600)
+    @JsonProperty("resolution_seconds")
+    private Integer resolutionSeconds = 60;
+
+    public Integer getResolutionSeconds() {
+        return resolutionSeconds;
+    }
+
+    @Min(1)
+    @JsonProperty("max_devices")
+    private Integer maxDevices = 250000;
+
+    public Integer getMaxDevices() {
+        return maxDevices;
+    }
+}
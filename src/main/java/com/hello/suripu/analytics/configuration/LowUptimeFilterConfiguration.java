@@ -0,0 +1,30 @@
+package com.hello.suripu.analytics.configuration;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import javax.validation.constraints.DecimalMax;
+import javax.validation.constraints.DecimalMin;
+import javax.validation.constraints.Min;
+
+public class LowUptimeFilterConfiguration {
+
+    /**
+     * Senses expected to reboot within an hour across the whole fleet, the filter grows less accurate past that
+     */
+    @Min(1)
+    @JsonProperty("expected_senses")
+    private Integer expectedSenses = 100000;
+
+    public Integer getExpectedSenses() {
+        return expectedSenses;
+    }
+
+    @DecimalMin("0.0001")
+    @DecimalMax("0.5")
+    @JsonProperty("false_positive_probability")
+    private Double falsePositiveProbability = 0.01;
+
+    public Double getFalsePositiveProbability() {
+        return falsePositiveProbability;
+    }
+}
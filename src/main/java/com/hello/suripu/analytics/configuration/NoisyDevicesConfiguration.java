@@ -0,0 +1,30 @@
+package com.hello.suripu.analytics.configuration;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import javax.validation.constraints.Max;
+import javax.validation.constraints.Min;
+
+public class NoisyDevicesConfiguration {
+
+    /**
+     * Counters kept per data quality metric, for device ids and for firmware versions each; counts of the top ones
+     * are exact once they have more bad readings than the interval total divided by capacity
+     */
+    @Min(10)
+    @Max(10000)
+    @JsonProperty("capacity")
+    private Integer capacity = 100;
+
+    public Integer getCapacity() {
+        return capacity;
+    }
+
+    @Min(1)
+    @JsonProperty("interval_seconds")
+    private Integer intervalSeconds = 600;
+
+    public Integer getIntervalSeconds() {
+        return intervalSeconds;
+    }
+}
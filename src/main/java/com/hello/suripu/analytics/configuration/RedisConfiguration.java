@@ -3,6 +3,14 @@ package com.hello.suripu.analytics.configuration;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import io.dropwizard.Configuration;
 
+import java.util.Collections;
+import java.util.List;
+
+import javax.validation.Valid;
+import javax.validation.constraints.Max;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+
 public class RedisConfiguration extends Configuration {
     @JsonProperty("host")
     private String host;
@@ -17,4 +25,106 @@ public class RedisConfiguration extends Configuration {
     public Integer getPort() {
         return port;
     }
+
+    /**
+     * host:port of every node used by the sharded tracker
+     */
+    @NotNull
+    @JsonProperty("nodes")
+    private List<String> nodes = Collections.emptyList();
+
+    public List<String> getNodes() {
+        return nodes;
+    }
+
+    @Min(1)
+    @Max(16384)
+    @JsonProperty("logical_shards")
+    private Integer logicalShards = 64;
+
+    public Integer getLogicalShards() {
+        return logicalShards;
+    }
+
+    @Valid
+    @NotNull
+    @JsonProperty("pool")
+    private RedisPoolConfiguration pool = new RedisPoolConfiguration();
+
+    public RedisPoolConfiguration getPool() {
+        return pool;
+    }
+
+    @NotNull
+    @JsonProperty("tracker")
+    private DeviceTrackerType tracker = DeviceTrackerType.PIPELINE;
+
+    public DeviceTrackerType getTracker() {
+        return tracker;
+    }
+
+    @NotNull
+    @JsonProperty("hourly_active_mode")
+    private HourlyActiveMode hourlyActiveMode = HourlyActiveMode.SET;
+
+    public HourlyActiveMode getHourlyActiveMode() {
+        return hourlyActiveMode;
+    }
+
+    @NotNull
+    @JsonProperty("device_info_layout")
+    private DeviceInfoLayout deviceInfoLayout = DeviceInfoLayout.HASH;
+
+    public DeviceInfoLayout getDeviceInfoLayout() {
+        return deviceInfoLayout;
+    }
+
+    /**
+     * Buckets of the bucketed device info layout, enough to keep each bucket under hash-max-ziplist-entries; readers
+     * must use the same value
+     */
+    @Min(1)
+    @Max(1048576)
+    @JsonProperty("device_info_buckets")
+    private Integer deviceInfoBuckets = 4096;
+
+    public Integer getDeviceInfoBuckets() {
+        return deviceInfoBuckets;
+    }
+
+    @Min(5)
+    @Max(3600)
+    @JsonProperty("bitmap_persist_interval_seconds")
+    private Integer bitmapPersistIntervalSeconds = 60;
+
+    public Integer getBitmapPersistIntervalSeconds() {
+        return bitmapPersistIntervalSeconds;
+    }
+
+    @Valid
+    @NotNull
+    @JsonProperty("write_behind")
+    private WriteBehindConfiguration writeBehind = new WriteBehindConfiguration();
+
+    public WriteBehindConfiguration getWriteBehind() {
+        return writeBehind;
+    }
+
+    @Valid
+    @NotNull
+    @JsonProperty("last_seen_throttle")
+    private LastSeenThrottleConfiguration lastSeenThrottle = new LastSeenThrottleConfiguration();
+
+    public LastSeenThrottleConfiguration getLastSeenThrottle() {
+        return lastSeenThrottle;
+    }
+
+    @Valid
+    @NotNull
+    @JsonProperty("attribute_throttle")
+    private AttributeThrottleConfiguration attributeThrottle = new AttributeThrottleConfiguration();
+
+    public AttributeThrottleConfiguration getAttributeThrottle() {
+        return attributeThrottle;
+    }
 }
@@ -0,0 +1,66 @@
+package com.hello.suripu.analytics.configuration;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import javax.validation.constraints.Max;
+import javax.validation.constraints.Min;
+
+public class RedisPoolConfiguration {
+
+    @Min(1)
+    @Max(1024)
+    @JsonProperty("max_total")
+    private Integer maxTotal = 8;
+
+    public Integer getMaxTotal() {
+        return maxTotal;
+    }
+
+    @Min(0)
+    @Max(1024)
+    @JsonProperty("max_idle")
+    private Integer maxIdle = 8;
+
+    public Integer getMaxIdle() {
+        return maxIdle;
+    }
+
+    @Min(0)
+    @Max(1024)
+    @JsonProperty("min_idle")
+    private Integer minIdle = 0;
+
+    public Integer getMinIdle() {
+        return minIdle;
+    }
+
+    /**
+     * How long getResource() blocks when the pool is exhausted before failing
+     */
+    @Min(1)
+    @Max(60000)
+    @JsonProperty("max_wait_millis")
+    private Integer maxWaitMillis = 5000;
+
+    public Integer getMaxWaitMillis() {
+        return maxWaitMillis;
+    }
+
+    @Min(1)
+    @Max(60000)
+    @JsonProperty("connection_timeout_millis")
+    private Integer connectionTimeoutMillis = 2000;
+
+    public Integer getConnectionTimeoutMillis() {
+        return connectionTimeoutMillis;
+    }
+
+    @Min(1)
+    @Max(60000)
+    @JsonProperty("so_timeout_millis")
+    private Integer soTimeoutMillis = 2000;
+
+    public Integer getSoTimeoutMillis() {
+        return soTimeoutMillis;
+    }
+}
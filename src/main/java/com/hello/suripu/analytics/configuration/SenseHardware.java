@@ -0,0 +1,10 @@
+package com.hello.suripu.analytics.configuration;
+
+/**
+ * Sense hardware a data quality rule applies to, told apart by the light sensor only senses 1.5 report.
+ */
+public enum SenseHardware {
+    ANY,
+    ONE,
+    ONE_FIVE
+}
@@ -0,0 +1,18 @@
+package com.hello.suripu.analytics.configuration;
+
+/**
+ * Periodic data readings data quality rules can check.
+ */
+public enum SenseReadingField {
+    CO2,
+    PRESSURE,
+    /** Only present on senses 1.5. */
+    UV,
+    DUST,
+    /** Always present, in counts on senses 1.0 and lux on senses 1.5. */
+    LIGHT,
+    HUMIDITY,
+    TEMPERATURE,
+    /** Peak background noise, in hundredths of dB. */
+    AUDIO_PEAK_BACKGROUND_ENERGY_DB
+}
@@ -0,0 +1,33 @@
+package com.hello.suripu.analytics.configuration;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import javax.validation.constraints.Max;
+import javax.validation.constraints.Min;
+
+public class WriteBehindConfiguration {
+
+    @JsonProperty("enabled")
+    private Boolean enabled = Boolean.FALSE;
+
+    public Boolean getEnabled() {
+        return enabled;
+    }
+
+    @Min(100)
+    @Max(60000)
+    @JsonProperty("flush_interval_millis")
+    private Integer flushIntervalMillis = 1000;
+
+    public Integer getFlushIntervalMillis() {
+        return flushIntervalMillis;
+    }
+
+    @Min(1)
+    @JsonProperty("max_pending_devices")
+    private Integer maxPendingDevices = 50000;
+
+    public Integer getMaxPendingDevices() {
+        return maxPendingDevices;
+    }
+}
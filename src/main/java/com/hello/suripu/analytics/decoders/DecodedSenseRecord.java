@@ -0,0 +1,355 @@
+package com.hello.suripu.analytics.decoders;
+
+import com.google.common.base.Charsets;
+
+import com.hello.suripu.analytics.configuration.SenseReadingField;
+
+import java.util.Arrays;
+
+/**
+ * Fields of a BatchPeriodicDataWorker that analytics consumes, filled by {@link SenseRecordDecoder}.
+ *
+ * Instances are meant to be reused from one record to the next: periodic data is kept in primitive arrays that only
+ * grow, and {@link #periodicDataCount()} tells how many entries belong to the current record. Presence of optional
+ * fields mirrors the protobuf has* methods. Readings can also be looked up by {@link SenseReadingField} ordinal,
+ * without branching on the field.
+ */
+public class DecodedSenseRecord {
+
+    private static final int INITIAL_CAPACITY = 16;
+    private static final int INITIAL_SCAN_CAPACITY = 32;
+
+    String sequenceNumber;
+    String deviceId;
+    boolean hasFirmwareVersion;
+    int firmwareVersion;
+
+    int uptimeInSecond;
+    long receivedAt;
+    boolean hasFirmwareTopVersion;
+    String firmwareTopVersion;
+    String firmwareMiddleVersion;
+
+    // connected ssid and scan list ssids are kept as slices of the record bytes until needed
+    byte[] source;
+    boolean hasConnectedSsid;
+    int connectedSsidOffset;
+    int connectedSsidLength;
+    String connectedSsid;
+    int scanCount;
+    int[] scanSsidOffsets = new int[INITIAL_SCAN_CAPACITY];
+    int[] scanSsidLengths = new int[INITIAL_SCAN_CAPACITY];
+    int[] scanRssis = new int[INITIAL_SCAN_CAPACITY];
+
+    int periodicDataCount;
+    int[] unixTimes = new int[INITIAL_CAPACITY];
+    int[] waveCounts = new int[INITIAL_CAPACITY];
+    int[] periodicFirmwareVersions = new int[INITIAL_CAPACITY];
+    int[] lights = new int[INITIAL_CAPACITY];
+    int[] temperatures = new int[INITIAL_CAPACITY];
+    int[] humidities = new int[INITIAL_CAPACITY];
+    int[] dusts = new int[INITIAL_CAPACITY];
+    int[] co2s = new int[INITIAL_CAPACITY];
+    int[] pressures = new int[INITIAL_CAPACITY];
+    int[] uvCounts = new int[INITIAL_CAPACITY];
+    int[] audioPeakBackgroundEnergyDbs = new int[INITIAL_CAPACITY];
+    boolean[] hasTemperatures = new boolean[INITIAL_CAPACITY];
+    boolean[] hasHumidities = new boolean[INITIAL_CAPACITY];
+    boolean[] hasDusts = new boolean[INITIAL_CAPACITY];
+    boolean[] hasCo2s = new boolean[INITIAL_CAPACITY];
+    boolean[] hasPressures = new boolean[INITIAL_CAPACITY];
+    boolean[] hasLightSensors = new boolean[INITIAL_CAPACITY];
+    boolean[] hasAudioPeakBackgroundEnergyDbs = new boolean[INITIAL_CAPACITY];
+    // light is always present and uv is present with the light sensor
+    boolean[] alwaysPresent = filled(INITIAL_CAPACITY);
+
+    // rows are the arrays above, by SenseReadingField ordinal, rebound whenever they grow
+    private final int[][] readings = new int[SenseReadingField.values().length][];
+    private final boolean[][] readingPresences = new boolean[SenseReadingField.values().length][];
+
+    public DecodedSenseRecord() {
+        bindReadings();
+    }
+
+    void clear() {
+        sequenceNumber = null;
+        deviceId = "";
+        hasFirmwareVersion = false;
+        firmwareVersion = 0;
+        uptimeInSecond = 0;
+        receivedAt = 0L;
+        hasFirmwareTopVersion = false;
+        firmwareTopVersion = "";
+        firmwareMiddleVersion = "";
+        source = null;
+        hasConnectedSsid = false;
+        connectedSsidOffset = 0;
+        connectedSsidLength = 0;
+        connectedSsid = null;
+        scanCount = 0;
+        periodicDataCount = 0;
+    }
+
+    /**
+     * Appends an empty periodic data entry and returns its index.
+     */
+    int addPeriodicData() {
+        if (periodicDataCount == unixTimes.length) {
+            final int capacity = unixTimes.length * 2;
+            unixTimes = Arrays.copyOf(unixTimes, capacity);
+            waveCounts = Arrays.copyOf(waveCounts, capacity);
+            periodicFirmwareVersions = Arrays.copyOf(periodicFirmwareVersions, capacity);
+            lights = Arrays.copyOf(lights, capacity);
+            temperatures = Arrays.copyOf(temperatures, capacity);
+            humidities = Arrays.copyOf(humidities, capacity);
+            dusts = Arrays.copyOf(dusts, capacity);
+            co2s = Arrays.copyOf(co2s, capacity);
+            pressures = Arrays.copyOf(pressures, capacity);
+            uvCounts = Arrays.copyOf(uvCounts, capacity);
+            audioPeakBackgroundEnergyDbs = Arrays.copyOf(audioPeakBackgroundEnergyDbs, capacity);
+            hasTemperatures = Arrays.copyOf(hasTemperatures, capacity);
+            hasHumidities = Arrays.copyOf(hasHumidities, capacity);
+            hasDusts = Arrays.copyOf(hasDusts, capacity);
+            hasCo2s = Arrays.copyOf(hasCo2s, capacity);
+            hasPressures = Arrays.copyOf(hasPressures, capacity);
+            hasLightSensors = Arrays.copyOf(hasLightSensors, capacity);
+            hasAudioPeakBackgroundEnergyDbs = Arrays.copyOf(hasAudioPeakBackgroundEnergyDbs, capacity);
+            alwaysPresent = filled(capacity);
+            bindReadings();
+        }
+        final int index = periodicDataCount++;
+        unixTimes[index] = 0;
+        waveCounts[index] = 0;
+        periodicFirmwareVersions[index] = 0;
+        lights[index] = 0;
+        temperatures[index] = 0;
+        humidities[index] = 0;
+        dusts[index] = 0;
+        co2s[index] = 0;
+        pressures[index] = 0;
+        uvCounts[index] = 0;
+        audioPeakBackgroundEnergyDbs[index] = 0;
+        hasTemperatures[index] = false;
+        hasHumidities[index] = false;
+        hasDusts[index] = false;
+        hasCo2s[index] = false;
+        hasPressures[index] = false;
+        hasLightSensors[index] = false;
+        hasAudioPeakBackgroundEnergyDbs[index] = false;
+        return index;
+    }
+
+    private void bindReadings() {
+        bindReading(SenseReadingField.CO2, co2s, hasCo2s);
+        bindReading(SenseReadingField.PRESSURE, pressures, hasPressures);
+        bindReading(SenseReadingField.UV, uvCounts, hasLightSensors);
+        bindReading(SenseReadingField.DUST, dusts, hasDusts);
+        bindReading(SenseReadingField.LIGHT, lights, alwaysPresent);
+        bindReading(SenseReadingField.HUMIDITY, humidities, hasHumidities);
+        bindReading(SenseReadingField.TEMPERATURE, temperatures, hasTemperatures);
+        bindReading(SenseReadingField.AUDIO_PEAK_BACKGROUND_ENERGY_DB, audioPeakBackgroundEnergyDbs, hasAudioPeakBackgroundEnergyDbs);
+    }
+
+    private void bindReading(final SenseReadingField field, final int[] values, final boolean[] presences) {
+        readings[field.ordinal()] = values;
+        readingPresences[field.ordinal()] = presences;
+    }
+
+    private static boolean[] filled(final int capacity) {
+        final boolean[] array = new boolean[capacity];
+        Arrays.fill(array, true);
+        return array;
+    }
+
+    /**
+     * Appends an empty scan list entry and returns its index.
+     */
+    int addScan() {
+        if (scanCount == scanRssis.length) {
+            final int capacity = scanRssis.length * 2;
+            scanSsidOffsets = Arrays.copyOf(scanSsidOffsets, capacity);
+            scanSsidLengths = Arrays.copyOf(scanSsidLengths, capacity);
+            scanRssis = Arrays.copyOf(scanRssis, capacity);
+        }
+        final int index = scanCount++;
+        scanSsidOffsets[index] = 0;
+        scanSsidLengths[index] = 0;
+        scanRssis[index] = 0;
+        return index;
+    }
+
+    /**
+     * @return sequence number of the kinesis record this was decoded from, when set by the caller
+     */
+    public String sequenceNumber() {
+        return sequenceNumber;
+    }
+
+    public void setSequenceNumber(final String sequenceNumber) {
+        this.sequenceNumber = sequenceNumber;
+    }
+
+    public String deviceId() {
+        return deviceId;
+    }
+
+    public boolean hasFirmwareVersion() {
+        return hasFirmwareVersion;
+    }
+
+    public int firmwareVersion() {
+        return firmwareVersion;
+    }
+
+    public int uptimeInSecond() {
+        return uptimeInSecond;
+    }
+
+    public long receivedAt() {
+        return receivedAt;
+    }
+
+    public boolean hasFirmwareTopVersion() {
+        return hasFirmwareTopVersion;
+    }
+
+    public String firmwareTopVersion() {
+        return firmwareTopVersion;
+    }
+
+    public String firmwareMiddleVersion() {
+        return firmwareMiddleVersion;
+    }
+
+    public boolean hasConnectedSsid() {
+        return hasConnectedSsid;
+    }
+
+    /**
+     * @return the connected ssid, or the given default when the record has none
+     */
+    public String connectedSsid(final String defaultSsid) {
+        if (!hasConnectedSsid) {
+            return defaultSsid;
+        }
+        if (connectedSsid == null) {
+            connectedSsid = new String(source, connectedSsidOffset, connectedSsidLength, Charsets.UTF_8);
+        }
+        return connectedSsid;
+    }
+
+    /**
+     * @return rssi of the first scanned access point named like the connected ssid (an absent ssid compares as
+     * empty), or the given default
+     */
+    public int connectedRssi(final int defaultRssi) {
+        for (int i = 0; i < scanCount; i++) {
+            if (sameBytes(scanSsidOffsets[i], scanSsidLengths[i], connectedSsidOffset, connectedSsidLength)) {
+                return scanRssis[i];
+            }
+        }
+        return defaultRssi;
+    }
+
+    private boolean sameBytes(final int offset, final int length, final int otherOffset, final int otherLength) {
+        if (length != otherLength) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (source[offset + i] != source[otherOffset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public int periodicDataCount() {
+        return periodicDataCount;
+    }
+
+    public int unixTime(final int index) {
+        return unixTimes[index];
+    }
+
+    public int waveCount(final int index) {
+        return waveCounts[index];
+    }
+
+    public int firmwareVersion(final int index) {
+        return periodicFirmwareVersions[index];
+    }
+
+    public int light(final int index) {
+        return lights[index];
+    }
+
+    public boolean hasTemperature(final int index) {
+        return hasTemperatures[index];
+    }
+
+    public int temperature(final int index) {
+        return temperatures[index];
+    }
+
+    public boolean hasHumidity(final int index) {
+        return hasHumidities[index];
+    }
+
+    public int humidity(final int index) {
+        return humidities[index];
+    }
+
+    public boolean hasDust(final int index) {
+        return hasDusts[index];
+    }
+
+    public int dust(final int index) {
+        return dusts[index];
+    }
+
+    public boolean hasCo2(final int index) {
+        return hasCo2s[index];
+    }
+
+    public int co2(final int index) {
+        return co2s[index];
+    }
+
+    public boolean hasPressure(final int index) {
+        return hasPressures[index];
+    }
+
+    public int pressure(final int index) {
+        return pressures[index];
+    }
+
+    public boolean hasLightSensor(final int index) {
+        return hasLightSensors[index];
+    }
+
+    public int uvCount(final int index) {
+        return uvCounts[index];
+    }
+
+    /**
+     * @param field ordinal of a {@link SenseReadingField}
+     */
+    public boolean hasReading(final int field, final int index) {
+        return readingPresences[field][index];
+    }
+
+    /**
+     * @param field ordinal of a {@link SenseReadingField}
+     */
+    public int reading(final int field, final int index) {
+        return readings[field][index];
+    }
+
+    public boolean hasAudioPeakBackgroundEnergyDb(final int index) {
+        return hasAudioPeakBackgroundEnergyDbs[index];
+    }
+
+    public int audioPeakBackgroundEnergyDb(final int index) {
+        return audioPeakBackgroundEnergyDbs[index];
+    }
+}
@@ -0,0 +1,244 @@
+package com.hello.suripu.analytics.decoders;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableSet;
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.Descriptors;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.WireFormat;
+
+import com.hello.suripu.api.input.DataInputProtos;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Set;
+
+/**
+ * Decodes a serialized BatchPeriodicDataWorker straight from the kinesis record buffer, keeping only the fields
+ * analytics consumes and skipping everything else (ip address, pill data, audio other than its peak background
+ * energy, gestures...).
+ *
+ * Heap buffers are read in place, honoring their offset and position. Field numbers and wire types come from the
+ * generated descriptors and are checked once when the class loads, so a proto change fails loudly instead of
+ * silently decoding garbage. The decoder itself holds no state; {@link DecodedSenseRecord} instances must not be
+ * shared between threads.
+ */
+public class SenseRecordDecoder {
+
+    private static final Set<Descriptors.FieldDescriptor.Type> VARINT_TYPES = ImmutableSet.of(
+            Descriptors.FieldDescriptor.Type.INT32, Descriptors.FieldDescriptor.Type.INT64,
+            Descriptors.FieldDescriptor.Type.UINT32, Descriptors.FieldDescriptor.Type.UINT64);
+
+    private static final Descriptors.Descriptor WORKER = DataInputProtos.BatchPeriodicDataWorker.getDescriptor();
+    private static final Descriptors.Descriptor BATCH = DataInputProtos.batched_periodic_data.getDescriptor();
+    private static final Descriptors.Descriptor ACCESS_POINT = DataInputProtos.batched_periodic_data.wifi_access_point.getDescriptor();
+    private static final Descriptors.Descriptor PERIODIC = DataInputProtos.periodic_data.getDescriptor();
+    private static final Descriptors.Descriptor LIGHT_SENSOR = PERIODIC.findFieldByName("light_sensor").getMessageType();
+
+    private static final int WORKER_DATA = messageTag(WORKER, "data");
+    private static final int WORKER_RECEIVED_AT = varintTag(WORKER, "received_at");
+    private static final int WORKER_UPTIME_IN_SECOND = varintTag(WORKER, "uptime_in_second");
+    private static final int WORKER_FIRMWARE_TOP_VERSION = stringTag(WORKER, "firmware_top_version");
+    private static final int WORKER_FIRMWARE_MIDDLE_VERSION = stringTag(WORKER, "firmware_middle_version");
+
+    private static final int BATCH_DEVICE_ID = stringTag(BATCH, "device_id");
+    private static final int BATCH_FIRMWARE_VERSION = varintTag(BATCH, "firmware_version");
+    private static final int BATCH_CONNECTED_SSID = stringTag(BATCH, "connected_ssid");
+    private static final int BATCH_SCAN = messageTag(BATCH, "scan");
+    private static final int BATCH_DATA = messageTag(BATCH, "data");
+
+    private static final int ACCESS_POINT_SSID = stringTag(ACCESS_POINT, "ssid");
+    private static final int ACCESS_POINT_RSSI = varintTag(ACCESS_POINT, "rssi");
+
+    private static final int PERIODIC_UNIX_TIME = varintTag(PERIODIC, "unix_time");
+    private static final int PERIODIC_WAVE_COUNT = varintTag(PERIODIC, "wave_count");
+    private static final int PERIODIC_FIRMWARE_VERSION = varintTag(PERIODIC, "firmware_version");
+    private static final int PERIODIC_LIGHT = varintTag(PERIODIC, "light");
+    private static final int PERIODIC_TEMPERATURE = varintTag(PERIODIC, "temperature");
+    private static final int PERIODIC_HUMIDITY = varintTag(PERIODIC, "humidity");
+    private static final int PERIODIC_DUST = varintTag(PERIODIC, "dust");
+    private static final int PERIODIC_CO2 = varintTag(PERIODIC, "co2");
+    private static final int PERIODIC_PRESSURE = varintTag(PERIODIC, "pressure");
+    private static final int PERIODIC_AUDIO_PEAK_BACKGROUND_ENERGY_DB = varintTag(PERIODIC, "audio_peak_background_energy_db");
+    private static final int PERIODIC_LIGHT_SENSOR = messageTag(PERIODIC, "light_sensor");
+
+    private static final int LIGHT_SENSOR_UV_COUNT = varintTag(LIGHT_SENSOR, "uv_count");
+
+    /**
+     * Fills the record with the given serialized BatchPeriodicDataWorker. The buffer position is left untouched.
+     */
+    public void decode(final ByteBuffer data, final DecodedSenseRecord record) throws InvalidProtocolBufferException {
+        final byte[] bytes;
+        final int offset;
+        if (data.hasArray()) {
+            bytes = data.array();
+            offset = data.arrayOffset() + data.position();
+        } else {
+            bytes = new byte[data.remaining()];
+            data.duplicate().get(bytes);
+            offset = 0;
+        }
+        decode(bytes, offset, data.remaining(), record);
+    }
+
+    public void decode(final byte[] bytes, final int offset, final int length, final DecodedSenseRecord record) throws InvalidProtocolBufferException {
+        record.clear();
+        record.source = bytes;
+        final CodedInputStream input = CodedInputStream.newInstance(bytes, offset, length);
+        try {
+            decodeWorker(input, offset, record);
+        } catch (InvalidProtocolBufferException e) {
+            throw e;
+        } catch (IOException e) {
+            throw new InvalidProtocolBufferException(e.getMessage());
+        }
+    }
+
+    private void decodeWorker(final CodedInputStream input, final int offset, final DecodedSenseRecord record) throws IOException {
+        int tag;
+        while ((tag = input.readTag()) != 0) {
+            if (tag == WORKER_DATA) {
+                final int oldLimit = input.pushLimit(input.readRawVarint32());
+                decodeBatch(input, offset, record);
+                input.popLimit(oldLimit);
+            } else if (tag == WORKER_RECEIVED_AT) {
+                record.receivedAt = input.readInt64();
+            } else if (tag == WORKER_UPTIME_IN_SECOND) {
+                record.uptimeInSecond = input.readInt32();
+            } else if (tag == WORKER_FIRMWARE_TOP_VERSION) {
+                record.hasFirmwareTopVersion = true;
+                record.firmwareTopVersion = input.readString();
+            } else if (tag == WORKER_FIRMWARE_MIDDLE_VERSION) {
+                record.firmwareMiddleVersion = input.readString();
+            } else if (!input.skipField(tag)) {
+                return;
+            }
+        }
+    }
+
+    private void decodeBatch(final CodedInputStream input, final int offset, final DecodedSenseRecord record) throws IOException {
+        int tag;
+        while ((tag = input.readTag()) != 0) {
+            if (tag == BATCH_DEVICE_ID) {
+                record.deviceId = input.readString();
+            } else if (tag == BATCH_FIRMWARE_VERSION) {
+                record.hasFirmwareVersion = true;
+                record.firmwareVersion = input.readInt32();
+            } else if (tag == BATCH_CONNECTED_SSID) {
+                final int length = input.readRawVarint32();
+                record.hasConnectedSsid = true;
+                record.connectedSsidOffset = offset + input.getTotalBytesRead();
+                record.connectedSsidLength = length;
+                input.skipRawBytes(length);
+            } else if (tag == BATCH_SCAN) {
+                final int oldLimit = input.pushLimit(input.readRawVarint32());
+                decodeAccessPoint(input, offset, record, record.addScan());
+                input.popLimit(oldLimit);
+            } else if (tag == BATCH_DATA) {
+                final int oldLimit = input.pushLimit(input.readRawVarint32());
+                decodePeriodicData(input, record, record.addPeriodicData());
+                input.popLimit(oldLimit);
+            } else if (!input.skipField(tag)) {
+                return;
+            }
+        }
+    }
+
+    private void decodeAccessPoint(final CodedInputStream input, final int offset, final DecodedSenseRecord record, final int index) throws IOException {
+        int tag;
+        while ((tag = input.readTag()) != 0) {
+            if (tag == ACCESS_POINT_SSID) {
+                final int length = input.readRawVarint32();
+                record.scanSsidOffsets[index] = offset + input.getTotalBytesRead();
+                record.scanSsidLengths[index] = length;
+                input.skipRawBytes(length);
+            } else if (tag == ACCESS_POINT_RSSI) {
+                record.scanRssis[index] = input.readInt32();
+            } else if (!input.skipField(tag)) {
+                return;
+            }
+        }
+    }
+
+    private void decodePeriodicData(final CodedInputStream input, final DecodedSenseRecord record, final int index) throws IOException {
+        int tag;
+        while ((tag = input.readTag()) != 0) {
+            if (tag == PERIODIC_UNIX_TIME) {
+                record.unixTimes[index] = input.readInt32();
+            } else if (tag == PERIODIC_WAVE_COUNT) {
+                record.waveCounts[index] = input.readInt32();
+            } else if (tag == PERIODIC_FIRMWARE_VERSION) {
+                record.periodicFirmwareVersions[index] = input.readInt32();
+            } else if (tag == PERIODIC_LIGHT) {
+                record.lights[index] = input.readInt32();
+            } else if (tag == PERIODIC_TEMPERATURE) {
+                record.hasTemperatures[index] = true;
+                record.temperatures[index] = input.readInt32();
+            } else if (tag == PERIODIC_HUMIDITY) {
+                record.hasHumidities[index] = true;
+                record.humidities[index] = input.readInt32();
+            } else if (tag == PERIODIC_DUST) {
+                record.hasDusts[index] = true;
+                record.dusts[index] = input.readInt32();
+            } else if (tag == PERIODIC_CO2) {
+                record.hasCo2s[index] = true;
+                record.co2s[index] = input.readInt32();
+            } else if (tag == PERIODIC_PRESSURE) {
+                record.hasPressures[index] = true;
+                record.pressures[index] = input.readInt32();
+            } else if (tag == PERIODIC_AUDIO_PEAK_BACKGROUND_ENERGY_DB) {
+                record.hasAudioPeakBackgroundEnergyDbs[index] = true;
+                record.audioPeakBackgroundEnergyDbs[index] = input.readInt32();
+            } else if (tag == PERIODIC_LIGHT_SENSOR) {
+                record.hasLightSensors[index] = true;
+                final int oldLimit = input.pushLimit(input.readRawVarint32());
+                decodeLightSensor(input, record, index);
+                input.popLimit(oldLimit);
+            } else if (!input.skipField(tag)) {
+                return;
+            }
+        }
+    }
+
+    private void decodeLightSensor(final CodedInputStream input, final DecodedSenseRecord record, final int index) throws IOException {
+        int tag;
+        while ((tag = input.readTag()) != 0) {
+            if (tag == LIGHT_SENSOR_UV_COUNT) {
+                record.uvCounts[index] = input.readInt32();
+            } else if (!input.skipField(tag)) {
+                return;
+            }
+        }
+    }
+
+    private static int varintTag(final Descriptors.Descriptor descriptor, final String fieldName) {
+        final Descriptors.FieldDescriptor field = field(descriptor, fieldName);
+        Preconditions.checkState(VARINT_TYPES.contains(field.getType()) && !field.isRepeated(),
+                "%s.%s is not a plain varint", descriptor.getName(), fieldName);
+        return tag(field.getNumber(), WireFormat.WIRETYPE_VARINT);
+    }
+
+    private static int stringTag(final Descriptors.Descriptor descriptor, final String fieldName) {
+        final Descriptors.FieldDescriptor field = field(descriptor, fieldName);
+        Preconditions.checkState(field.getType() == Descriptors.FieldDescriptor.Type.STRING && !field.isRepeated(),
+                "%s.%s is not a string", descriptor.getName(), fieldName);
+        return tag(field.getNumber(), WireFormat.WIRETYPE_LENGTH_DELIMITED);
+    }
+
+    private static int messageTag(final Descriptors.Descriptor descriptor, final String fieldName) {
+        final Descriptors.FieldDescriptor field = field(descriptor, fieldName);
+        Preconditions.checkState(field.getType() == Descriptors.FieldDescriptor.Type.MESSAGE,
+                "%s.%s is not a message", descriptor.getName(), fieldName);
+        return tag(field.getNumber(), WireFormat.WIRETYPE_LENGTH_DELIMITED);
+    }
+
+    private static Descriptors.FieldDescriptor field(final Descriptors.Descriptor descriptor, final String fieldName) {
+        final Descriptors.FieldDescriptor field = descriptor.findFieldByName(fieldName);
+        Preconditions.checkState(field != null, "%s has no field %s", descriptor.getName(), fieldName);
+        return field;
+    }
+
+    private static int tag(final int fieldNumber, final int wireType) {
+        return (fieldNumber << 3) | wireType;
+    }
+}
@@ -1,11 +1,16 @@
 package com.hello.suripu.analytics.framework;
 
+import com.amazonaws.services.kinesis.clientlibrary.lib.worker.Worker;
+import com.google.common.collect.Lists;
 import io.dropwizard.cli.ConfiguredCommand;
 
 import io.dropwizard.Configuration;
 import io.dropwizard.setup.Bootstrap;
 import io.dropwizard.setup.Environment;
 import net.sourceforge.argparse4j.inf.Namespace;
+import org.eclipse.jetty.util.component.LifeCycle;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * A command which executes with a configured {@link Environment}.
@@ -15,6 +20,10 @@ import net.sourceforge.argparse4j.inf.Namespace;
  */
 public abstract class AnalyticsEnvironmentCommand<T extends Configuration> extends ConfiguredCommand<T> {
 
+    private final static Logger LOGGER = LoggerFactory.getLogger(AnalyticsEnvironmentCommand.class);
+
+    private static final long WORKER_SHUTDOWN_TIMEOUT_MILLIS = 30000L;
+
     /**
      * Creates a new environment command.
      *
@@ -38,6 +47,77 @@ public abstract class AnalyticsEnvironmentCommand<T extends Configuration> exten
         run(environment, namespace, configuration);
     }
 
+    /**
+     * Starts the objects registered with the environment lifecycle. Commands do not run a server, so nothing
+     * else will start them.
+     *
+     * @param environment the configured environment
+     * @throws Exception if a managed object fails to start
+     */
+    protected void startManagedObjects(Environment environment) throws Exception {
+        for (final LifeCycle managedObject : environment.lifecycle().getManagedObjects()) {
+            managedObject.start();
+        }
+    }
+
+    /**
+     * Stops the objects registered with the environment lifecycle, in reverse order of registration so that an
+     * object is stopped before whatever it depends on. Every object is stopped even if an earlier one fails.
+     *
+     * @param environment the configured environment
+     * @throws Exception the first failure of a managed object to stop
+     */
+    protected void stopManagedObjects(Environment environment) throws Exception {
+        Exception failure = null;
+        for (final LifeCycle managedObject : Lists.reverse(environment.lifecycle().getManagedObjects())) {
+            try {
+                managedObject.stop();
+            } catch (Exception e) {
+                if (failure == null) {
+                    failure = e;
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Runs the Kinesis worker on the calling thread until the JVM shuts down. Worker commands only end on a signal,
+     * which never reaches a finally block, so a shutdown hook stops the worker and then the managed objects.
+     * {@link Worker#shutdown()} only asks the run loop to end; the hook waits up to 30 seconds for it so processors
+     * are not left writing to closed pools and trackers.
+     *
+     * @param environment the configured environment
+     * @param worker      the worker run by the command
+     */
+    protected void runWorker(final Environment environment, final Worker worker) {
+        final Thread workerThread = Thread.currentThread();
+        Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+            @Override
+            public void run() {
+                worker.shutdown();
+                try {
+                    workerThread.join(WORKER_SHUTDOWN_TIMEOUT_MILLIS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                if (workerThread.isAlive()) {
+                    LOGGER.warn("warning=worker-shutdown-timeout worker={} timeout_millis={}",
+                            worker.getApplicationName(), WORKER_SHUTDOWN_TIMEOUT_MILLIS);
+                }
+                try {
+                    stopManagedObjects(environment);
+                } catch (Exception e) {
+                    LOGGER.error("error=managed-object-stop-failure message={}", e.getMessage());
+                }
+            }
+        }, "managed-objects-shutdown"));
+        worker.run();
+        LOGGER.info("worker={} action=stopped", worker.getApplicationName());
+    }
+
     /**
      * Runs the command with the given {@link Environment} and {@link Configuration}.
      *
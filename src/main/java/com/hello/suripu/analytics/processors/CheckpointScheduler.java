@@ -0,0 +1,160 @@
+package com.hello.suripu.analytics.processors;
+
+import com.amazonaws.services.kinesis.clientlibrary.exceptions.InvalidStateException;
+import com.amazonaws.services.kinesis.clientlibrary.exceptions.KinesisClientLibRetryableException;
+import com.amazonaws.services.kinesis.clientlibrary.exceptions.ShutdownException;
+import com.amazonaws.services.kinesis.clientlibrary.interfaces.IRecordProcessorCheckpointer;
+import com.amazonaws.services.kinesis.clientlibrary.types.ShutdownReason;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.hello.suripu.analytics.configuration.CheckpointConfiguration;
+import com.hello.suripu.analytics.utils.DeviceTracker;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+/**
+ * Decides when a shard processor checkpoints with the KCL: every checkpoint is a lease table write, so instead of
+ * checkpointing every batch a shard checkpoints once enough time has passed or enough records were processed.
+ *
+ * A checkpoint must never cover records whose stats were not written. Processors retry the track calls of a batch
+ * that redis did not acknowledge, backing off through {@link #awaitWriteRetry()}, so a shard stalls rather than loses
+ * writes while redis is unavailable. Before checkpointing, the device tracker is flushed, and the checkpoint is
+ * deferred to the next batch unless the state it buffers was written. Everything after the last checkpoint is
+ * reprocessed by the next lease owner, which the trackers tolerate since they only record the latest state of a
+ * device.
+ *
+ * One instance per processor, not thread safe.
+ */
+public class CheckpointScheduler {
+
+    private final static Logger LOGGER = LoggerFactory.getLogger(CheckpointScheduler.class);
+    private final static long INITIAL_RETRY_DELAY_MILLIS = 100L;
+    private final static long MAX_RETRY_DELAY_MILLIS = 10000L;
+
+    private final DeviceTracker deviceTracker;
+    private final long intervalNanos;
+    private final long maxRecords;
+
+    private final Timer checkpointLatency;
+    private final Histogram recordsSinceLastCheckpoint;
+    private final Meter checkpointFailures;
+    private final Meter checkpointDeferred;
+    private final Meter writeRetries;
+
+    private String shardId = "No Lease Key";
+    private long lastCheckpointNanos;
+    private long recordsSinceCheckpoint = 0L;
+    private int writeRetryAttempts = 0;
+    // Set when a processor gave up retrying writes, nothing after the last checkpoint may be checkpointed
+    private boolean writesAbandoned = false;
+
+    public CheckpointScheduler(final DeviceTracker deviceTracker, final CheckpointConfiguration configuration, final MetricRegistry metrics) {
+        this.deviceTracker = deviceTracker;
+        this.intervalNanos = TimeUnit.SECONDS.toNanos(configuration.getIntervalSeconds());
+        this.maxRecords = configuration.getMaxRecords();
+        this.checkpointLatency = metrics.timer(name(CheckpointScheduler.class, "checkpoint-latency"));
+        this.recordsSinceLastCheckpoint = metrics.histogram(name(CheckpointScheduler.class, "records-since-last-checkpoint"));
+        this.checkpointFailures = metrics.meter(name(CheckpointScheduler.class, "checkpoint-failures"));
+        this.checkpointDeferred = metrics.meter(name(CheckpointScheduler.class, "checkpoint-deferred"));
+        this.writeRetries = metrics.meter(name(CheckpointScheduler.class, "write-retries"));
+        this.lastCheckpointNanos = System.nanoTime();
+    }
+
+    public void initialize(final String shardId) {
+        this.shardId = shardId;
+        this.lastCheckpointNanos = System.nanoTime();
+        this.recordsSinceCheckpoint = 0L;
+        this.writeRetryAttempts = 0;
+        this.writesAbandoned = false;
+    }
+
+    /**
+     * To be called when redis did not acknowledge a track call of the current batch, before tracking the same state
+     * again. Waits with an exponential backoff.
+     *
+     * @return false if the thread was interrupted, the processor must stop retrying and the shard will not be
+     * checkpointed again
+     */
+    public boolean awaitWriteRetry() {
+        writeRetries.mark();
+        final long delayMillis = Math.min(MAX_RETRY_DELAY_MILLIS, INITIAL_RETRY_DELAY_MILLIS << Math.min(writeRetryAttempts, 16));
+        writeRetryAttempts++;
+        LOGGER.warn("error=unacknowledged-writes shard_id={} attempt={} retry_delay_millis={}", shardId, writeRetryAttempts, delayMillis);
+        try {
+            Thread.sleep(delayMillis);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            writesAbandoned = true;
+            LOGGER.error("error=unacknowledged-writes-abandoned shard_id={} records_since_last_checkpoint={}", shardId, recordsSinceCheckpoint);
+            return false;
+        }
+    }
+
+    /**
+     * To be called once the device tracker acknowledged every track call of the batch. Checkpoints if it is due and
+     * the tracker flushed what it buffers, otherwise the next batch tries again.
+     */
+    public void batchProcessed(final IRecordProcessorCheckpointer checkpointer, final int records) {
+        recordsSinceCheckpoint += records;
+        writeRetryAttempts = 0;
+        if (writesAbandoned || (recordsSinceCheckpoint < maxRecords && (System.nanoTime() - lastCheckpointNanos) < intervalNanos)) {
+            return;
+        }
+        if (!deviceTracker.flush()) {
+            checkpointDeferred.mark();
+            LOGGER.warn("error=checkpoint-deferred-unacknowledged-writes shard_id={} records_since_last_checkpoint={}",
+                    shardId, recordsSinceCheckpoint);
+            return;
+        }
+        checkpoint(checkpointer);
+    }
+
+    /**
+     * Checkpoints at the end of a shard, so its child shards can start. A lost lease can no longer be checkpointed,
+     * the new owner resumes from the last checkpoint.
+     */
+    public void shutdown(final IRecordProcessorCheckpointer checkpointer, final ShutdownReason shutdownReason) {
+        if (shutdownReason == ShutdownReason.TERMINATE) {
+            if (writesAbandoned || !deviceTracker.flush()) {
+                checkpointDeferred.mark();
+                LOGGER.error("error=checkpoint-skipped-unacknowledged-writes shard_id={} records_since_last_checkpoint={}",
+                        shardId, recordsSinceCheckpoint);
+                return;
+            }
+            checkpoint(checkpointer);
+            return;
+        }
+        LOGGER.warn("action=checkpoint-skipped shard_id={} reason={} records_since_last_checkpoint={}",
+                shardId, shutdownReason, recordsSinceCheckpoint);
+    }
+
+    private void checkpoint(final IRecordProcessorCheckpointer checkpointer) {
+        final Timer.Context context = checkpointLatency.time();
+        try {
+            checkpointer.checkpoint();
+            recordsSinceLastCheckpoint.update(recordsSinceCheckpoint);
+            recordsSinceCheckpoint = 0L;
+            lastCheckpointNanos = System.nanoTime();
+        } catch (KinesisClientLibRetryableException e) {
+            // throttled or lease table unavailable, next batch tries again
+            checkpointFailures.mark();
+            LOGGER.warn("error=checkpoint-retryable shard_id={} message={}", shardId, e.getMessage());
+        } catch (InvalidStateException e) {
+            checkpointFailures.mark();
+            LOGGER.error("error=checkpoint-invalid-state shard_id={} message={}", shardId, e.getMessage());
+        } catch (ShutdownException e) {
+            checkpointFailures.mark();
+            LOGGER.error("error=checkpoint-after-shutdown shard_id={} message={}", shardId, e.getMessage());
+        } finally {
+            context.stop();
+        }
+    }
+}
@@ -12,8 +12,12 @@ import com.amazonaws.services.kinesis.clientlibrary.lib.worker.Worker;
 import com.codahale.metrics.graphite.Graphite;
 import com.codahale.metrics.graphite.GraphiteReporter;
 import com.google.common.collect.ImmutableList;
+import com.hello.suripu.analytics.capture.CapturingRecordProcessorFactory;
 import com.hello.suripu.analytics.configuration.AnalyticsConfiguration;
 import com.hello.suripu.analytics.framework.AnalyticsEnvironmentCommand;
+import com.hello.suripu.analytics.utils.CheckpointWriter;
+import com.hello.suripu.analytics.utils.DeviceTracker;
+import com.hello.suripu.analytics.utils.DeviceTrackerFactory;
 import com.hello.suripu.coredropwizard.metrics.RegexMetricFilter;
 import io.dropwizard.setup.Environment;
 import net.sourceforge.argparse4j.inf.Namespace;
@@ -83,20 +87,36 @@ public class PillStatsCommand extends AnalyticsEnvironmentCommand<AnalyticsConfi
         kinesisConfig.withKinesisEndpoint(configuration.getKinesisEndpoints().get(COMMAND_STREAM_NAME));
         kinesisConfig.withIdleTimeBetweenReadsInMillis(10000);
 
-        final JedisPool jedisPool = new JedisPool(
-                configuration.getRedisConfiguration().getHost(),
-                configuration.getRedisConfiguration().getPort()
+        final CheckpointWriter checkpointWriter = new CheckpointWriter(
+                checkpoinTrackerclient,
+                configuration.dynamoDBConfiguration().tables().get(CHECKPOINT_TABLE_NAME),
+                CheckpointWriter.DEFAULT_MAX_PENDING,
+                environment.metrics()
         );
+        environment.lifecycle().manage(checkpointWriter);
 
-        final IRecordProcessorFactory processorFactory = new PillStatsProcessorFactory(
+        final JedisPool jedisPool = DeviceTrackerFactory.createJedisPool(configuration.getRedisConfiguration(), environment.metrics());
+
+        final DeviceTracker deviceTracker = DeviceTrackerFactory.create(
+                configuration.getRedisConfiguration(),
                 jedisPool,
-                checkpoinTrackerclient,
+                environment.metrics(),
+                environment.lifecycle()
+        );
+
+        final IRecordProcessorFactory processorFactory = new PillStatsProcessorFactory(
+                deviceTracker,
+                checkpointWriter,
                 configuration.getKinesisStreams().get(COMMAND_STREAM_NAME),
-                configuration.dynamoDBConfiguration().tables().get(CHECKPOINT_TABLE_NAME),
-                environment.metrics()
+                environment.metrics(),
+                configuration.getCheckpoint()
         );
 
-        final Worker kinesisWorker = new Worker(processorFactory, kinesisConfig);
-        kinesisWorker.run();
+        final String streamName = configuration.getKinesisStreams().get(COMMAND_STREAM_NAME);
+        final Worker kinesisWorker = new Worker(
+                CapturingRecordProcessorFactory.wrapIfEnabled(processorFactory, streamName, configuration.getCapture()),
+                kinesisConfig);
+        startManagedObjects(environment);
+        runWorker(environment, kinesisWorker);
     }
 }
@@ -1,7 +1,5 @@
 package com.hello.suripu.analytics.processors;
 
-import com.amazonaws.services.kinesis.clientlibrary.exceptions.InvalidStateException;
-import com.amazonaws.services.kinesis.clientlibrary.exceptions.ShutdownException;
 import com.amazonaws.services.kinesis.clientlibrary.interfaces.IRecordProcessor;
 import com.amazonaws.services.kinesis.clientlibrary.interfaces.IRecordProcessorCheckpointer;
 import com.amazonaws.services.kinesis.clientlibrary.types.ShutdownReason;
@@ -11,8 +9,8 @@ import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.annotation.Timed;
 import com.google.common.collect.Maps;
 import com.google.protobuf.InvalidProtocolBufferException;
-import com.hello.suripu.analytics.utils.ActiveDevicesTracker;
 import com.hello.suripu.analytics.utils.CheckpointTracker;
+import com.hello.suripu.analytics.utils.DeviceTracker;
 import com.hello.suripu.api.ble.SenseCommandProtos;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -29,20 +27,24 @@ public class PillStatsProcessor implements IRecordProcessor {
 
     private final static Logger LOGGER = LoggerFactory.getLogger(PillStatsProcessor.class);
     final MetricRegistry metrics;
-    private final ActiveDevicesTracker activeDevicesTracker;
+    private final DeviceTracker deviceTracker;
     private final CheckpointTracker checkpointTracker;
+    private final CheckpointScheduler checkpointScheduler;
     private final Meter messagesProcessed;
     private String shardId = "No Lease Key";
 
-    public PillStatsProcessor(final ActiveDevicesTracker activeDevicesTracker, final CheckpointTracker checkpointTracker, final MetricRegistry metricRegistry){
-        this.activeDevicesTracker = activeDevicesTracker;
+    public PillStatsProcessor(final DeviceTracker deviceTracker, final CheckpointTracker checkpointTracker, final CheckpointScheduler checkpointScheduler,
+                              final MetricRegistry metricRegistry){
+        this.deviceTracker = deviceTracker;
         this.checkpointTracker = checkpointTracker;
+        this.checkpointScheduler = checkpointScheduler;
         this.metrics = metricRegistry;
         this.messagesProcessed = metrics.meter(name(PillStatsProcessor.class, "messages-processed"));
     }
 
     public void initialize(String shardId) {
         this.shardId = shardId;
+        checkpointScheduler.initialize(shardId);
     }
 
     @Timed
@@ -71,19 +73,16 @@ public class PillStatsProcessor implements IRecordProcessor {
             }
         }
 
-        try {
-            iRecordProcessorCheckpointer.checkpoint();
-        } catch (InvalidStateException e) {
-            LOGGER.error("checkpoint {}", e.getMessage());
-        } catch (ShutdownException e) {
-            LOGGER.error("Received shutdown command at checkpoint, bailing. {}", e.getMessage());
+        // retried until redis acknowledges it, a checkpoint must not cover pills that were not written
+        boolean tracked = deviceTracker.trackPills(activePills);
+        while (!tracked && checkpointScheduler.awaitWriteRetry()) {
+            tracked = deviceTracker.trackPills(activePills);
         }
-
-        activeDevicesTracker.trackPills(activePills);
         messagesProcessed.mark(records.size());
+        checkpointScheduler.batchProcessed(iRecordProcessorCheckpointer, records.size());
     }
 
     public void shutdown(IRecordProcessorCheckpointer iRecordProcessorCheckpointer, ShutdownReason shutdownReason) {
-
+        checkpointScheduler.shutdown(iRecordProcessorCheckpointer, shutdownReason);
     }
 }
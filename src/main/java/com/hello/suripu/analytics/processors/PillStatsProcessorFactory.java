@@ -1,35 +1,42 @@
 package com.hello.suripu.analytics.processors;
 
-import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
 import com.amazonaws.services.kinesis.clientlibrary.interfaces.IRecordProcessor;
 import com.amazonaws.services.kinesis.clientlibrary.interfaces.IRecordProcessorFactory;
 import com.codahale.metrics.MetricRegistry;
-import com.hello.suripu.analytics.utils.ActiveDevicesTracker;
+import com.hello.suripu.analytics.configuration.CheckpointConfiguration;
 import com.hello.suripu.analytics.utils.CheckpointTracker;
-import redis.clients.jedis.JedisPool;
+import com.hello.suripu.analytics.utils.CheckpointWriter;
+import com.hello.suripu.analytics.utils.DeviceTracker;
 
 /**
  * Created by jnorgan on 6/29/15.
  */
 public class PillStatsProcessorFactory implements IRecordProcessorFactory {
 
-    private final JedisPool jedisPool;
-    private final AmazonDynamoDB dynamoDBClient;
+    private final DeviceTracker deviceTracker;
+    private final CheckpointWriter checkpointWriter;
     private final String streamName;
-    private final String checkpointTableName;
     private final MetricRegistry metricRegistry;
+    private final CheckpointConfiguration checkpointConfiguration;
 
-    public PillStatsProcessorFactory(final JedisPool jedisPool, final AmazonDynamoDB dynamoDBClient, final String streamName, final String checkpointTableName, final MetricRegistry metricRegistry) {
-        this.jedisPool = jedisPool;
-        this.dynamoDBClient = dynamoDBClient;
+    public PillStatsProcessorFactory(final DeviceTracker deviceTracker, final CheckpointWriter checkpointWriter, final String streamName, final MetricRegistry metricRegistry) {
+        this(deviceTracker, checkpointWriter, streamName, metricRegistry, new CheckpointConfiguration());
+    }
+
+    /**
+     * @param checkpointConfiguration cadence of the KCL checkpoints of each shard
+     */
+    public PillStatsProcessorFactory(final DeviceTracker deviceTracker, final CheckpointWriter checkpointWriter, final String streamName, final MetricRegistry metricRegistry,
+                                     final CheckpointConfiguration checkpointConfiguration) {
+        this.deviceTracker = deviceTracker;
+        this.checkpointWriter = checkpointWriter;
         this.streamName = streamName;
-        this.checkpointTableName = checkpointTableName;
         this.metricRegistry = metricRegistry;
+        this.checkpointConfiguration = checkpointConfiguration;
     }
 
     public IRecordProcessor createProcessor() {
-        final ActiveDevicesTracker activeDevicesTracker = new ActiveDevicesTracker(jedisPool);
-        final CheckpointTracker checkpointTracker = new CheckpointTracker(dynamoDBClient, streamName, checkpointTableName);
-        return new PillStatsProcessor(activeDevicesTracker, checkpointTracker, metricRegistry);
+        final CheckpointTracker checkpointTracker = new CheckpointTracker(checkpointWriter, streamName);
+        return new PillStatsProcessor(deviceTracker, checkpointTracker, new CheckpointScheduler(deviceTracker, checkpointConfiguration, metricRegistry), metricRegistry);
     }
 }
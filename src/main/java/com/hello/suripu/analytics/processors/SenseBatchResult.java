@@ -0,0 +1,148 @@
+package com.hello.suripu.analytics.processors;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+import com.hello.suripu.analytics.models.WifiInfo;
+import com.hello.suripu.analytics.utils.CheckpointTracker;
+import com.hello.suripu.core.models.FirmwareInfo;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * What one lane of {@link SenseStatsProcessor} extracted from its records, merged into a single result before
+ * anything is written to redis or dynamo.
+ *
+ * Lanes own disjoint sets of devices, so merging is mostly a union; when a device does show up in several lanes
+ * the latest last-seen time wins.
+ */
+public class SenseBatchResult {
+
+    public final Map<String, Long> activeSenses = Maps.newHashMap();
+    public final Map<String, FirmwareInfo> seenFirmwares = Maps.newHashMap();
+    public final Map<String, WifiInfo> wifiInfos = Maps.newHashMap();
+    public final Map<String, Integer> uptimeBySense = Maps.newHashMap();
+    public final Set<String> lowUptimeSenses = Sets.newHashSet();
+    /**
+     * Latest firmware version found in the periodic data of each device, see {@link #offerPeriodicFirmware}
+     */
+    public final Map<String, PeriodicFirmware> periodicFirmwares = Maps.newHashMap();
+    public long waveCountSum = 0L;
+    /**
+     * Wall clock read once when the batch started, use it instead of reading the clock per record
+     */
+    public long nowMillis = 0L;
+
+    private final List<CheckpointCandidate> checkpointCandidates = Lists.newArrayList();
+    private long lastCandidateTimestamp = Long.MIN_VALUE;
+    // holders of periodicFirmwares, reused from one batch to the next
+    private final List<PeriodicFirmware> periodicFirmwarePool = Lists.newArrayList();
+    private int periodicFirmwaresUsed = 0;
+
+    /**
+     * Empties the result so that its maps can be reused for the next batch without reallocating their tables.
+     */
+    public void reset(final long nowMillis) {
+        activeSenses.clear();
+        seenFirmwares.clear();
+        wifiInfos.clear();
+        uptimeBySense.clear();
+        lowUptimeSenses.clear();
+        periodicFirmwares.clear();
+        periodicFirmwaresUsed = 0;
+        checkpointCandidates.clear();
+        waveCountSum = 0L;
+        lastCandidateTimestamp = Long.MIN_VALUE;
+        this.nowMillis = nowMillis;
+    }
+
+    /**
+     * Keeps the sample as a checkpoint candidate if the tracker could track it given the candidates seen so far in
+     * this lane. The tracker makes the final call once lanes are merged.
+     *
+     * @param lastCheckpointTimestamp last timestamp tracked by the {@link CheckpointTracker} of the shard
+     */
+    public void offerCheckpoint(final String sequenceNumber, final long timestampMillis, final long lastCheckpointTimestamp, final long nowMillis) {
+        if (CheckpointTracker.isEligibleForTracking(timestampMillis, Math.max(lastCandidateTimestamp, lastCheckpointTimestamp), nowMillis)) {
+            checkpointCandidates.add(new CheckpointCandidate(sequenceNumber, timestampMillis));
+            lastCandidateTimestamp = timestampMillis;
+        }
+    }
+
+    /**
+     * Keeps the firmware version if it is at least as recent as the one kept for the device. Called for every
+     * periodic data entry, so nothing is allocated past the first entry of a device in the batch.
+     */
+    public void offerPeriodicFirmware(final String deviceId, final int version, final long timestampMillis) {
+        PeriodicFirmware latest = periodicFirmwares.get(deviceId);
+        if (latest == null) {
+            if (periodicFirmwaresUsed == periodicFirmwarePool.size()) {
+                periodicFirmwarePool.add(new PeriodicFirmware());
+            }
+            latest = periodicFirmwarePool.get(periodicFirmwaresUsed++);
+            latest.timestampMillis = Long.MIN_VALUE;
+            periodicFirmwares.put(deviceId, latest);
+        }
+        if (latest.timestampMillis <= timestampMillis) {
+            latest.version = version;
+            latest.timestampMillis = timestampMillis;
+        }
+    }
+
+    public void merge(final SenseBatchResult other) {
+        for (final Map.Entry<String, Long> entry : other.activeSenses.entrySet()) {
+            final Long lastSeen = activeSenses.get(entry.getKey());
+            if (lastSeen == null || lastSeen < entry.getValue()) {
+                activeSenses.put(entry.getKey(), entry.getValue());
+            }
+        }
+        seenFirmwares.putAll(other.seenFirmwares);
+        for (final Map.Entry<String, PeriodicFirmware> entry : other.periodicFirmwares.entrySet()) {
+            final PeriodicFirmware latest = periodicFirmwares.get(entry.getKey());
+            if (latest == null || latest.timestampMillis <= entry.getValue().timestampMillis) {
+                periodicFirmwares.put(entry.getKey(), entry.getValue());
+            }
+        }
+        wifiInfos.putAll(other.wifiInfos);
+        uptimeBySense.putAll(other.uptimeBySense);
+        lowUptimeSenses.addAll(other.lowUptimeSenses);
+        checkpointCandidates.addAll(other.checkpointCandidates);
+        waveCountSum += other.waveCountSum;
+    }
+
+    /**
+     * @return checkpoint candidates of every merged lane, oldest first
+     */
+    public List<CheckpointCandidate> sortedCheckpointCandidates() {
+        Collections.sort(checkpointCandidates, new Comparator<CheckpointCandidate>() {
+            @Override
+            public int compare(final CheckpointCandidate first, final CheckpointCandidate second) {
+                return Long.compare(first.timestampMillis, second.timestampMillis);
+            }
+        });
+        return checkpointCandidates;
+    }
+
+    /**
+     * Owned by the lane that created it, only valid until that lane is reset.
+     */
+    public static class PeriodicFirmware {
+        public int version;
+        public long timestampMillis;
+    }
+
+    public static class CheckpointCandidate {
+        public final String sequenceNumber;
+        public final long timestampMillis;
+
+        CheckpointCandidate(final String sequenceNumber, final long timestampMillis) {
+            this.sequenceNumber = sequenceNumber;
+            this.timestampMillis = timestampMillis;
+        }
+    }
+}
@@ -1,35 +1,30 @@
 package com.hello.suripu.analytics.processors;
 
-import com.google.common.collect.Maps;
-import com.google.common.hash.BloomFilter;
-import com.google.common.hash.Funnels;
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
 import com.google.protobuf.InvalidProtocolBufferException;
 
-import com.amazonaws.services.kinesis.clientlibrary.exceptions.InvalidStateException;
-import com.amazonaws.services.kinesis.clientlibrary.exceptions.ShutdownException;
 import com.amazonaws.services.kinesis.clientlibrary.interfaces.IRecordProcessor;
 import com.amazonaws.services.kinesis.clientlibrary.interfaces.IRecordProcessorCheckpointer;
 import com.amazonaws.services.kinesis.clientlibrary.types.ShutdownReason;
 import com.amazonaws.services.kinesis.model.Record;
-import com.codahale.metrics.Histogram;
 import com.codahale.metrics.Meter;
 import com.codahale.metrics.MetricRegistry;
-import com.hello.suripu.analytics.models.WifiInfo;
-import com.hello.suripu.analytics.utils.ActiveDevicesTracker;
-import com.hello.suripu.analytics.utils.CheckpointTracker;
-import com.hello.suripu.analytics.utils.DataQualityTracker;
-import com.hello.suripu.api.input.DataInputProtos;
-import com.hello.suripu.core.models.FirmwareInfo;
-
-import org.joda.time.DateTime;
-import org.joda.time.DateTimeZone;
-import org.joda.time.Days;
+import com.hello.suripu.analytics.analyzers.SenseAnalyzer;
+import com.hello.suripu.analytics.decoders.DecodedSenseRecord;
+import com.hello.suripu.analytics.decoders.SenseRecordDecoder;
+import com.hello.suripu.analytics.utils.DeviceTracker;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.nio.charset.Charset;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 import static com.codahale.metrics.MetricRegistry.name;
 
@@ -41,184 +36,163 @@ public class SenseStatsProcessor implements IRecordProcessor {
 
     private final MetricRegistry metrics;
     private final static Logger LOGGER = LoggerFactory.getLogger(SenseStatsProcessor.class);
-    private final static Long LOW_UPTIME_THRESHOLD = 3600L; //seconds
-    private final static String DEFAULT_SSID = "";
-    private final static Integer DEFAULT_RSSI = 0;
+    private final static HashFunction LANE_HASH = Hashing.murmur3_32();
 
-    private final ActiveDevicesTracker activeDevicesTracker;
-    private final CheckpointTracker checkpointTracker;
+    private final DeviceTracker deviceTracker;
+    private final CheckpointScheduler checkpointScheduler;
     private final Meter messagesProcessed;
-    private final Meter waveCounts;
-    private final Meter lowUptimeCount;
-    private final Histogram uptimeDays;
 
-    private final DataQualityTracker dataQualityTracker;
+    private final List<SenseAnalyzer> analyzers;
+    private final SenseRecordDecoder decoder = new SenseRecordDecoder();
+    private final ForkJoinPool lanePool;
+    private final DecodedSenseRecord[] laneRecords;
+
+    // Scratch structures reused from one batch to the next, emptied at the start of each batch
+    private final SenseBatchResult[] laneResults;
+    private final List<List<Record>> partitions;
+    private final SenseBatchResult batchResult = new SenseBatchResult();
 
-    private BloomFilter<CharSequence> bloomFilter;
-    private Long lastFilterTimestamp;
     private String shardId = "No Lease Key";
 
 
-    public SenseStatsProcessor(final ActiveDevicesTracker activeDevicesTracker, final CheckpointTracker checkpointTracker, final MetricRegistry metricRegistry, final DataQualityTracker dataQualityTracker){
-        this.activeDevicesTracker = activeDevicesTracker;
-        this.checkpointTracker = checkpointTracker;
+    /**
+     * @param analyzers run in order on every record
+     * @param lanePool pool shared by every processor of the worker, only used when lanes > 1
+     * @param lanes number of device partitions a batch is split into
+     */
+    public SenseStatsProcessor(final DeviceTracker deviceTracker, final CheckpointScheduler checkpointScheduler, final List<SenseAnalyzer> analyzers,
+                               final MetricRegistry metricRegistry, final ForkJoinPool lanePool, final int lanes){
+        this.deviceTracker = deviceTracker;
+        this.checkpointScheduler = checkpointScheduler;
+        this.analyzers = ImmutableList.copyOf(analyzers);
         this.metrics= metricRegistry;
-        this.dataQualityTracker = dataQualityTracker;
+        this.lanePool = lanePool;
+        this.laneRecords = new DecodedSenseRecord[(lanePool == null) ? 1 : lanes];
+        this.laneResults = new SenseBatchResult[laneRecords.length];
+        this.partitions = Lists.newArrayListWithExpectedSize(laneRecords.length);
+        for (int lane = 0; lane < laneRecords.length; lane++) {
+            laneRecords[lane] = new DecodedSenseRecord();
+            laneResults[lane] = new SenseBatchResult();
+            partitions.add(Lists.<Record>newArrayList());
+        }
         messagesProcessed = metrics.meter(name(SenseStatsProcessor.class, "messages-processed"));
-        waveCounts = metrics.meter(name(SenseStatsProcessor.class, "wave-counts"));
-        lowUptimeCount = metrics.meter(name(SenseStatsProcessor.class, "low-uptime"));
-        uptimeDays = metrics.histogram(name(SenseStatsProcessor.class, "uptime-days"));
     }
 
     public void initialize(String shardId) {
         this.shardId = shardId;
-        createNewBloomFilter();
-    }
-
-    private void createNewBloomFilter() {
-        bloomFilter = BloomFilter.create(Funnels.stringFunnel(Charset.defaultCharset()), 20000, 0.03);
-        this.lastFilterTimestamp = DateTime.now().getMillis();
+        checkpointScheduler.initialize(shardId);
     }
 
     public void processRecords(List<Record> records, IRecordProcessorCheckpointer iRecordProcessorCheckpointer) {
 
-        final Map<String, Long> activeSenses = Maps.newHashMap();
-        final Map<String, FirmwareInfo> seenFirmwares = Maps.newHashMap();
-        final Map<String, WifiInfo> wifiInfos = Maps.newHashMap();
-        final Map<String, Integer> uptimeBySense = Maps.newHashMapWithExpectedSize(records.size());
-
-        Long waveCountSum = 0L;
-
-        if(DateTime.now(DateTimeZone.UTC).getMillis() > (lastFilterTimestamp + (LOW_UPTIME_THRESHOLD * 1000L))) {
-            createNewBloomFilter();
+        for (final SenseAnalyzer analyzer : analyzers) {
+            analyzer.begin(shardId);
         }
-        for(final Record record : records) {
 
-            final String sequenceNumber = record.getSequenceNumber();
-            DataInputProtos.BatchPeriodicDataWorker batchPeriodicDataWorker;
+        final long nowMillis = System.currentTimeMillis();
+        final SenseBatchResult result;
+        if (laneRecords.length == 1) {
+            result = processLane(records, laneRecords[0], laneResults[0], nowMillis);
+        } else {
+            result = processLanes(records, nowMillis);
+        }
 
-            try {
-                batchPeriodicDataWorker = DataInputProtos.BatchPeriodicDataWorker.parseFrom(record.getData().array());
-            } catch (InvalidProtocolBufferException e) {
-                LOGGER.error("error=protobuf-parsing-failure message={}", e.getMessage());
-                continue;
-            }
+        for (final SenseAnalyzer analyzer : analyzers) {
+            analyzer.end(result);
+        }
 
-            final String deviceName = batchPeriodicDataWorker.getData().getDeviceId();
-            final String deviceIPAddress = batchPeriodicDataWorker.getIpAddress();
-            final Integer deviceUptime = batchPeriodicDataWorker.getUptimeInSecond();
+        track(result);
 
-            uptimeBySense.put(deviceName, deviceUptime);
-            int days = Days.daysBetween(DateTime.now(DateTimeZone.UTC).minusSeconds(deviceUptime), DateTime.now(DateTimeZone.UTC)).getDays();
+        messagesProcessed.mark(records.size());
+        checkpointScheduler.batchProcessed(iRecordProcessorCheckpointer, records.size());
 
-            if (deviceUptime <= LOW_UPTIME_THRESHOLD) {
-                if(!bloomFilter.mightContain(deviceName)) {
-                    bloomFilter.put(deviceName);
-                    lowUptimeCount.mark(1);
-                }
+    }
 
+    /**
+     * Tracks the batch, retrying whatever redis did not acknowledge until it does or the processor is interrupted.
+     */
+    private void track(final SenseBatchResult result) {
+        boolean sensesTracked = false;
+        boolean firmwaresTracked = false;
+        boolean wifiInfosTracked = false;
+        boolean uptimesTracked = false;
+        do {
+            sensesTracked = sensesTracked || deviceTracker.trackSenses(result.activeSenses);
+            firmwaresTracked = firmwaresTracked || deviceTracker.trackFirmwares(result.seenFirmwares);
+            wifiInfosTracked = wifiInfosTracked || deviceTracker.trackWifiInfo(result.wifiInfos);
+            uptimesTracked = uptimesTracked || deviceTracker.trackUptime(result.uptimeBySense);
+            if (sensesTracked && firmwaresTracked && wifiInfosTracked && uptimesTracked) {
+                return;
             }
+        } while (checkpointScheduler.awaitWriteRetry());
+    }
 
-            uptimeDays.update(days);
-
-            //Filter out PCH IPs from active sense tracking
-            activeSenses.put(deviceName, batchPeriodicDataWorker.getReceivedAt());
-
-            final Map<String, FirmwareInfo> fwVersionTimestampMap = Maps.newHashMap();
-
-            final DataInputProtos.batched_periodic_data batchedPeriodicData = batchPeriodicDataWorker.getData();
-
-            final String connectedSSID = batchedPeriodicData.hasConnectedSsid() ? batchedPeriodicData.getConnectedSsid() : DEFAULT_SSID;
-
-            Integer rssi = DEFAULT_RSSI;
-
-            for (final DataInputProtos.batched_periodic_data.wifi_access_point wifiAccessPoint : batchedPeriodicData.getScanList()) {
-                if (connectedSSID.equals(wifiAccessPoint.getSsid())) {
-                    rssi = wifiAccessPoint.getRssi();
-                    break;
-                }
-            }
+    /**
+     * Splits the batch by partition key, which producers set to the sense id, so that all records of a device land
+     * in the same lane and keep their order.
+     */
+    private SenseBatchResult processLanes(final List<Record> records, final long nowMillis) {
+        for (final List<Record> partition : partitions) {
+            partition.clear();
+        }
+        for (final Record record : records) {
+            final int lane = Hashing.consistentHash(LANE_HASH.hashString(record.getPartitionKey(), Charsets.UTF_8), laneRecords.length);
+            partitions.get(lane).add(record);
+        }
 
-            if (!DEFAULT_SSID.equals(connectedSSID) && !DEFAULT_RSSI.equals(rssi)) {
-                LOGGER.trace("{} {} {}", batchedPeriodicData.getDeviceId(), connectedSSID, rssi);
+        final List<ForkJoinTask<SenseBatchResult>> tasks = Lists.newArrayListWithExpectedSize(laneRecords.length);
+        for (int lane = 0; lane < laneRecords.length; lane++) {
+            final List<Record> partition = partitions.get(lane);
+            if (partition.isEmpty()) {
+                continue;
             }
-
-            for(final DataInputProtos.periodic_data periodicData : batchedPeriodicData.getDataList()) {
-                final Integer waveCount = periodicData.getWaveCount();
-                waveCountSum += waveCount;
-
-                final Long timestampMillis = periodicData.getUnixTime() * 1000L;
-
-                if (checkpointTracker.isEligibleForTracking(timestampMillis)) {
-                    checkpointTracker.trackCheckpoint(shardId, sequenceNumber, timestampMillis);
+            final DecodedSenseRecord laneRecord = laneRecords[lane];
+            final SenseBatchResult laneResult = laneResults[lane];
+            tasks.add(lanePool.submit(new Callable<SenseBatchResult>() {
+                @Override
+                public SenseBatchResult call() {
+                    return processLane(partition, laneRecord, laneResult, nowMillis);
                 }
+            }));
+        }
 
-                // Grab FW version from Batch or periodic data for EVT units
-                final Integer firmwareVersion = (batchPeriodicDataWorker.getData().hasFirmwareVersion())
-                        ? batchPeriodicDataWorker.getData().getFirmwareVersion()
-                        : periodicData.getFirmwareVersion();
+        batchResult.reset(nowMillis);
+        for (final ForkJoinTask<SenseBatchResult> task : tasks) {
+            batchResult.merge(task.join());
+        }
+        return batchResult;
+    }
 
-                final String fwDecString = Integer.toString(firmwareVersion);
-                if (fwVersionTimestampMap.containsKey(fwDecString) && fwVersionTimestampMap.get(fwDecString).timestamp > timestampMillis) {
-                    continue;
-                }
+    /**
+     * Decodes each record once and hands it to every analyzer.
+     */
+    private SenseBatchResult processLane(final List<Record> records, final DecodedSenseRecord decoded, final SenseBatchResult result, final long nowMillis) {
+        result.reset(nowMillis);
 
-                fwVersionTimestampMap.put(fwDecString, new FirmwareInfo(fwDecString, "0", deviceName, timestampMillis));
+        for(final Record record : records) {
+            try {
+                decoder.decode(record.getData(), decoded);
+            } catch (InvalidProtocolBufferException e) {
+                LOGGER.error("error=protobuf-parsing-failure message={}", e.getMessage());
+                continue;
             }
+            decoded.setSequenceNumber(record.getSequenceNumber());
 
-            //If we're getting top fw info from the protobuf, only store that
-            if (batchPeriodicDataWorker.hasFirmwareTopVersion() && !batchPeriodicDataWorker.getFirmwareTopVersion().equals("0")) {
-                final String topFWVersion = batchPeriodicDataWorker.getFirmwareTopVersion();
-                final String middleFWVersion = batchPeriodicDataWorker.getFirmwareMiddleVersion();
-                fwVersionTimestampMap.clear();
-                fwVersionTimestampMap.put(middleFWVersion, new FirmwareInfo(middleFWVersion, topFWVersion, deviceName, batchPeriodicDataWorker.getReceivedAt()));
-            } else {
-                LOGGER.error("error=no-top-fw sense_id={}", deviceName);
+            for (int i = 0; i < decoded.periodicDataCount(); i++) {
+                for (final SenseAnalyzer analyzer : analyzers) {
+                    analyzer.onPeriodicData(decoded, i, result);
+                }
             }
-
-            for(final Map.Entry<String, FirmwareInfo> mapEntry : fwVersionTimestampMap.entrySet()) {
-                seenFirmwares.put(deviceName, mapEntry.getValue());
+            for (final SenseAnalyzer analyzer : analyzers) {
+                analyzer.onRecord(decoded, result);
             }
-
-            wifiInfos.put(deviceName, new WifiInfo(rssi, connectedSSID));
-
-            //Track data quality
-            dataQualityTracker.trackDataQuality(batchedPeriodicData);
-
-
-        }
-
-        try {
-            iRecordProcessorCheckpointer.checkpoint();
-        } catch (InvalidStateException e) {
-            LOGGER.error("checkpoint {}", e.getMessage());
-        } catch (ShutdownException e) {
-            LOGGER.error("Received shutdown command at checkpoint, bailing. {}", e.getMessage());
         }
-
-        activeDevicesTracker.trackSenses(activeSenses);
-        activeDevicesTracker.trackFirmwares(seenFirmwares);
-        activeDevicesTracker.trackWifiInfo(wifiInfos);
-        activeDevicesTracker.trackUptime(uptimeBySense);
-
-        messagesProcessed.mark(records.size());
-        waveCounts.mark(waveCountSum);
-
+        return result;
     }
 
     public void shutdown(IRecordProcessorCheckpointer iRecordProcessorCheckpointer, ShutdownReason shutdownReason) {
 
         LOGGER.warn("SHUTDOWN: {}", shutdownReason.toString());
-        if(shutdownReason.equals(ShutdownReason.TERMINATE)) {
-            LOGGER.warn("Going to checkpoint");
-            try {
-                iRecordProcessorCheckpointer.checkpoint();
-                LOGGER.warn("Checkpointed successfully");
-            } catch (InvalidStateException e) {
-                LOGGER.error(e.getMessage());
-            } catch (ShutdownException e) {
-                LOGGER.error(e.getMessage());
-            }
-        }
+        checkpointScheduler.shutdown(iRecordProcessorCheckpointer, shutdownReason);
     }
 }
@@ -1,38 +1,125 @@
 package com.hello.suripu.analytics.processors;
 
-import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
 import com.amazonaws.services.kinesis.clientlibrary.interfaces.IRecordProcessor;
 import com.amazonaws.services.kinesis.clientlibrary.interfaces.IRecordProcessorFactory;
+import com.codahale.metrics.Gauge;
 import com.codahale.metrics.MetricRegistry;
-import com.hello.suripu.analytics.utils.ActiveDevicesTracker;
+import com.google.common.collect.ImmutableList;
+import com.hello.suripu.analytics.analyzers.ActivityAnalyzer;
+import com.hello.suripu.analytics.analyzers.CheckpointAnalyzer;
+import com.hello.suripu.analytics.analyzers.FirmwareAnalyzer;
+import com.hello.suripu.analytics.analyzers.SenseAnalyzer;
+import com.hello.suripu.analytics.analyzers.UptimeAnalyzer;
+import com.hello.suripu.analytics.analyzers.WifiAnalyzer;
+import com.hello.suripu.analytics.configuration.CheckpointConfiguration;
+import com.hello.suripu.analytics.configuration.DataQualityRuleConfiguration;
+import com.hello.suripu.analytics.configuration.FirmwareUptimeConfiguration;
+import com.hello.suripu.analytics.configuration.LowUptimeFilterConfiguration;
+import com.hello.suripu.analytics.configuration.NoisyDevicesConfiguration;
+import com.hello.suripu.analytics.utils.AggregatedErrorLog;
 import com.hello.suripu.analytics.utils.CheckpointTracker;
+import com.hello.suripu.analytics.utils.CheckpointWriter;
 import com.hello.suripu.analytics.utils.DataQualityTracker;
-import redis.clients.jedis.JedisPool;
+import com.hello.suripu.analytics.utils.DeviceTracker;
+import com.hello.suripu.analytics.utils.FirmwareUptimeHistograms;
+import com.hello.suripu.analytics.utils.NoisyDevices;
+import com.hello.suripu.analytics.utils.RotatingMembershipFilter;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import static com.codahale.metrics.MetricRegistry.name;
 
 /**
  * Created by jnorgan on 6/29/15.
  */
 public class SenseStatsProcessorFactory implements IRecordProcessorFactory {
 
-    private final JedisPool jedisPool;
-    private final AmazonDynamoDB dynamoDBClient;
+    private final DeviceTracker deviceTracker;
+    private final CheckpointWriter checkpointWriter;
     private final String streamName;
-    private final String checkpointTableName;
     private final MetricRegistry metricRegistry;
     private final DataQualityTracker dataQualityTracker;
+    private final int lanes;
+    private final ForkJoinPool lanePool;
+    private final CheckpointConfiguration checkpointConfiguration;
+    private final RotatingMembershipFilter lowUptimeFilter;
+    private final FirmwareUptimeHistograms firmwareUptimeHistograms;
+    private final AggregatedErrorLog firmwareErrorLog = FirmwareAnalyzer.newErrorLog();
+
+    public SenseStatsProcessorFactory(final DeviceTracker deviceTracker, final CheckpointWriter checkpointWriter, final String streamName, final MetricRegistry metricRegistry) {
+        this(deviceTracker, checkpointWriter, streamName, metricRegistry, 1);
+    }
+
+    /**
+     * @param lanes number of device partitions each batch is processed in, one pool of that size is shared by all
+     *              shards of the worker
+     */
+    public SenseStatsProcessorFactory(final DeviceTracker deviceTracker, final CheckpointWriter checkpointWriter, final String streamName, final MetricRegistry metricRegistry, final int lanes) {
+        this(deviceTracker, checkpointWriter, streamName, metricRegistry, lanes, new CheckpointConfiguration(), new LowUptimeFilterConfiguration(),
+                new FirmwareUptimeConfiguration(), DataQualityRuleConfiguration.defaults(), new NoisyDevicesConfiguration());
+    }
 
-    public SenseStatsProcessorFactory(final JedisPool jedisPool, final AmazonDynamoDB dynamoDBClient, final String streamName, final String checkpointTableName, final MetricRegistry metricRegistry) {
-        this.jedisPool = jedisPool;
-        this.dynamoDBClient = dynamoDBClient;
+    /**
+     * @param checkpointConfiguration cadence of the KCL checkpoints of each shard
+     * @param lowUptimeFilterConfiguration sizing of the reboot filter shared by all shards of the worker
+     * @param firmwareUptimeConfiguration uptime histograms by firmware, shared by all shards of the worker
+     * @param dataQualityRules bounds of the sensor readings, compiled once for all shards of the worker
+     * @param noisyDevicesConfiguration sizing of the top devices and firmwares by bad readings, across all shards
+     */
+    public SenseStatsProcessorFactory(final DeviceTracker deviceTracker, final CheckpointWriter checkpointWriter, final String streamName, final MetricRegistry metricRegistry,
+                                      final int lanes, final CheckpointConfiguration checkpointConfiguration,
+                                      final LowUptimeFilterConfiguration lowUptimeFilterConfiguration,
+                                      final FirmwareUptimeConfiguration firmwareUptimeConfiguration,
+                                      final List<DataQualityRuleConfiguration> dataQualityRules,
+                                      final NoisyDevicesConfiguration noisyDevicesConfiguration) {
+        this.deviceTracker = deviceTracker;
+        this.checkpointWriter = checkpointWriter;
         this.streamName = streamName;
-        this.checkpointTableName = checkpointTableName;
         this.metricRegistry = metricRegistry;
-        this.dataQualityTracker = new DataQualityTracker(metricRegistry);
+        this.dataQualityTracker = new DataQualityTracker(metricRegistry, dataQualityRules, noisyDevicesConfiguration);
+        this.lanes = lanes;
+        this.lanePool = (lanes > 1) ? new ForkJoinPool(lanes) : null;
+        this.checkpointConfiguration = checkpointConfiguration;
+        this.lowUptimeFilter = UptimeAnalyzer.newLowUptimeFilter(lowUptimeFilterConfiguration.getExpectedSenses(),
+                lowUptimeFilterConfiguration.getFalsePositiveProbability());
+        this.firmwareUptimeHistograms = new FirmwareUptimeHistograms(metricRegistry, SenseStatsProcessor.class,
+                firmwareUptimeConfiguration.getMaxFirmwares(), TimeUnit.SECONDS.toMillis(firmwareUptimeConfiguration.getIntervalSeconds()));
+
+        metricRegistry.register(name(SenseStatsProcessor.class, "low-uptime-filter-fill-ratio"), new Gauge<Double>() {
+            @Override
+            public Double getValue() {
+                return lowUptimeFilter.fillRatio();
+            }
+        });
+        metricRegistry.register(name(SenseStatsProcessor.class, "low-uptime-filter-fpp"), new Gauge<Double>() {
+            @Override
+            public Double getValue() {
+                return lowUptimeFilter.falsePositiveProbability();
+            }
+        });
+    }
+
+    public FirmwareUptimeHistograms firmwareUptimeHistograms() {
+        return firmwareUptimeHistograms;
+    }
+
+    public NoisyDevices noisyDevices() {
+        return dataQualityTracker.noisyDevices();
     }
 
     public IRecordProcessor createProcessor() {
-        final ActiveDevicesTracker activeDevicesTracker = new ActiveDevicesTracker(jedisPool);
-        final CheckpointTracker checkpointTracker = new CheckpointTracker(dynamoDBClient, streamName, checkpointTableName);
-        return new SenseStatsProcessor(activeDevicesTracker, checkpointTracker, metricRegistry, dataQualityTracker);
+        final CheckpointTracker checkpointTracker = new CheckpointTracker(checkpointWriter, streamName);
+        final List<SenseAnalyzer> analyzers = ImmutableList.of(
+                new UptimeAnalyzer(metricRegistry, lowUptimeFilter, firmwareUptimeHistograms),
+                new ActivityAnalyzer(metricRegistry),
+                new FirmwareAnalyzer(firmwareErrorLog),
+                new WifiAnalyzer(),
+                new CheckpointAnalyzer(checkpointTracker),
+                dataQualityTracker
+        );
+        return new SenseStatsProcessor(deviceTracker, new CheckpointScheduler(deviceTracker, checkpointConfiguration, metricRegistry), analyzers,
+                metricRegistry, lanePool, lanes);
     }
 }
@@ -0,0 +1,66 @@
+package com.hello.suripu.analytics.replay;
+
+import com.google.common.collect.Maps;
+
+import com.hello.suripu.analytics.models.WifiInfo;
+import com.hello.suripu.analytics.utils.DeviceTracker;
+import com.hello.suripu.core.models.FirmwareInfo;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Keeps the latest state of every device in memory instead of redis, for replays that should not need a cache node.
+ * It grows with the number of distinct devices, like the redis keys it stands in for.
+ */
+public class InMemoryDeviceTracker implements DeviceTracker {
+
+    private final ConcurrentMap<String, Long> activeSenses = Maps.newConcurrentMap();
+    private final ConcurrentMap<String, Long> activePills = Maps.newConcurrentMap();
+    private final ConcurrentMap<String, FirmwareInfo> firmwares = Maps.newConcurrentMap();
+    private final ConcurrentMap<String, WifiInfo> wifiInfos = Maps.newConcurrentMap();
+    private final ConcurrentMap<String, Integer> uptimes = Maps.newConcurrentMap();
+
+    @Override
+    public boolean trackSenses(final Map<String, Long> activeSenses) {
+        this.activeSenses.putAll(activeSenses);
+        return true;
+    }
+
+    @Override
+    public boolean trackPills(final Map<String, Long> activePills) {
+        this.activePills.putAll(activePills);
+        return true;
+    }
+
+    @Override
+    public boolean trackFirmwares(final Map<String, FirmwareInfo> seenFirmwares) {
+        firmwares.putAll(seenFirmwares);
+        return true;
+    }
+
+    @Override
+    public boolean trackWifiInfo(final Map<String, WifiInfo> wifiInfos) {
+        this.wifiInfos.putAll(wifiInfos);
+        return true;
+    }
+
+    @Override
+    public boolean trackUptime(final Map<String, Integer> uptimes) {
+        this.uptimes.putAll(uptimes);
+        return true;
+    }
+
+    @Override
+    public boolean flush() {
+        return true;
+    }
+
+    public int activeSenseCount() {
+        return activeSenses.size();
+    }
+
+    public int activePillCount() {
+        return activePills.size();
+    }
+}
@@ -0,0 +1,17 @@
+package com.hello.suripu.analytics.replay;
+
+import com.amazonaws.services.kinesis.model.Record;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Batches of kinesis records fed to one processor by the replay command, in the role of a kinesis shard.
+ */
+public interface RecordBatchSource {
+
+    /**
+     * @return the next batch, never empty
+     */
+    List<Record> nextBatch() throws IOException;
+}
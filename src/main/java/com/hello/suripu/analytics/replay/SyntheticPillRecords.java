@@ -0,0 +1,74 @@
+package com.hello.suripu.analytics.replay;
+
+import com.amazonaws.services.kinesis.model.Record;
+import com.google.common.collect.Lists;
+import com.google.protobuf.ByteString;
+
+import com.hello.suripu.api.ble.SenseCommandProtos;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Serialized batched_pill_data messages as forwarded by senses, each carrying the data of a few pills.
+ */
+public class SyntheticPillRecords {
+
+    private static final int MOTION_DATA_BYTES = 32;
+
+    private final Random random;
+    private final int pillsPerRecord;
+
+    public SyntheticPillRecords(final long seed, final int pillsPerRecord) {
+        this.random = new Random(seed);
+        this.pillsPerRecord = pillsPerRecord;
+    }
+
+    /**
+     * @return kinesis records from the given number of senses, partitioned by sense id
+     */
+    public List<Record> batch(final int senses, final int size) {
+        return batches(senses, size, 1).get(0);
+    }
+
+    /**
+     * @return consecutive batches from one fleet of senses, cycling through the fleet and numbering records in order
+     */
+    public List<List<Record>> batches(final int senses, final int size, final int count) {
+        final List<String> senseIds = Lists.newArrayListWithExpectedSize(senses);
+        for (int i = 0; i < senses; i++) {
+            senseIds.add(String.format("%016X", random.nextLong()));
+        }
+        final List<List<Record>> batches = Lists.newArrayListWithExpectedSize(count);
+        long sequenceNumber = 0L;
+        for (int batch = 0; batch < count; batch++) {
+            final List<Record> records = Lists.newArrayListWithExpectedSize(size);
+            for (int i = 0; i < size; i++) {
+                final String senseId = senseIds.get((int) (sequenceNumber % senses));
+                records.add(new Record()
+                        .withPartitionKey(senseId)
+                        .withSequenceNumber(String.format("%056d", sequenceNumber++))
+                        .withData(ByteBuffer.wrap(message(senseId).toByteArray())));
+            }
+            batches.add(records);
+        }
+        return batches;
+    }
+
+    private SenseCommandProtos.batched_pill_data message(final String senseId) {
+        final long nowSeconds = System.currentTimeMillis() / 1000L;
+        final SenseCommandProtos.batched_pill_data.Builder batch = SenseCommandProtos.batched_pill_data.newBuilder()
+                .setDeviceId(senseId);
+        for (int i = 0; i < pillsPerRecord; i++) {
+            final byte[] motionData = new byte[MOTION_DATA_BYTES];
+            random.nextBytes(motionData);
+            batch.addPills(SenseCommandProtos.pill_data.newBuilder()
+                    .setDeviceId(String.format("%016X", random.nextLong()))
+                    .setTimestamp(nowSeconds - random.nextInt(60))
+                    .setMotionDataEntrypted(ByteString.copyFrom(motionData))
+                    .buildPartial());
+        }
+        return batch.buildPartial();
+    }
+}
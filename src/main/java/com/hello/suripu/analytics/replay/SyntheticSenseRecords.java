@@ -0,0 +1,116 @@
+package com.hello.suripu.analytics.replay;
+
+import com.amazonaws.services.kinesis.model.Record;
+import com.google.common.collect.Lists;
+
+import com.hello.suripu.api.input.DataInputProtos;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Serialized BatchPeriodicDataWorker messages shaped like production ones, with sensor values inside the
+ * data-quality bounds so that benchmarks and replays don't measure error logging.
+ */
+public class SyntheticSenseRecords {
+
+    private static final int BUFFER_OFFSET = 16;
+
+    private final Random random;
+    private final int periodicDataPerRecord;
+    private final int accessPointsPerRecord;
+    private final int firmwareVersions;
+
+    /**
+     * @param firmwareVersions number of distinct firmwares in the fleet, records pick one at random
+     */
+    public SyntheticSenseRecords(final long seed, final int periodicDataPerRecord, final int accessPointsPerRecord, final int firmwareVersions) {
+        this.random = new Random(seed);
+        this.periodicDataPerRecord = periodicDataPerRecord;
+        this.accessPointsPerRecord = accessPointsPerRecord;
+        this.firmwareVersions = firmwareVersions;
+    }
+
+    /**
+     * @return kinesis records from the given number of senses, partitioned by sense id like the producers do
+     */
+    public List<Record> batch(final int senses, final int size) {
+        return batches(senses, size, 1).get(0);
+    }
+
+    /**
+     * @return consecutive batches from one fleet of senses, cycling through the fleet and numbering records in order
+     */
+    public List<List<Record>> batches(final int senses, final int size, final int count) {
+        final List<String> deviceIds = Lists.newArrayListWithExpectedSize(senses);
+        for (int i = 0; i < senses; i++) {
+            deviceIds.add(deviceId());
+        }
+        final List<List<Record>> batches = Lists.newArrayListWithExpectedSize(count);
+        long sequenceNumber = 0L;
+        for (int batch = 0; batch < count; batch++) {
+            final List<Record> records = Lists.newArrayListWithExpectedSize(size);
+            for (int i = 0; i < size; i++) {
+                final String deviceId = deviceIds.get((int) (sequenceNumber % senses));
+                records.add(new Record()
+                        .withPartitionKey(deviceId)
+                        .withSequenceNumber(String.format("%056d", sequenceNumber++))
+                        .withData(next(deviceId)));
+            }
+            batches.add(records);
+        }
+        return batches;
+    }
+
+    /**
+     * @return a record for the given sense, as a buffer over a larger array like kinesis hands out
+     */
+    public ByteBuffer next(final String deviceId) {
+        final byte[] message = message(deviceId).toByteArray();
+        final byte[] backing = new byte[message.length + BUFFER_OFFSET];
+        System.arraycopy(message, 0, backing, BUFFER_OFFSET, message.length);
+        return ByteBuffer.wrap(backing, BUFFER_OFFSET, message.length).slice();
+    }
+
+    public String deviceId() {
+        return String.format("%016X", random.nextLong());
+    }
+
+    private DataInputProtos.BatchPeriodicDataWorker message(final String deviceId) {
+        final String connectedSsid = "hello-" + random.nextInt(1000);
+        final int firmware = random.nextInt(firmwareVersions);
+        final DataInputProtos.batched_periodic_data.Builder batch = DataInputProtos.batched_periodic_data.newBuilder()
+                .setDeviceId(deviceId)
+                .setFirmwareVersion(0x1000 + firmware)
+                .setConnectedSsid(connectedSsid);
+        for (int i = 0; i < accessPointsPerRecord; i++) {
+            batch.addScan(DataInputProtos.batched_periodic_data.wifi_access_point.newBuilder()
+                    .setSsid(i == accessPointsPerRecord / 2 ? connectedSsid : "neighbor-" + random.nextInt(1000))
+                    .setRssi(-30 - random.nextInt(60))
+                    .buildPartial());
+        }
+        final int now = (int) (System.currentTimeMillis() / 1000L);
+        for (int i = 0; i < periodicDataPerRecord; i++) {
+            batch.addData(DataInputProtos.periodic_data.newBuilder()
+                    .setUnixTime(now - (periodicDataPerRecord - i) * 60)
+                    .setTemperature(2000 + random.nextInt(1000))
+                    .setHumidity(3000 + random.nextInt(3000))
+                    .setDust(random.nextInt(1000))
+                    .setLight(random.nextInt(5000))
+                    .setWaveCount(random.nextInt(3))
+                    .setFirmwareVersion(0x1000 + firmware)
+                    .setCo2(400 + random.nextInt(1000))
+                    .setPressure(1000 * 256 * 100 + random.nextInt(10000))
+                    .buildPartial());
+        }
+        return DataInputProtos.BatchPeriodicDataWorker.newBuilder()
+                .setData(batch.buildPartial())
+                .setReceivedAt(System.currentTimeMillis())
+                .setIpAddress("10.0.0." + random.nextInt(255))
+                .setUptimeInSecond(random.nextInt(86400 * 30))
+                .setFirmwareTopVersion("1." + firmware + ".0")
+                .setFirmwareMiddleVersion(Integer.toHexString(0x1000 + firmware))
+                .buildPartial();
+    }
+}
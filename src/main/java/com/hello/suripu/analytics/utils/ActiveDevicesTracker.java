@@ -1,7 +1,12 @@
 package com.hello.suripu.analytics.utils;
 
-import com.google.common.collect.ImmutableMap;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 
+import com.hello.suripu.analytics.configuration.DeviceInfoLayout;
+import com.hello.suripu.analytics.configuration.HourlyActiveMode;
 import com.hello.suripu.analytics.models.WifiInfo;
 import com.hello.suripu.core.models.FirmwareInfo;
 
@@ -12,6 +17,7 @@ import org.joda.time.format.DateTimeFormatter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.List;
 import java.util.Map;
 
 import redis.clients.jedis.Jedis;
@@ -19,73 +25,179 @@ import redis.clients.jedis.JedisPool;
 import redis.clients.jedis.Pipeline;
 import redis.clients.jedis.exceptions.JedisConnectionException;
 import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.util.SafeEncoder;
 
-public class ActiveDevicesTracker {
-    private static final String SENSE_ACTIVE_SET_KEY = "active_senses";
-    private static final String PILL_ACTIVE_SET_KEY = "active_pills";
-    private static final String DEVICE_ID_KEY_BASE = "device_id:";
-    private static final String TOP_FIRMWARE_KEY_BASE = "top:";
-    private static final String MIDDLE_FIRMWARE_KEY_BASE = "middle:";
-    private static final String FIRMWARES_SEEN_SET_KEY = "firmwares_seen";
-    private static final String TOP_FIRMWARES_SEEN_SET_KEY = "top_firmwares_seen";
-    private static final String WIFI_INFO_HASH_KEY = "wifi_info";
-    private static final String SENSE_UPTIME_HSET_KEY = "sense_uptimes";
-    private static final String HOURLY_ACTIVE_SENSE_SET_KEY_PREFIX = "hourly_active_sense_%s";
-    private static final String HOURLY_ACTIVE_PILL_SET_KEY_PREFIX = "hourly_active_pill_%s";
+public class ActiveDevicesTracker implements DeviceTracker {
+    static final String SENSE_ACTIVE_SET_KEY = "active_senses";
+    static final String PILL_ACTIVE_SET_KEY = "active_pills";
+    static final String DEVICE_ID_KEY_BASE = "device_id:";
+    static final String TOP_FIRMWARE_KEY_BASE = "top:";
+    static final String MIDDLE_FIRMWARE_KEY_BASE = "middle:";
+    static final String FIRMWARES_SEEN_SET_KEY = "firmwares_seen";
+    static final String TOP_FIRMWARES_SEEN_SET_KEY = "top_firmwares_seen";
+    static final String WIFI_INFO_HASH_KEY = "wifi_info";
+    static final String SENSE_UPTIME_HSET_KEY = "sense_uptimes";
+    static final String HOURLY_ACTIVE_SENSE_SET_KEY_PREFIX = "hourly_active_sense_%s";
+    static final String HOURLY_ACTIVE_PILL_SET_KEY_PREFIX = "hourly_active_pill_%s";
+    static final String HOURLY_ACTIVE_SENSE_HLL_KEY_PREFIX = "hourly_active_sense_hll_%s";
+    static final String HOURLY_ACTIVE_PILL_HLL_KEY_PREFIX = "hourly_active_pill_hll_%s";
+    static final String DAILY_ACTIVE_SENSE_HLL_KEY_PREFIX = "daily_active_sense_hll_%s";
+    static final String DAILY_ACTIVE_PILL_HLL_KEY_PREFIX = "daily_active_pill_hll_%s";
     private static final DateTimeFormatter SET_KEY_SUFFIX_PATTERN = DateTimeFormat.forPattern("yyyy_MM_dd_HH_00");
+    private static final DateTimeFormatter DAILY_KEY_SUFFIX_PATTERN = DateTimeFormat.forPattern("yyyy_MM_dd");
     private static final Integer HOURLY_SET_KEY_EXPIRATION_IN_HOURS = 48;
+    private static final Integer DAILY_KEY_EXPIRATION_IN_DAYS = 30;
 
     private static final String GENERIC_EXCEPTION_LOG_MESSAGE = "error=jedis-connection-exception";
     private final static Logger LOGGER = LoggerFactory.getLogger(ActiveDevicesTracker.class);
 
     private final JedisPool jedisPool;
+    private final LastSeenThrottle senseThrottle;
+    private final LastSeenThrottle pillThrottle;
+    private final boolean writeHourlySets;
+    private final boolean writeHyperLogLogs;
+    private final HyperLogLogMirror senseHyperLogLog = new HyperLogLogMirror();
+    private final HyperLogLogMirror pillHyperLogLog = new HyperLogLogMirror();
+    private final PipelineMetrics pipelineMetrics;
+    private final boolean writeDeviceInfoHashes;
+    private final DeviceInfoBuckets deviceInfoBuckets;
 
-    public ActiveDevicesTracker(final JedisPool jedisPool) {
+    /**
+     * @param deviceInfoBuckets where wifi info and uptimes go in the bucketed layout
+     */
+    public ActiveDevicesTracker(final JedisPool jedisPool, final LastSeenThrottle senseThrottle, final LastSeenThrottle pillThrottle, final HourlyActiveMode hourlyActiveMode,
+                                final DeviceInfoLayout deviceInfoLayout, final DeviceInfoBuckets deviceInfoBuckets, final MetricRegistry metricRegistry) {
         this.jedisPool = jedisPool;
+        this.pipelineMetrics = new PipelineMetrics(ActiveDevicesTracker.class, metricRegistry);
+        this.senseThrottle = senseThrottle;
+        this.pillThrottle = pillThrottle;
+        this.writeHourlySets = HourlyActiveMode.SET.equals(hourlyActiveMode) || HourlyActiveMode.BOTH.equals(hourlyActiveMode);
+        this.writeHyperLogLogs = HourlyActiveMode.HYPERLOGLOG.equals(hourlyActiveMode) || HourlyActiveMode.BOTH.equals(hourlyActiveMode);
+        this.writeDeviceInfoHashes = DeviceInfoLayout.HASH.equals(deviceInfoLayout) || DeviceInfoLayout.BOTH.equals(deviceInfoLayout);
+        this.deviceInfoBuckets = (DeviceInfoLayout.BUCKETED.equals(deviceInfoLayout) || DeviceInfoLayout.BOTH.equals(deviceInfoLayout))
+                ? deviceInfoBuckets
+                : null;
     }
 
-    public void trackSenses(final Map<String, Long> activeSenses) {
-        trackDevices(SENSE_ACTIVE_SET_KEY, HOURLY_ACTIVE_SENSE_SET_KEY_PREFIX, ImmutableMap.copyOf(activeSenses));
+    @Override
+    public boolean trackSenses(final Map<String, Long> activeSenses) {
+        return trackDevices(SENSE_ACTIVE_SET_KEY, HOURLY_ACTIVE_SENSE_SET_KEY_PREFIX, HOURLY_ACTIVE_SENSE_HLL_KEY_PREFIX, DAILY_ACTIVE_SENSE_HLL_KEY_PREFIX,
+                activeSenses, senseThrottle, senseHyperLogLog);
     }
 
-    public void trackPills(final Map<String, Long> activePills) {
-        trackDevices(PILL_ACTIVE_SET_KEY, HOURLY_ACTIVE_PILL_SET_KEY_PREFIX, ImmutableMap.copyOf(activePills));
+    @Override
+    public boolean trackPills(final Map<String, Long> activePills) {
+        return trackDevices(PILL_ACTIVE_SET_KEY, HOURLY_ACTIVE_PILL_SET_KEY_PREFIX, HOURLY_ACTIVE_PILL_HLL_KEY_PREFIX, DAILY_ACTIVE_PILL_HLL_KEY_PREFIX,
+                activePills, pillThrottle, pillHyperLogLog);
     }
 
-    private void trackDevices(final String activeKey, final String hourlyActiveKeySetPrefix, final Map<String, Long> devicesSeen) {
-        final DateTime dateTimeNow = DateTime.now(DateTimeZone.UTC);
-        final String hourlyActiveSetKey = String.format(
+    static String hourlyKey(final String hourlyActiveKeySetPrefix, final DateTime dateTimeNow) {
+        return String.format(
                 hourlyActiveKeySetPrefix,
                 dateTimeNow.toString(SET_KEY_SUFFIX_PATTERN)
         );
+    }
 
-        final Long hourlyActiveKeySetExpirationTimestampSeconds = dateTimeNow
+    static Long hourlyKeyExpirationSeconds(final DateTime dateTimeNow) {
+        return dateTimeNow
                 .minusMillis(dateTimeNow.getMillisOfSecond())
                 .minusSeconds(dateTimeNow.getSecondOfMinute())
                 .minusMinutes(dateTimeNow.getMinuteOfHour())
                 .plusHours(HOURLY_SET_KEY_EXPIRATION_IN_HOURS)
                 .getMillis() / 1000;
+    }
+
+    static String dailyKey(final String dailyKeyPrefix, final DateTime dateTimeNow) {
+        return String.format(
+                dailyKeyPrefix,
+                dateTimeNow.toString(DAILY_KEY_SUFFIX_PATTERN)
+        );
+    }
+
+    static Long dailyKeyExpirationSeconds(final DateTime dateTimeNow) {
+        return dateTimeNow.withTimeAtStartOfDay()
+                .plusDays(DAILY_KEY_EXPIRATION_IN_DAYS)
+                .getMillis() / 1000;
+    }
+
+    private boolean trackDevices(final String activeKey,
+                              final String hourlyActiveKeySetPrefix,
+                              final String hourlyActiveHyperLogLogKeyPrefix,
+                              final String dailyActiveHyperLogLogKeyPrefix,
+                              final Map<String, Long> devicesSeen,
+                              final LastSeenThrottle throttle,
+                              final HyperLogLogMirror hyperLogLogMirror) {
+        final DateTime dateTimeNow = DateTime.now(DateTimeZone.UTC);
+        final String hourlyActiveSetKey = hourlyKey(hourlyActiveKeySetPrefix, dateTimeNow);
+        final Long hourlyActiveKeySetExpirationTimestampSeconds = hourlyKeyExpirationSeconds(dateTimeNow);
+
+        final Map<String, Long> scoresToWrite = Maps.newHashMapWithExpectedSize(devicesSeen.size());
+        final List<String> hourlyMembersToWrite = Lists.newArrayListWithExpectedSize(devicesSeen.size());
+        for(final Map.Entry<String, Long> entry : devicesSeen.entrySet()) {
+            if (throttle.shouldAdvanceScore(entry.getKey(), entry.getValue())) {
+                scoresToWrite.put(entry.getKey(), entry.getValue());
+            }
+            if (throttle.shouldAddToHourlySet(entry.getKey(), hourlyActiveSetKey)) {
+                hourlyMembersToWrite.add(entry.getKey());
+            }
+        }
+
+        if (scoresToWrite.isEmpty() && hourlyMembersToWrite.isEmpty()) {
+            LOGGER.debug("action=active-devices-throttled device_count={} key={}", devicesSeen.size(), activeKey);
+            return true;
+        }
+
+        // Only members that can still raise a register of this hour's HyperLogLog are sent
+        final String hourlyActiveHyperLogLogKey = hourlyKey(hourlyActiveHyperLogLogKeyPrefix, dateTimeNow);
+        final String dailyActiveHyperLogLogKey = dailyKey(dailyActiveHyperLogLogKeyPrefix, dateTimeNow);
+        final HyperLogLogMirror.Pending hyperLogLogPending = writeHyperLogLogs
+                ? hyperLogLogMirror.pending(hourlyActiveHyperLogLogKey, hourlyMembersToWrite)
+                : null;
         Jedis jedis = null;
 
         try {
             jedis = jedisPool.getResource();
 
             final Pipeline pipe = jedis.pipelined();
+            int commands = 2;
             pipe.multi();
-            for(Map.Entry<String, Long> entry : devicesSeen.entrySet()) {
+            for(final Map.Entry<String, Long> entry : scoresToWrite.entrySet()) {
                 pipe.zadd(activeKey, entry.getValue(), entry.getKey());
-                pipe.sadd(hourlyActiveSetKey, entry.getKey());
+            }
+            if (writeHourlySets && !hourlyMembersToWrite.isEmpty()) {
+                for(final String deviceId : hourlyMembersToWrite) {
+                    pipe.sadd(hourlyActiveSetKey, deviceId);
+                }
                 pipe.expireAt(hourlyActiveSetKey, hourlyActiveKeySetExpirationTimestampSeconds);
+                commands += hourlyMembersToWrite.size() + 1;
+            }
+            if (hyperLogLogPending != null && !hyperLogLogPending.members.isEmpty()) {
+                pipe.pfadd(hourlyActiveHyperLogLogKey, hyperLogLogPending.members.toArray(new String[hyperLogLogPending.members.size()]));
+                pipe.expireAt(hourlyActiveHyperLogLogKey, hourlyActiveKeySetExpirationTimestampSeconds);
+                pipe.pfmerge(dailyActiveHyperLogLogKey, hourlyActiveHyperLogLogKey);
+                pipe.expireAt(dailyActiveHyperLogLogKey, dailyKeyExpirationSeconds(dateTimeNow));
+                commands += 4;
+            }
+            commands += scoresToWrite.size();
+            final Timer.Context context = pipelineMetrics.time(commands);
+            try {
+                pipe.exec();
+                pipe.sync();
+            } finally {
+                context.stop();
+            }
+            throttle.recordWrites(scoresToWrite, hourlyMembersToWrite, hourlyActiveSetKey);
+            if (hyperLogLogPending != null) {
+                hyperLogLogMirror.commit(hyperLogLogPending);
             }
-            pipe.exec();
         }catch (JedisDataException exception) {
             LOGGER.error("error=jedis-data-exception message={}", exception.getMessage());
             jedisPool.returnBrokenResource(jedis);
-            return;
+            return false;
         } catch(Exception exception) {
             LOGGER.error("error=redis-unknown-failure message={}", exception.getMessage());
             jedisPool.returnBrokenResource(jedis);
-            return;
+            return false;
         }
         finally {
             try{
@@ -94,15 +206,19 @@ public class ActiveDevicesTracker {
                 LOGGER.error(GENERIC_EXCEPTION_LOG_MESSAGE + " message={}", e.getMessage());
             }
         }
-        LOGGER.debug("action=active-devices-tracked device_count={} key={}", devicesSeen.size(), activeKey);
+        LOGGER.debug("action=active-devices-tracked device_count={} scores_written={} hourly_members_written={} key={}",
+                devicesSeen.size(), scoresToWrite.size(), hourlyMembersToWrite.size(), activeKey);
+        return true;
     }
 
-    public void trackFirmwares(final Map<String, FirmwareInfo> seenFirmwares) {
+    @Override
+    public boolean trackFirmwares(final Map<String, FirmwareInfo> seenFirmwares) {
         Jedis jedis = null;
 
         try {
             jedis = jedisPool.getResource();
             final Pipeline pipe = jedis.pipelined();
+            int commands = 2;
             pipe.multi();
             for(final Map.Entry <String, FirmwareInfo> entry : seenFirmwares.entrySet()) {
                 final FirmwareInfo fwEntry = entry.getValue();
@@ -112,23 +228,31 @@ public class ActiveDevicesTracker {
                     pipe.hset(DEVICE_ID_KEY_BASE.concat(fwEntry.device_id), "middle_version", fwEntry.middleVersion);
                     pipe.hset(DEVICE_ID_KEY_BASE.concat(fwEntry.device_id), "timestamp", fwEntry.timestamp.toString());
                     pipe.zadd(MIDDLE_FIRMWARE_KEY_BASE.concat(fwEntry.middleVersion), fwEntry.timestamp, fwEntry.device_id);
+                    commands += 4;
                 }
                 if (!fwEntry.topVersion.equals("0")) {
                     pipe.zadd(TOP_FIRMWARES_SEEN_SET_KEY, fwEntry.timestamp, fwEntry.topVersion);
                     pipe.hset(DEVICE_ID_KEY_BASE.concat(fwEntry.device_id), "top_version", fwEntry.topVersion);
                     pipe.hset(DEVICE_ID_KEY_BASE.concat(fwEntry.device_id), "timestamp", fwEntry.timestamp.toString());
                     pipe.zadd(TOP_FIRMWARE_KEY_BASE.concat(fwEntry.topVersion), fwEntry.timestamp, fwEntry.device_id);
+                    commands += 4;
                 }
             }
-            pipe.exec();
+            final Timer.Context context = pipelineMetrics.time(commands);
+            try {
+                pipe.exec();
+                pipe.sync();
+            } finally {
+                context.stop();
+            }
         }catch (JedisDataException exception) {
             LOGGER.error("error=jedis-data-exception message={}", exception.getMessage());
             jedisPool.returnBrokenResource(jedis);
-            return;
+            return false;
         } catch(Exception exception) {
             LOGGER.error("error=redis-unknown-failure message={}", exception.getMessage());
             jedisPool.returnBrokenResource(jedis);
-            return;
+            return false;
         }
         finally {
             try{
@@ -138,27 +262,43 @@ public class ActiveDevicesTracker {
             }
         }
         LOGGER.debug("action=firmware-info-tracked device_count={}", seenFirmwares.size());
+        return true;
     }
 
-    public void trackWifiInfo(final Map<String, WifiInfo> wifiInfos) {
+    @Override
+    public boolean trackWifiInfo(final Map<String, WifiInfo> wifiInfos) {
         Jedis jedis = null;
         try {
             jedis = jedisPool.getResource();
             final Pipeline pipe = jedis.pipelined();
+            int commands = 2;
             pipe.multi();
             for(final Map.Entry <String, WifiInfo> entry : wifiInfos.entrySet()) {
                 final WifiInfo wifiInfo = entry.getValue();
-                pipe.hset(WIFI_INFO_HASH_KEY, entry.getKey(), String.format("%s : %s", wifiInfo.ssid, wifiInfo.rssi));
+                if (writeDeviceInfoHashes) {
+                    pipe.hset(WIFI_INFO_HASH_KEY, entry.getKey(), String.format("%s : %s", wifiInfo.ssid, wifiInfo.rssi));
+                    commands++;
+                }
+                if (deviceInfoBuckets != null) {
+                    pipe.hset(deviceInfoBuckets.wifiInfoKey(entry.getKey()), SafeEncoder.encode(entry.getKey()), DeviceInfoBuckets.encodeWifiInfo(wifiInfo));
+                    commands++;
+                }
+            }
+            final Timer.Context context = pipelineMetrics.time(commands);
+            try {
+                pipe.exec();
+                pipe.sync();
+            } finally {
+                context.stop();
             }
-            pipe.exec();
         }catch (JedisDataException exception) {
             LOGGER.error("error=jedis-data-exception message={}", exception.getMessage());
             jedisPool.returnBrokenResource(jedis);
-            return;
+            return false;
         } catch(Exception exception) {
             LOGGER.error("error=redis-unknown-failure message={}", exception.getMessage());
             jedisPool.returnBrokenResource(jedis);
-            return;
+            return false;
         }
         finally {
             try{
@@ -168,31 +308,55 @@ public class ActiveDevicesTracker {
             }
         }
         LOGGER.debug("action=wifi-info-tracked device_count={}", wifiInfos.size());
+        return true;
+    }
+
+    /**
+     * Every write is acknowledged before its track call returns, nothing is buffered.
+     */
+    @Override
+    public boolean flush() {
+        return true;
     }
 
-    public void trackUptime(final Map<String, Integer> uptimes) {
-        trackUptime(SENSE_UPTIME_HSET_KEY, ImmutableMap.copyOf(uptimes));
+    @Override
+    public boolean trackUptime(final Map<String, Integer> uptimes) {
+        return trackUptime(SENSE_UPTIME_HSET_KEY, uptimes);
     }
 
-    private void trackUptime(final String redisKey, final Map<String, Integer> uptime) {
+    private boolean trackUptime(final String redisKey, final Map<String, Integer> uptime) {
         Jedis jedis = null;
 
         try {
             jedis = jedisPool.getResource();
             final Pipeline pipe = jedis.pipelined();
+            int commands = 2;
             pipe.multi();
             for(final Map.Entry <String, Integer> entry : uptime.entrySet()) {
-                pipe.hset(redisKey, entry.getKey(), String.valueOf(entry.getValue()));
+                if (writeDeviceInfoHashes) {
+                    pipe.hset(redisKey, entry.getKey(), String.valueOf(entry.getValue()));
+                    commands++;
+                }
+                if (deviceInfoBuckets != null) {
+                    pipe.hset(deviceInfoBuckets.uptimeKey(entry.getKey()), SafeEncoder.encode(entry.getKey()), DeviceInfoBuckets.encodeUptime(entry.getValue()));
+                    commands++;
+                }
+            }
+            final Timer.Context context = pipelineMetrics.time(commands);
+            try {
+                pipe.exec();
+                pipe.sync();
+            } finally {
+                context.stop();
             }
-            pipe.exec();
         }catch (JedisDataException exception) {
             LOGGER.error("error=jedis-data-exception message={}", exception.getMessage());
             jedisPool.returnBrokenResource(jedis);
-            return;
+            return false;
         } catch(Exception exception) {
             LOGGER.error("error=redis-unknown-failure message={}", exception.getMessage());
             jedisPool.returnBrokenResource(jedis);
-            return;
+            return false;
         }
         finally {
             try{
@@ -202,5 +366,6 @@ public class ActiveDevicesTracker {
             }
         }
         LOGGER.debug("action=track-uptime num_senses={}", uptime.size());
+        return true;
     }
 }
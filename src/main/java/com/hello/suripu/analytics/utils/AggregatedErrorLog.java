@@ -0,0 +1,170 @@
+package com.hello.suripu.analytics.utils;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Objects;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.RateLimiter;
+
+import org.slf4j.Logger;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Logs hot-path errors at a bounded cost: events are counted by (reason, device, firmware) and summarized once per
+ * interval, and only a few events per second, picked by a token bucket, are logged individually as samples.
+ *
+ * Safe to call from any thread. At most maxKeys distinct keys are counted per interval, events of further keys only
+ * show up in the untracked count of the summary.
+ */
+public class AggregatedErrorLog {
+
+    private static final int TOP_KEYS_PER_REASON = 5;
+    private static final Joiner COMMA = Joiner.on(',');
+
+    private final Logger logger;
+    private final String kind;
+    private final long intervalMillis;
+    private final int maxKeys;
+    private final RateLimiter sampleRateLimiter;
+
+    private volatile ConcurrentMap<Key, AtomicLong> counts = new ConcurrentHashMap<>();
+    private final AtomicLong untracked = new AtomicLong();
+
+    // Guarded by this
+    private long intervalStartMillis;
+
+    /**
+     * @param kind key of the reason in the log lines, e.g. "error" for error=no-top-fw
+     * @param samplesPerSecond individual events logged at most, across all reasons
+     */
+    public AggregatedErrorLog(final Logger logger, final String kind, final long intervalMillis, final int maxKeys, final double samplesPerSecond) {
+        this.logger = logger;
+        this.kind = kind;
+        this.intervalMillis = intervalMillis;
+        this.maxKeys = maxKeys;
+        this.sampleRateLimiter = RateLimiter.create(samplesPerSecond);
+        this.intervalStartMillis = System.currentTimeMillis();
+    }
+
+    public void record(final String reason, final String deviceId, final int firmwareVersion, final long value) {
+        if (sampleRateLimiter.tryAcquire()) {
+            logger.error("{}={} sensor_val={} device_id={} fw_version={} sample=true", kind, reason, value, deviceId, firmwareVersion);
+        }
+        count(reason, deviceId, firmwareVersion);
+    }
+
+    public void record(final String reason, final String deviceId, final int firmwareVersion) {
+        if (sampleRateLimiter.tryAcquire()) {
+            logger.error("{}={} device_id={} fw_version={} sample=true", kind, reason, deviceId, firmwareVersion);
+        }
+        count(reason, deviceId, firmwareVersion);
+    }
+
+    /**
+     * Logs the summary of the current interval if it is over. Cheap enough to call after every batch.
+     */
+    public void flushIfDue() {
+        final long nowMillis = System.currentTimeMillis();
+        final Map<Key, AtomicLong> interval;
+        final long intervalSeconds;
+        synchronized (this) {
+            if (nowMillis - intervalStartMillis < intervalMillis) {
+                return;
+            }
+            interval = counts;
+            counts = new ConcurrentHashMap<>();
+            intervalSeconds = (nowMillis - intervalStartMillis) / 1000L;
+            intervalStartMillis = nowMillis;
+        }
+        summarize(interval, untracked.getAndSet(0L), intervalSeconds);
+    }
+
+    private void count(final String reason, final String deviceId, final int firmwareVersion) {
+        final ConcurrentMap<Key, AtomicLong> current = counts;
+        final Key key = new Key(reason, deviceId, firmwareVersion);
+        AtomicLong count = current.get(key);
+        if (count == null) {
+            if (current.size() >= maxKeys) {
+                untracked.incrementAndGet();
+                return;
+            }
+            final AtomicLong created = new AtomicLong();
+            count = current.putIfAbsent(key, created);
+            if (count == null) {
+                count = created;
+            }
+        }
+        count.incrementAndGet();
+    }
+
+    private void summarize(final Map<Key, AtomicLong> interval, final long untrackedEvents, final long intervalSeconds) {
+        final Map<String, List<Map.Entry<Key, Long>>> byReason = Maps.newTreeMap();
+        for (final Map.Entry<Key, AtomicLong> entry : interval.entrySet()) {
+            List<Map.Entry<Key, Long>> entries = byReason.get(entry.getKey().reason);
+            if (entries == null) {
+                entries = Lists.newArrayList();
+                byReason.put(entry.getKey().reason, entries);
+            }
+            entries.add(Maps.immutableEntry(entry.getKey(), entry.getValue().get()));
+        }
+
+        for (final Map.Entry<String, List<Map.Entry<Key, Long>>> reason : byReason.entrySet()) {
+            final List<Map.Entry<Key, Long>> entries = reason.getValue();
+            Collections.sort(entries, MOST_EVENTS_FIRST);
+            long events = 0L;
+            for (final Map.Entry<Key, Long> entry : entries) {
+                events += entry.getValue();
+            }
+            final List<String> top = Lists.newArrayListWithExpectedSize(TOP_KEYS_PER_REASON);
+            for (final Map.Entry<Key, Long> entry : entries.subList(0, Math.min(TOP_KEYS_PER_REASON, entries.size()))) {
+                top.add(entry.getKey().deviceId + ":" + entry.getKey().firmwareVersion + ":" + entry.getValue());
+            }
+            logger.error("{}={} summary=true interval_seconds={} events={} devices={} top_device_fw_events={}",
+                    kind, reason.getKey(), intervalSeconds, events, entries.size(), COMMA.join(top));
+        }
+        if (untrackedEvents > 0L) {
+            logger.error("{}=too-many-keys summary=true interval_seconds={} untracked_events={} max_keys={}",
+                    kind, intervalSeconds, untrackedEvents, maxKeys);
+        }
+    }
+
+    private static final Comparator<Map.Entry<Key, Long>> MOST_EVENTS_FIRST = new Comparator<Map.Entry<Key, Long>>() {
+        @Override
+        public int compare(final Map.Entry<Key, Long> first, final Map.Entry<Key, Long> second) {
+            return Long.compare(second.getValue(), first.getValue());
+        }
+    };
+
+    private static class Key {
+        final String reason;
+        final String deviceId;
+        final int firmwareVersion;
+
+        Key(final String reason, final String deviceId, final int firmwareVersion) {
+            this.reason = reason;
+            this.deviceId = deviceId;
+            this.firmwareVersion = firmwareVersion;
+        }
+
+        @Override
+        public boolean equals(final Object other) {
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            final Key key = (Key) other;
+            return firmwareVersion == key.firmwareVersion && reason.equals(key.reason) && deviceId.equals(key.deviceId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(reason, deviceId, firmwareVersion);
+        }
+    }
+}
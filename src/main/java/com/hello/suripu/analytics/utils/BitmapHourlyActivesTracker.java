@@ -0,0 +1,309 @@
+package com.hello.suripu.analytics.utils;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import com.hello.suripu.analytics.models.WifiInfo;
+import com.hello.suripu.core.models.FirmwareInfo;
+
+import io.dropwizard.lifecycle.Managed;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.roaringbitmap.RoaringBitmap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Transaction;
+import redis.clients.util.SafeEncoder;
+
+/**
+ * Keeps exact hourly active devices as roaring bitmaps of {@link DeviceIdDictionary} ids.
+ *
+ * Bitmaps are built in-process and periodically OR-ed into the serialized bitmap stored in redis, using
+ * WATCH/MULTI so several workers can contribute to the same hour. Everything else is passed to the delegate.
+ *
+ * A {@link #flush()} also persists the pending bitmaps, so below a write-behind tracker they are persisted at its
+ * flush cadence rather than the persist interval.
+ */
+public class BitmapHourlyActivesTracker implements DeviceTracker, Managed {
+
+    static final String HOURLY_ACTIVE_SENSE_BITMAP_KEY_PREFIX = "hourly_active_sense_bitmap_%s";
+    static final String HOURLY_ACTIVE_PILL_BITMAP_KEY_PREFIX = "hourly_active_pill_bitmap_%s";
+    private static final int MAX_PERSIST_ATTEMPTS = 5;
+
+    private final static Logger LOGGER = LoggerFactory.getLogger(BitmapHourlyActivesTracker.class);
+
+    private final DeviceTracker delegate;
+    private final JedisPool jedisPool;
+    private final DeviceIdDictionary dictionary;
+    private final long persistIntervalSeconds;
+    private final ScheduledExecutorService executorService;
+
+    // Guarded by this. Bitmaps of the hours not persisted yet, by redis key.
+    private final Map<String, HourlyBitmap> bitmaps = Maps.newHashMap();
+    // Held for a whole persist, so a flush returns only once bitmaps taken by a concurrent persist are merged too
+    private final Object persistLock = new Object();
+
+    public BitmapHourlyActivesTracker(final DeviceTracker delegate, final JedisPool jedisPool, final DeviceIdDictionary dictionary, final long persistIntervalSeconds) {
+        this.delegate = delegate;
+        this.jedisPool = jedisPool;
+        this.dictionary = dictionary;
+        this.persistIntervalSeconds = persistIntervalSeconds;
+        this.executorService = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setNameFormat("bitmap-hourly-actives-%d").setDaemon(true).build());
+    }
+
+    @Override
+    public boolean trackSenses(final Map<String, Long> activeSenses) {
+        final boolean written = delegate.trackSenses(activeSenses);
+        return add(HOURLY_ACTIVE_SENSE_BITMAP_KEY_PREFIX, activeSenses) && written;
+    }
+
+    @Override
+    public boolean trackPills(final Map<String, Long> activePills) {
+        final boolean written = delegate.trackPills(activePills);
+        return add(HOURLY_ACTIVE_PILL_BITMAP_KEY_PREFIX, activePills) && written;
+    }
+
+    @Override
+    public boolean trackFirmwares(final Map<String, FirmwareInfo> seenFirmwares) {
+        return delegate.trackFirmwares(seenFirmwares);
+    }
+
+    @Override
+    public boolean trackWifiInfo(final Map<String, WifiInfo> wifiInfos) {
+        return delegate.trackWifiInfo(wifiInfos);
+    }
+
+    @Override
+    public boolean trackUptime(final Map<String, Integer> uptimes) {
+        return delegate.trackUptime(uptimes);
+    }
+
+    @Override
+    public boolean flush() {
+        final boolean delegateFlushed = delegate.flush();
+        final boolean persisted = persist();
+        return delegateFlushed && persisted;
+    }
+
+    @Override
+    public void start() throws Exception {
+        executorService.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                persist();
+            }
+        }, persistIntervalSeconds, persistIntervalSeconds, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public void stop() throws Exception {
+        executorService.shutdown();
+        executorService.awaitTermination(persistIntervalSeconds, TimeUnit.SECONDS);
+        persist();
+    }
+
+    /**
+     * @return false if the devices could not be added to the pending bitmap
+     */
+    private boolean add(final String hourlyKeyPrefix, final Map<String, Long> devicesSeen) {
+        if (devicesSeen.isEmpty()) {
+            return true;
+        }
+        final DateTime dateTimeNow = DateTime.now(DateTimeZone.UTC);
+        final String hourlyKey = ActiveDevicesTracker.hourlyKey(hourlyKeyPrefix, dateTimeNow);
+
+        final Map<String, Integer> ids;
+        try {
+            ids = dictionary.resolve(devicesSeen.keySet());
+        } catch (Exception e) {
+            LOGGER.error("error=device-id-dictionary-failure message={}", e.getMessage());
+            return false;
+        }
+
+        synchronized (this) {
+            HourlyBitmap hourlyBitmap = bitmaps.get(hourlyKey);
+            if (hourlyBitmap == null) {
+                hourlyBitmap = new HourlyBitmap(ActiveDevicesTracker.hourlyKeyExpirationSeconds(dateTimeNow));
+                bitmaps.put(hourlyKey, hourlyBitmap);
+            }
+            for (final Integer id : ids.values()) {
+                hourlyBitmap.bitmap.add(id);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Merges every pending bitmap into redis. Pending bitmaps are dropped once persisted, the next batch of an
+     * hour simply starts a new one.
+     *
+     * @return true if every pending bitmap was persisted
+     */
+    private boolean persist() {
+        synchronized (persistLock) {
+            final Map<String, HourlyBitmap> toPersist;
+            synchronized (this) {
+                toPersist = Maps.newHashMap(bitmaps);
+                bitmaps.clear();
+            }
+
+            boolean persisted = true;
+            for (final Map.Entry<String, HourlyBitmap> entry : toPersist.entrySet()) {
+                final HourlyBitmap hourlyBitmap = entry.getValue();
+                if (!merge(entry.getKey(), hourlyBitmap)) {
+                    persisted = false;
+                    // keep it for the next round
+                    synchronized (this) {
+                        final HourlyBitmap current = bitmaps.get(entry.getKey());
+                        if (current == null) {
+                            bitmaps.put(entry.getKey(), hourlyBitmap);
+                        } else {
+                            current.bitmap.or(hourlyBitmap.bitmap);
+                        }
+                    }
+                }
+            }
+            return persisted;
+        }
+    }
+
+    private boolean merge(final String key, final HourlyBitmap hourlyBitmap) {
+        final byte[] rawKey = SafeEncoder.encode(key);
+        Jedis jedis = null;
+        try {
+            jedis = jedisPool.getResource();
+            for (int attempt = 0; attempt < MAX_PERSIST_ATTEMPTS; attempt++) {
+                jedis.watch(rawKey);
+                final RoaringBitmap merged = deserialize(jedis.get(rawKey));
+                merged.or(hourlyBitmap.bitmap);
+                merged.runOptimize();
+
+                final Transaction transaction = jedis.multi();
+                transaction.set(rawKey, serialize(merged));
+                transaction.expireAt(rawKey, hourlyBitmap.expirationSeconds);
+                final List<Object> results = transaction.exec();
+                if (results != null && !results.isEmpty()) {
+                    LOGGER.debug("action=hourly-bitmap-persisted key={} cardinality={}", key, merged.getCardinality());
+                    return true;
+                }
+            }
+            LOGGER.warn("error=hourly-bitmap-contention key={} attempts={}", key, MAX_PERSIST_ATTEMPTS);
+        } catch (Exception e) {
+            LOGGER.error("error=hourly-bitmap-persist-failure key={} message={}", key, e.getMessage());
+        } finally {
+            if (jedis != null) {
+                jedis.close();
+            }
+        }
+        return false;
+    }
+
+    static byte[] serialize(final RoaringBitmap bitmap) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(bitmap.serializedSizeInBytes());
+        bitmap.serialize(new DataOutputStream(bytes));
+        return bytes.toByteArray();
+    }
+
+    static RoaringBitmap deserialize(final byte[] bytes) throws IOException {
+        final RoaringBitmap bitmap = new RoaringBitmap();
+        if (bytes != null) {
+            bitmap.deserialize(new DataInputStream(new ByteArrayInputStream(bytes)));
+        }
+        return bitmap;
+    }
+
+    private static class HourlyBitmap {
+        final RoaringBitmap bitmap = new RoaringBitmap();
+        final long expirationSeconds;
+
+        HourlyBitmap(final long expirationSeconds) {
+            this.expirationSeconds = expirationSeconds;
+        }
+    }
+
+    /**
+     * Reads the persisted bitmaps back, for set operations across hours.
+     */
+    public static class Reader {
+
+        private final JedisPool jedisPool;
+
+        public Reader(final JedisPool jedisPool) {
+            this.jedisPool = jedisPool;
+        }
+
+        public RoaringBitmap hourlySenses(final DateTime hour) throws IOException {
+            return load(ActiveDevicesTracker.hourlyKey(HOURLY_ACTIVE_SENSE_BITMAP_KEY_PREFIX, hour));
+        }
+
+        public RoaringBitmap hourlyPills(final DateTime hour) throws IOException {
+            return load(ActiveDevicesTracker.hourlyKey(HOURLY_ACTIVE_PILL_BITMAP_KEY_PREFIX, hour));
+        }
+
+        /**
+         * @return union of the 24 hourly sense bitmaps of the day containing the given time
+         */
+        public RoaringBitmap dailySenses(final DateTime day) throws IOException {
+            final RoaringBitmap daily = new RoaringBitmap();
+            final DateTime startOfDay = day.withTimeAtStartOfDay();
+            for (int hour = 0; hour < 24; hour++) {
+                daily.or(hourlySenses(startOfDay.plusHours(hour)));
+            }
+            return daily;
+        }
+
+        /**
+         * e.g. activeInBoth(hourlySenses(h1), hourlySenses(h2)).getCardinality()
+         */
+        public static RoaringBitmap activeInBoth(final RoaringBitmap first, final RoaringBitmap second) {
+            return RoaringBitmap.and(first, second);
+        }
+
+        /**
+         * e.g. activeInFirstOnly(dailySenses(yesterday), dailySenses(today)) for devices gone silent
+         */
+        public static RoaringBitmap activeInFirstOnly(final RoaringBitmap first, final RoaringBitmap second) {
+            return RoaringBitmap.andNot(first, second);
+        }
+
+        /**
+         * @return device ids of the given dictionary ids
+         */
+        public List<String> deviceIds(final RoaringBitmap bitmap) {
+            final List<String> ids = Lists.newArrayListWithExpectedSize(bitmap.getCardinality());
+            final Iterator<Integer> iterator = bitmap.iterator();
+            while (iterator.hasNext()) {
+                ids.add(iterator.next().toString());
+            }
+            if (ids.isEmpty()) {
+                return ids;
+            }
+            try (final Jedis jedis = jedisPool.getResource()) {
+                return jedis.hmget(DeviceIdDictionary.REVERSE_DICTIONARY_HASH_KEY, ids.toArray(new String[ids.size()]));
+            }
+        }
+
+        private RoaringBitmap load(final String key) throws IOException {
+            try (final Jedis jedis = jedisPool.getResource()) {
+                return deserialize(jedis.get(SafeEncoder.encode(key)));
+            }
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package com.hello.suripu.analytics.utils;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Maps;
+
+import com.hello.suripu.analytics.models.WifiInfo;
+import com.hello.suripu.core.models.FirmwareInfo;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+/**
+ * Only passes firmware and wifi info to the delegate when they changed since they were last written, or when they
+ * were last written more than the refresh interval ago. Firmware and ssid change maybe once a month per sense, yet
+ * used to be rewritten on every batch.
+ *
+ * A firmware version of "0" is unknown and never counts as a change. Rssi is compared by bucket so that signal
+ * noise alone does not cause writes. Memory is bounded by the maximum number of devices remembered, least recently
+ * written first out; evicted devices are simply written again. Entries are only remembered once the delegate
+ * acknowledged them, so that a failed write is sent again when the processor retries it. Everything else is passed
+ * through.
+ */
+public class ChangeDetectingDeviceTracker implements DeviceTracker {
+
+    private static final String UNKNOWN_VERSION = "0";
+
+    private final DeviceTracker delegate;
+    private final int rssiBucketDb;
+
+    private final Cache<String, Firmware> lastFirmwares;
+    private final Cache<String, Wifi> lastWifis;
+
+    private final Meter firmwareChanged;
+    private final Meter firmwareSuppressed;
+    private final Meter wifiChanged;
+    private final Meter wifiSuppressed;
+
+    public ChangeDetectingDeviceTracker(final DeviceTracker delegate, final long refreshMillis, final int rssiBucketDb, final long maxDevices,
+                                        final MetricRegistry metrics) {
+        this.delegate = delegate;
+        this.rssiBucketDb = rssiBucketDb;
+        this.lastFirmwares = CacheBuilder.newBuilder()
+                .maximumSize(maxDevices)
+                .expireAfterWrite(refreshMillis, TimeUnit.MILLISECONDS)
+                .build();
+        this.lastWifis = CacheBuilder.newBuilder()
+                .maximumSize(maxDevices)
+                .expireAfterWrite(refreshMillis, TimeUnit.MILLISECONDS)
+                .build();
+
+        this.firmwareChanged = metrics.meter(name(ChangeDetectingDeviceTracker.class, "firmware-changed"));
+        this.firmwareSuppressed = metrics.meter(name(ChangeDetectingDeviceTracker.class, "firmware-suppressed"));
+        this.wifiChanged = metrics.meter(name(ChangeDetectingDeviceTracker.class, "wifi-changed"));
+        this.wifiSuppressed = metrics.meter(name(ChangeDetectingDeviceTracker.class, "wifi-suppressed"));
+    }
+
+    @Override
+    public boolean trackSenses(final Map<String, Long> activeSenses) {
+        return delegate.trackSenses(activeSenses);
+    }
+
+    @Override
+    public boolean trackPills(final Map<String, Long> activePills) {
+        return delegate.trackPills(activePills);
+    }
+
+    @Override
+    public boolean trackFirmwares(final Map<String, FirmwareInfo> seenFirmwares) {
+        final Map<String, FirmwareInfo> toWrite = Maps.newHashMap();
+        for (final Map.Entry<String, FirmwareInfo> entry : seenFirmwares.entrySet()) {
+            final FirmwareInfo firmwareInfo = entry.getValue();
+            final Firmware last = lastFirmwares.getIfPresent(entry.getKey());
+            if (last == null) {
+                toWrite.put(entry.getKey(), firmwareInfo);
+            } else if (differs(last.middleVersion, firmwareInfo.middleVersion) || differs(last.topVersion, firmwareInfo.topVersion)) {
+                // a version seen for the first time is not a change
+                if (changed(last.middleVersion, firmwareInfo.middleVersion) || changed(last.topVersion, firmwareInfo.topVersion)) {
+                    firmwareChanged.mark();
+                }
+                toWrite.put(entry.getKey(), firmwareInfo);
+            } else {
+                firmwareSuppressed.mark();
+            }
+        }
+        if (toWrite.isEmpty()) {
+            return true;
+        }
+
+        if (!delegate.trackFirmwares(toWrite)) {
+            return false;
+        }
+        for (final Map.Entry<String, FirmwareInfo> entry : toWrite.entrySet()) {
+            final Firmware last = lastFirmwares.getIfPresent(entry.getKey());
+            lastFirmwares.put(entry.getKey(), new Firmware(
+                    known(entry.getValue().middleVersion, (last == null) ? UNKNOWN_VERSION : last.middleVersion),
+                    known(entry.getValue().topVersion, (last == null) ? UNKNOWN_VERSION : last.topVersion)));
+        }
+        return true;
+    }
+
+    @Override
+    public boolean trackWifiInfo(final Map<String, WifiInfo> wifiInfos) {
+        final Map<String, WifiInfo> toWrite = Maps.newHashMap();
+        for (final Map.Entry<String, WifiInfo> entry : wifiInfos.entrySet()) {
+            final WifiInfo wifiInfo = entry.getValue();
+            final Wifi last = lastWifis.getIfPresent(entry.getKey());
+            if (last == null) {
+                toWrite.put(entry.getKey(), wifiInfo);
+            } else if (!last.ssid.equals(wifiInfo.ssid) || last.rssiBucket != rssiBucket(wifiInfo.rssi)) {
+                wifiChanged.mark();
+                toWrite.put(entry.getKey(), wifiInfo);
+            } else {
+                wifiSuppressed.mark();
+            }
+        }
+        if (toWrite.isEmpty()) {
+            return true;
+        }
+
+        if (!delegate.trackWifiInfo(toWrite)) {
+            return false;
+        }
+        for (final Map.Entry<String, WifiInfo> entry : toWrite.entrySet()) {
+            lastWifis.put(entry.getKey(), new Wifi(entry.getValue().ssid, rssiBucket(entry.getValue().rssi)));
+        }
+        return true;
+    }
+
+    @Override
+    public boolean trackUptime(final Map<String, Integer> uptimes) {
+        return delegate.trackUptime(uptimes);
+    }
+
+    @Override
+    public boolean flush() {
+        return delegate.flush();
+    }
+
+    private int rssiBucket(final int rssi) {
+        return Math.floorDiv(rssi, rssiBucketDb);
+    }
+
+    private static boolean differs(final String last, final String version) {
+        return !UNKNOWN_VERSION.equals(version) && !version.equals(last);
+    }
+
+    private static boolean changed(final String last, final String version) {
+        return !UNKNOWN_VERSION.equals(last) && differs(last, version);
+    }
+
+    private static String known(final String version, final String last) {
+        return UNKNOWN_VERSION.equals(version) ? last : version;
+    }
+
+    private static class Firmware {
+        final String middleVersion;
+        final String topVersion;
+
+        Firmware(final String middleVersion, final String topVersion) {
+            this.middleVersion = middleVersion;
+            this.topVersion = topVersion;
+        }
+    }
+
+    private static class Wifi {
+        final String ssid;
+        final int rssiBucket;
+
+        Wifi(final String ssid, final int rssiBucket) {
+            this.ssid = ssid;
+            this.rssiBucket = rssiBucket;
+        }
+    }
+}
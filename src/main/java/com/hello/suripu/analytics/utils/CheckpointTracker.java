@@ -1,19 +1,26 @@
 package com.hello.suripu.analytics.utils;
 
-import com.amazonaws.AmazonClientException;
-import com.amazonaws.AmazonServiceException;
 import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
-import com.amazonaws.services.dynamodbv2.AmazonDynamoDBClient;
 import com.amazonaws.services.dynamodbv2.model.AttributeDefinition;
 import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.ComparisonOperator;
+import com.amazonaws.services.dynamodbv2.model.Condition;
 import com.amazonaws.services.dynamodbv2.model.CreateTableRequest;
 import com.amazonaws.services.dynamodbv2.model.CreateTableResult;
+import com.amazonaws.services.dynamodbv2.model.DescribeTimeToLiveRequest;
 import com.amazonaws.services.dynamodbv2.model.KeySchemaElement;
 import com.amazonaws.services.dynamodbv2.model.KeyType;
 import com.amazonaws.services.dynamodbv2.model.ProvisionedThroughput;
-import com.amazonaws.services.dynamodbv2.model.PutItemRequest;
+import com.amazonaws.services.dynamodbv2.model.QueryRequest;
+import com.amazonaws.services.dynamodbv2.model.QueryResult;
 import com.amazonaws.services.dynamodbv2.model.ScalarAttributeType;
+import com.amazonaws.services.dynamodbv2.model.TimeToLiveDescription;
+import com.amazonaws.services.dynamodbv2.model.TimeToLiveSpecification;
+import com.amazonaws.services.dynamodbv2.model.TimeToLiveStatus;
+import com.amazonaws.services.dynamodbv2.model.UpdateTimeToLiveRequest;
 
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Maps;
 import java.util.Map;
 import org.joda.time.DateTime;
@@ -22,24 +29,26 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 public class CheckpointTracker {
-    public static final Integer CHECKPOINT_NUM_TRACKS = 24; //TODO: Add track expiration
     public static final Long CHECKPOINT_TRACK_PERIOD = 5L;   // in minutes
+    public static final Long CHECKPOINT_TRACK_TTL_HOURS = 7L * 24L;   // kinesis maximum retention, older sequence numbers are useless
     public static final String STREAM_SHARD_ATTRIBUTE_NAME = "stream_shardId";
     public static final String TIMESTAMP_ATTRIBUTE_NAME = "created_at";
     public static final String CHECKPOINT_ATTRIBUTE_NAME = "checkpoint";
+    public static final String EXPIRES_AT_ATTRIBUTE_NAME = "expires_at";   // epoch seconds, dynamo TTL attribute
     public final static String DATETIME_FORMAT = "yyyy-MM-dd HH:mm:ssZ";
 
     private static final Logger LOGGER = LoggerFactory.getLogger(CheckpointTracker.class);
-    private final AmazonDynamoDB dynamoDBClient;
+    private final CheckpointWriter checkpointWriter;
     private final String streamName;
     private Long lastCheckpointTimestamp;
-    private final String tableName;
 
-    public CheckpointTracker(final AmazonDynamoDB dynamoDBClient, final String streamName, final String tableName) {
-        this.dynamoDBClient = dynamoDBClient;
+    /**
+     * @param checkpointWriter shared by the trackers of every shard, writes happen in the background
+     */
+    public CheckpointTracker(final CheckpointWriter checkpointWriter, final String streamName) {
+        this.checkpointWriter = checkpointWriter;
         this.streamName = streamName;
         this.lastCheckpointTimestamp = 0L;
-        this.tableName = tableName;
     }
 
     public void trackCheckpoint(final String shardId, final String sequenceNumber, final Long timestamp) {
@@ -53,34 +62,61 @@ public class CheckpointTracker {
         LOGGER.debug("Tracked kinesis checkpoint for shardId: {}", shardId);
     }
     public Boolean isEligibleForTracking(final Long recordTimestamp) {
-        if ((recordTimestamp > (lastCheckpointTimestamp + (CHECKPOINT_TRACK_PERIOD * 60000L))) &&
-            recordTimestamp < (DateTime.now(DateTimeZone.UTC).getMillis() + (60L * 60000L))) {
-          return true;
-        }
-      return false;
+        return isEligibleForTracking(recordTimestamp, lastCheckpointTimestamp, DateTime.now(DateTimeZone.UTC).getMillis());
+    }
+
+    public static boolean isEligibleForTracking(final long recordTimestamp, final long lastCheckpointTimestamp, final long nowMillis) {
+        return (recordTimestamp > (lastCheckpointTimestamp + (CHECKPOINT_TRACK_PERIOD * 60000L))) &&
+            recordTimestamp < (nowMillis + (60L * 60000L));
+    }
+
+    public Long getLastCheckpointTimestamp() {
+        return lastCheckpointTimestamp;
     }
 
     public void insertCheckpoint(final String streamShardId, final String checkpoint, final Long timestamp) {
 
-        final DateTime dateTimestamp = new DateTime(timestamp);
+        final DateTime dateTimestamp = new DateTime(timestamp, DateTimeZone.UTC);
+        final long expiresAtSeconds = dateTimestamp.plusHours(CHECKPOINT_TRACK_TTL_HOURS.intValue()).getMillis() / 1000L;
         final Map<String, AttributeValue> item = Maps.newHashMap();
         item.put(STREAM_SHARD_ATTRIBUTE_NAME, (new AttributeValue()).withS(streamShardId));
         item.put(TIMESTAMP_ATTRIBUTE_NAME, (new AttributeValue()).withS(dateTimestamp.toString(DATETIME_FORMAT)));
         item.put(CHECKPOINT_ATTRIBUTE_NAME, (new AttributeValue()).withS(checkpoint));
-        PutItemRequest putItemRequest = new PutItemRequest(this.tableName, item);
-
-        try {
-            this.dynamoDBClient.putItem(putItemRequest);
-            LOGGER.info("event=checkpoint-track shard_id={} timestamp={} checkpoint={}", streamShardId, timestamp, checkpoint);
-        } catch (AmazonServiceException var5) {
-            LOGGER.error("Checkpoint track insert failed. AWS service error: {}", var5.getMessage());
-        } catch (AmazonClientException var6) {
-            LOGGER.error("Checkpoint track insert failed. Client error: {}", var6.getMessage());
-        }
+        item.put(EXPIRES_AT_ATTRIBUTE_NAME, (new AttributeValue()).withN(String.valueOf(expiresAtSeconds)));
 
+        checkpointWriter.write(item);
+        LOGGER.debug("event=checkpoint-queued shard_id={} timestamp={} checkpoint={}", streamShardId, timestamp, checkpoint);
     }
 
-    public static CreateTableResult createTable(final String tableName, final AmazonDynamoDBClient dynamoDBClient){
+    /**
+     * @return the latest checkpoint tracked for the shard at or before the given time, if any. Keys are the item
+     * attribute names.
+     */
+    public static Optional<Map<String, AttributeValue>> latestCheckpointAtOrBefore(final String tableName, final AmazonDynamoDB dynamoDBClient,
+                                                                                  final String streamShardId, final DateTime dateTime) {
+        final String createdAt = dateTime.withZone(DateTimeZone.UTC).toString(DATETIME_FORMAT);
+        final QueryRequest request = new QueryRequest()
+                .withTableName(tableName)
+                .withKeyConditions(ImmutableMap.of(
+                        STREAM_SHARD_ATTRIBUTE_NAME, new Condition()
+                                .withComparisonOperator(ComparisonOperator.EQ)
+                                .withAttributeValueList(new AttributeValue().withS(streamShardId)),
+                        TIMESTAMP_ATTRIBUTE_NAME, new Condition()
+                                .withComparisonOperator(ComparisonOperator.LE)
+                                .withAttributeValueList(new AttributeValue().withS(createdAt))))
+                .withScanIndexForward(false)
+                .withConsistentRead(true)
+                .withLimit(1);
+
+        final QueryResult result = dynamoDBClient.query(request);
+        if (result.getItems() == null || result.getItems().isEmpty()) {
+            return Optional.absent();
+        }
+        return Optional.of(result.getItems().get(0));
+    }
+
+    public static CreateTableResult createTable(final String tableName, final AmazonDynamoDB dynamoDBClient,
+                                                final long readCapacityUnits, final long writeCapacityUnits){
         final CreateTableRequest request = new CreateTableRequest().withTableName(tableName);
 
         request.withKeySchema(
@@ -95,9 +131,32 @@ public class CheckpointTracker {
         );
 
         request.setProvisionedThroughput(new ProvisionedThroughput()
-                .withReadCapacityUnits(1L)
-                .withWriteCapacityUnits(1L));
+                .withReadCapacityUnits(readCapacityUnits)
+                .withWriteCapacityUnits(writeCapacityUnits));
 
         return dynamoDBClient.createTable(request);
     }
+
+    /**
+     * Turns on expiry of tracked checkpoints on {@link #EXPIRES_AT_ATTRIBUTE_NAME}. The table must be active.
+     *
+     * @return false if it was already on
+     */
+    public static boolean enableTimeToLive(final String tableName, final AmazonDynamoDB dynamoDBClient) {
+        final TimeToLiveDescription description = dynamoDBClient.describeTimeToLive(
+                new DescribeTimeToLiveRequest().withTableName(tableName)).getTimeToLiveDescription();
+        if (description != null) {
+            final String status = description.getTimeToLiveStatus();
+            if (TimeToLiveStatus.ENABLED.toString().equals(status) || TimeToLiveStatus.ENABLING.toString().equals(status)) {
+                return false;
+            }
+        }
+
+        dynamoDBClient.updateTimeToLive(new UpdateTimeToLiveRequest()
+                .withTableName(tableName)
+                .withTimeToLiveSpecification(new TimeToLiveSpecification()
+                        .withAttributeName(EXPIRES_AT_ATTRIBUTE_NAME)
+                        .withEnabled(true)));
+        return true;
+    }
 }
@@ -0,0 +1,185 @@
+package com.hello.suripu.analytics.utils;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemRequest;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemResult;
+import com.amazonaws.services.dynamodbv2.model.PutRequest;
+import com.amazonaws.services.dynamodbv2.model.WriteRequest;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.dropwizard.lifecycle.Managed;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+/**
+ * Writes the checkpoint tracking items of every shard processor to dynamo from a single background thread, so that a
+ * slow dynamo never stalls record processing.
+ *
+ * Items wait in a bounded queue and are sent with BatchWriteItem, up to 25 at a time. Items of the same shard and
+ * timestamp within a batch are coalesced, the latest checkpoint wins. Tracking is advisory: when the queue is full, or
+ * dynamo keeps rejecting an item, the item is dropped and counted.
+ */
+public class CheckpointWriter implements Managed {
+
+    public static final int DEFAULT_MAX_PENDING = 1024;
+
+    private static final int MAX_BATCH_WRITE_ITEMS = 25;
+    private static final int MAX_WRITE_ATTEMPTS = 3;
+    private static final long RETRY_BACKOFF_MILLIS = 100L;
+    private static final long POLL_TIMEOUT_MILLIS = 1000L;
+
+    private final static Logger LOGGER = LoggerFactory.getLogger(CheckpointWriter.class);
+
+    private final AmazonDynamoDB dynamoDBClient;
+    private final String tableName;
+    private final BlockingQueue<Map<String, AttributeValue>> queue;
+    private final ExecutorService executorService;
+
+    private final Meter written;
+    private final Meter dropped;
+    private final Meter coalesced;
+    private final Timer batchWriteLatency;
+
+    private volatile boolean running = false;
+
+    public CheckpointWriter(final AmazonDynamoDB dynamoDBClient, final String tableName, final int maxPending, final MetricRegistry metrics) {
+        this.dynamoDBClient = dynamoDBClient;
+        this.tableName = tableName;
+        this.queue = new LinkedBlockingQueue<>(maxPending);
+        this.executorService = Executors.newSingleThreadExecutor(
+                new ThreadFactoryBuilder().setNameFormat("checkpoint-writer-%d").setDaemon(true).build());
+
+        this.written = metrics.meter(name(CheckpointWriter.class, "written"));
+        this.dropped = metrics.meter(name(CheckpointWriter.class, "dropped"));
+        this.coalesced = metrics.meter(name(CheckpointWriter.class, "coalesced"));
+        this.batchWriteLatency = metrics.timer(name(CheckpointWriter.class, "batch-write-latency"));
+        metrics.register(name(CheckpointWriter.class, "queue-depth"), new Gauge<Integer>() {
+            @Override
+            public Integer getValue() {
+                return queue.size();
+            }
+        });
+    }
+
+    /**
+     * Queues the item without blocking, dropping it if the queue is full.
+     */
+    public void write(final Map<String, AttributeValue> item) {
+        if (!queue.offer(item)) {
+            dropped.mark();
+            LOGGER.warn("warning=checkpoint-queue-full table={} stream_shard_id={}", tableName, item.get(CheckpointTracker.STREAM_SHARD_ATTRIBUTE_NAME).getS());
+        }
+    }
+
+    @Override
+    public void start() throws Exception {
+        running = true;
+        executorService.submit(new Runnable() {
+            @Override
+            public void run() {
+                drain();
+            }
+        });
+        LOGGER.info("action=checkpoint-writer-started table={}", tableName);
+    }
+
+    @Override
+    public void stop() throws Exception {
+        running = false;
+        executorService.shutdown();
+        executorService.awaitTermination(POLL_TIMEOUT_MILLIS * 2, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Sends batches until stopped, then whatever is still queued.
+     */
+    private void drain() {
+        while (running || !queue.isEmpty()) {
+            try {
+                final Map<String, AttributeValue> first = queue.poll(POLL_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                final Map<String, Map<String, AttributeValue>> batch = Maps.newLinkedHashMap();
+                Map<String, AttributeValue> item = first;
+                while (item != null) {
+                    if (batch.put(itemKey(item), item) != null) {
+                        coalesced.mark();
+                    }
+                    item = (batch.size() < MAX_BATCH_WRITE_ITEMS) ? queue.poll() : null;
+                }
+                writeBatch(Lists.newArrayList(batch.values()));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                LOGGER.error("error=checkpoint-writer-failure message={}", e.getMessage());
+            }
+        }
+    }
+
+    private void writeBatch(final List<Map<String, AttributeValue>> items) throws InterruptedException {
+        final List<WriteRequest> writeRequests = Lists.newArrayListWithExpectedSize(items.size());
+        for (final Map<String, AttributeValue> item : items) {
+            writeRequests.add(new WriteRequest().withPutRequest(new PutRequest().withItem(item)));
+        }
+
+        Map<String, List<WriteRequest>> pending = ImmutableMap.of(tableName, writeRequests);
+        for (int attempt = 0; attempt < MAX_WRITE_ATTEMPTS; attempt++) {
+            if (attempt > 0) {
+                Thread.sleep(RETRY_BACKOFF_MILLIS << (attempt - 1));
+            }
+            final int sent = count(pending);
+            final Timer.Context context = batchWriteLatency.time();
+            try {
+                final BatchWriteItemResult result = dynamoDBClient.batchWriteItem(new BatchWriteItemRequest().withRequestItems(pending));
+                pending = (result == null || result.getUnprocessedItems() == null)
+                        ? ImmutableMap.<String, List<WriteRequest>>of()
+                        : result.getUnprocessedItems();
+            } catch (AmazonClientException e) {
+                LOGGER.error("error=checkpoint-batch-write-failure table={} items={} attempt={} message={}", tableName, sent, attempt, e.getMessage());
+                continue;
+            } finally {
+                context.stop();
+            }
+            written.mark(sent - count(pending));
+            if (pending.isEmpty()) {
+                LOGGER.info("event=checkpoint-track table={} items={}", tableName, sent);
+                return;
+            }
+        }
+        final int lost = count(pending);
+        dropped.mark(lost);
+        LOGGER.error("error=checkpoint-items-dropped table={} items={} attempts={}", tableName, lost, MAX_WRITE_ATTEMPTS);
+    }
+
+    private static int count(final Map<String, List<WriteRequest>> requests) {
+        int count = 0;
+        for (final List<WriteRequest> tableRequests : requests.values()) {
+            count += tableRequests.size();
+        }
+        return count;
+    }
+
+    private static String itemKey(final Map<String, AttributeValue> item) {
+        return item.get(CheckpointTracker.STREAM_SHARD_ATTRIBUTE_NAME).getS() + "|" + item.get(CheckpointTracker.TIMESTAMP_ATTRIBUTE_NAME).getS();
+    }
+}
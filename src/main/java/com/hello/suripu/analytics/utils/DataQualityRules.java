@@ -0,0 +1,170 @@
+package com.hello.suripu.analytics.utils;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.primitives.Ints;
+import com.hello.suripu.analytics.configuration.DataQualityRuleConfiguration;
+import com.hello.suripu.analytics.configuration.SenseHardware;
+import com.hello.suripu.analytics.configuration.SenseReadingField;
+import com.hello.suripu.analytics.decoders.DecodedSenseRecord;
+import com.hello.suripu.analytics.processors.SenseStatsProcessor;
+
+import java.util.List;
+import java.util.Map;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+/**
+ * Data quality rules compiled into flat primitive arrays, grouped by field: each reading is checked for presence and
+ * read once, indexed by field in the decoded record without branching on it, then compared against the bounds of its
+ * rules. Absent bounds, hardware and firmware ranges are compiled into plain comparisons that always pass, so there
+ * is no boxing nor optional handling per reading.
+ *
+ * Immutable once compiled, safe to share between threads.
+ */
+public class DataQualityRules {
+
+    private static final int HARDWARE_ONE = 1;
+    private static final int HARDWARE_ONE_FIVE = 2;
+
+    // fields having at least one rule, rules of fields[f] are at [ruleStarts[f], ruleStarts[f + 1])
+    private final int[] fields;
+    private final int[] ruleStarts;
+
+    private final int[] mins;
+    private final int[] maxs;
+    private final int[] hardwareMasks;
+    private final int[] minFirmwares;
+    private final int[] maxFirmwares;
+    private final Meter[] meters;
+    private final String[] sensors;
+    // index of the metric of each rule in metrics
+    private final int[] metricIndexes;
+    private final List<String> metrics;
+
+    private DataQualityRules(final int[] fields, final int[] ruleStarts, final int[] mins, final int[] maxs, final int[] hardwareMasks,
+                             final int[] minFirmwares, final int[] maxFirmwares, final Meter[] meters, final String[] sensors,
+                             final int[] metricIndexes, final List<String> metrics) {
+        this.fields = fields;
+        this.ruleStarts = ruleStarts;
+        this.mins = mins;
+        this.maxs = maxs;
+        this.hardwareMasks = hardwareMasks;
+        this.minFirmwares = minFirmwares;
+        this.maxFirmwares = maxFirmwares;
+        this.meters = meters;
+        this.sensors = sensors;
+        this.metricIndexes = metricIndexes;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Meters are registered as {@code SenseStatsProcessor.<metric>}, those of disabled rules too.
+     */
+    public static DataQualityRules compile(final List<DataQualityRuleConfiguration> configuredRules, final MetricRegistry metrics) {
+        final List<DataQualityRuleConfiguration> rules = Lists.newArrayListWithExpectedSize(configuredRules.size());
+        for (final DataQualityRuleConfiguration rule : configuredRules) {
+            if (rule.getEnabled()) {
+                rules.add(rule);
+            } else {
+                metrics.meter(name(SenseStatsProcessor.class, rule.getMetric()));
+            }
+        }
+
+        final int count = rules.size();
+        final int[] mins = new int[count];
+        final int[] maxs = new int[count];
+        final int[] hardwareMasks = new int[count];
+        final int[] minFirmwares = new int[count];
+        final int[] maxFirmwares = new int[count];
+        final Meter[] meters = new Meter[count];
+        final String[] sensors = new String[count];
+        final int[] metricIndexes = new int[count];
+        final Map<String, Integer> metricIndexByName = Maps.newLinkedHashMap();
+        for (final DataQualityRuleConfiguration rule : rules) {
+            if (!metricIndexByName.containsKey(rule.getMetric())) {
+                metricIndexByName.put(rule.getMetric(), metricIndexByName.size());
+            }
+        }
+
+        final List<Integer> fields = Lists.newArrayList();
+        final List<Integer> ruleStarts = Lists.newArrayList();
+        int compiled = 0;
+        for (final SenseReadingField field : SenseReadingField.values()) {
+            final int start = compiled;
+            for (final DataQualityRuleConfiguration rule : rules) {
+                if (rule.getField() != field) {
+                    continue;
+                }
+                mins[compiled] = (rule.getMin() == null) ? Integer.MIN_VALUE : rule.getMin();
+                maxs[compiled] = (rule.getMax() == null) ? Integer.MAX_VALUE : rule.getMax();
+                hardwareMasks[compiled] = hardwareMask(rule.getHardware());
+                minFirmwares[compiled] = (rule.getMinFirmware() == null) ? Integer.MIN_VALUE : rule.getMinFirmware();
+                maxFirmwares[compiled] = (rule.getMaxFirmware() == null) ? Integer.MAX_VALUE : rule.getMaxFirmware();
+                meters[compiled] = metrics.meter(name(SenseStatsProcessor.class, rule.getMetric()));
+                sensors[compiled] = rule.getSensor();
+                metricIndexes[compiled] = metricIndexByName.get(rule.getMetric());
+                compiled++;
+            }
+            if (compiled > start) {
+                fields.add(field.ordinal());
+                ruleStarts.add(start);
+            }
+        }
+        ruleStarts.add(compiled);
+
+        return new DataQualityRules(Ints.toArray(fields), Ints.toArray(ruleStarts), mins, maxs, hardwareMasks, minFirmwares, maxFirmwares,
+                meters, sensors, metricIndexes, ImmutableList.copyOf(metricIndexByName.keySet()));
+    }
+
+    /**
+     * Marks the meter of every rule the reading breaks, records it as a bad reading and counts the device and firmware
+     * in the metric of the rule.
+     */
+    public void evaluate(final DecodedSenseRecord record, final int index, final AggregatedErrorLog badReadings, final NoisyDevices noisyDevices) {
+        final int hardware = record.hasLightSensor(index) ? HARDWARE_ONE_FIVE : HARDWARE_ONE;
+        final int firmware = record.firmwareVersion();
+
+        for (int f = 0; f < fields.length; f++) {
+            final int field = fields[f];
+            if (!record.hasReading(field, index)) {
+                continue;
+            }
+            final int value = record.reading(field, index);
+            for (int rule = ruleStarts[f]; rule < ruleStarts[f + 1]; rule++) {
+                if ((value < mins[rule] || value > maxs[rule])
+                        && (hardwareMasks[rule] & hardware) != 0
+                        && firmware >= minFirmwares[rule] && firmware <= maxFirmwares[rule]) {
+                    meters[rule].mark();
+                    badReadings.record(sensors[rule], record.deviceId(), firmware, value);
+                    noisyDevices.record(metricIndexes[rule], record.deviceId(), firmware);
+                }
+            }
+        }
+    }
+
+    public int size() {
+        return mins.length;
+    }
+
+    /**
+     * @return distinct metrics of the rules, in configuration order
+     */
+    public List<String> metrics() {
+        return metrics;
+    }
+
+    private static int hardwareMask(final SenseHardware hardware) {
+        switch (hardware) {
+            case ONE:
+                return HARDWARE_ONE;
+            case ONE_FIVE:
+                return HARDWARE_ONE_FIVE;
+            default:
+                return HARDWARE_ONE | HARDWARE_ONE_FIVE;
+        }
+    }
+}
@@ -1,162 +1,67 @@
 package com.hello.suripu.analytics.utils;
 
-import com.codahale.metrics.Meter;
 import com.codahale.metrics.MetricRegistry;
-import com.hello.suripu.analytics.processors.SenseStatsProcessor;
-import com.hello.suripu.api.input.DataInputProtos;
+import com.hello.suripu.analytics.analyzers.SenseAnalyzer;
+import com.hello.suripu.analytics.configuration.DataQualityRuleConfiguration;
+import com.hello.suripu.analytics.configuration.NoisyDevicesConfiguration;
+import com.hello.suripu.analytics.decoders.DecodedSenseRecord;
+import com.hello.suripu.analytics.processors.SenseBatchResult;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import static com.codahale.metrics.MetricRegistry.name;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Created by jyfan on 11/9/16.
  */
-public class DataQualityTracker {
+public class DataQualityTracker implements SenseAnalyzer {
 
     private final Logger LOGGER = LoggerFactory.getLogger(DataQualityTracker.class);
 
-    //1.5
-    private static final int LOW_CO2_THRESHOLD = 400;
-    private static final int HIGH_CO2_THRESHOLD = 3500; //in ppm
-    private static final int LOW_PRESSURE_THRESHOLD = 900 * 256 * 100; //in mbar
-    private static final int HIGH_PRESSURE_THRESHOLD = 1086 * 256 * 100; //strongest sea level
-    private static final int HIGH_UV_THRESHOLD = 6;
-    private static final int HIGH_LUX_THRESHOLD_ONE_FIVE = 100000; //highest range of direct sunlight
-
-    //1.0
-    private static final int HIGH_DUST_THRESHOLD = 250 * 6; //6 is roughly density to raw conversion, rounded up
-    private static final int HIGH_LUX_THRESHOLD_ONE = 4194304; //max counts
-    private static final int HIGH_HUMIDITY_THRESHOLD = 99 * 100;
-    private static final int LOW_HUMIDITY_THRESHOLD = 1 * 100;
-    private static final int HIGH_TEMP_THRESHOLD = 100 * 100; // in deg C
-    private static final int LOW_TEMP_THRESHOLD = 0 * 100; // in deg C
-    private static final int HIGH_NOISE_THRESHOLD = (150 + 40 ) * 100;
-
-    private final Meter lowco2;
-    private final Meter highco2;
-    private final Meter lowpa;
-    private final Meter highpa;
-    private final Meter highuv;
-    private final Meter highdust;
-    private final Meter highlux;
-    private final Meter lowhum;
-    private final Meter highhum;
-    private final Meter lowtmp;
-    private final Meter hightmp;
-    private final Meter highdb;
-
-    public DataQualityTracker(final MetricRegistry metrics) {
-        lowco2 = metrics.meter(name(SenseStatsProcessor.class, "low-co2"));
-        highco2 = metrics.meter(name(SenseStatsProcessor.class, "high-co2"));
-        lowpa = metrics.meter(name(SenseStatsProcessor.class, "low-pa"));
-        highpa = metrics.meter(name(SenseStatsProcessor.class, "high-pa"));
-        highuv = metrics.meter(name(SenseStatsProcessor.class, "high-uv"));
-        highdust = metrics.meter(name(SenseStatsProcessor.class, "high-dust"));
-        highlux = metrics.meter(name(SenseStatsProcessor.class, "high-lux"));
-        lowhum = metrics.meter(name(SenseStatsProcessor.class, "low-hum"));
-        highhum = metrics.meter(name(SenseStatsProcessor.class, "high-hum"));
-        lowtmp = metrics.meter(name(SenseStatsProcessor.class, "low-tmp"));
-        hightmp = metrics.meter(name(SenseStatsProcessor.class, "high-tmp"));
-        highdb = metrics.meter(name(SenseStatsProcessor.class, "high-db"));
+    // bad readings can come from every periodic data of every sense, only summaries and a few samples are logged
+    private static final long BAD_READINGS_SUMMARY_INTERVAL_MILLIS = 60000L;
+    private static final int BAD_READINGS_MAX_KEYS = 10000;
+    private static final double BAD_READINGS_SAMPLES_PER_SECOND = 5.0;
+
+    private final DataQualityRules rules;
+    private final AggregatedErrorLog badReadings;
+    private final NoisyDevices noisyDevices;
+
+    /**
+     * @param rules compiled once, changing them takes a configuration change and a restart
+     */
+    public DataQualityTracker(final MetricRegistry metrics, final List<DataQualityRuleConfiguration> rules,
+                              final NoisyDevicesConfiguration noisyDevicesConfiguration) {
+        this.rules = DataQualityRules.compile(rules, metrics);
+        badReadings = new AggregatedErrorLog(LOGGER, "bad_sensor", BAD_READINGS_SUMMARY_INTERVAL_MILLIS, BAD_READINGS_MAX_KEYS,
+                BAD_READINGS_SAMPLES_PER_SECOND);
+        noisyDevices = new NoisyDevices(this.rules.metrics(), noisyDevicesConfiguration.getCapacity(),
+                TimeUnit.SECONDS.toMillis(noisyDevicesConfiguration.getIntervalSeconds()));
+        LOGGER.info("action=compile-data-quality-rules rules={}", this.rules.size());
     }
 
-    public void trackDataQuality(final DataInputProtos.batched_periodic_data batchedPeriodicData) {
-
-        final String device_id = batchedPeriodicData.getDeviceId();
-        final Integer fw_version = batchedPeriodicData.getFirmwareVersion();
-
-        for (final DataInputProtos.periodic_data periodic_data : batchedPeriodicData.getDataList()) {
-
-            final Boolean hasco2 = periodic_data.hasCo2();
-            final Boolean haspa = periodic_data.hasPressure();
-            final Boolean has15light = periodic_data.hasLightSensor();
-            final Boolean hasdust = periodic_data.hasDust();
-            final Boolean hashum = periodic_data.hasHumidity();
-            final Boolean hastmp = periodic_data.hasTemperature();
-//            final Boolean hasdb = periodic_data.hasAudioPeakBackgroundEnergyDb();
-
-            final Integer co2 = periodic_data.getCo2();
-            final Integer pa = periodic_data.getPressure();
-            final Integer uv = periodic_data.getLightSensor().getUvCount();
-
-            final Integer lux = periodic_data.getLight();
-
-            final Integer dust = periodic_data.getDust();
-            final Integer hum = periodic_data.getHumidity();
-            final Integer tmp = periodic_data.getTemperature();
-//            final Integer db = periodic_data.getAudioPeakBackgroundEnergyDb();
-
-            //co2
-            if (hasco2 && co2 < LOW_CO2_THRESHOLD) {
-                lowco2.mark();
-                LOGGER.error("bad_sensor=co2 sensor_val={} device_id={} fw_version={}", co2, device_id, fw_version);
-            } else if (hasco2 && co2 > HIGH_CO2_THRESHOLD) {
-                highco2.mark();
-                LOGGER.error("bad_sensor=co2 sensor_val={} device_id={} fw_version={}", co2, device_id, fw_version);
-            }
-
-            //pressure
-            if (haspa && pa < LOW_PRESSURE_THRESHOLD) {
-                lowpa.mark();
-                LOGGER.error("bad_sensor=pa sensor_val={} device_id={} fw_version={}", pa, device_id, fw_version);
-
-            } else if (haspa && pa > HIGH_PRESSURE_THRESHOLD) {
-                highpa.mark();
-                LOGGER.error("bad_sensor=pa sensor_val={} device_id={} fw_version={}", pa, device_id, fw_version);
-            }
-
-            //uv
-            if (has15light && uv > HIGH_UV_THRESHOLD) {
-                highuv.mark();
-                LOGGER.error("bad_sensor=uv sensor_val={} device_id={} fw_version={}", uv, device_id, fw_version);
-            }
-
-            //dust
-            if (hasdust && dust > HIGH_DUST_THRESHOLD) {
-                highdust.mark();
-                LOGGER.error("bad_sensor=dust sensor_val={} device_id={} fw_version={}", uv, device_id, fw_version);
-            }
-
-            //lux
-            if (has15light && lux > HIGH_LUX_THRESHOLD_ONE_FIVE) {
-                highlux.mark();
-                LOGGER.error("bad_sensor=onefivelux sensor_val={} device_id={} fw_version={}", lux, device_id, fw_version);
-            }
-
-            if (!has15light && lux > HIGH_LUX_THRESHOLD_ONE) {
-                highlux.mark();
-                LOGGER.error("bad_sensor=onelux sensor_val={} device_id={} fw_version={}", lux, device_id, fw_version);
-            }
-
-            //humidity
-            if (hashum && hum < LOW_HUMIDITY_THRESHOLD) {
-                lowhum.mark();
-                LOGGER.error("bad_sensor=hum sensor_val={} device_id={} fw_version={}", hum, device_id, fw_version);
-
-            } else if (hashum && hum > HIGH_HUMIDITY_THRESHOLD) {
-                highhum.mark();
-                LOGGER.error("bad_sensor=hum sensor_val={} device_id={} fw_version={}", hum, device_id, fw_version);
-            }
-
-            //temp
-            if (hastmp && tmp < LOW_TEMP_THRESHOLD) {
-                lowtmp.mark();
-                LOGGER.error("bad_sensor=tmp sensor_val={} device_id={} fw_version={}", tmp, device_id, fw_version);
+    public NoisyDevices noisyDevices() {
+        return noisyDevices;
+    }
 
-            } else if (hastmp && tmp > HIGH_TEMP_THRESHOLD) {
-                hightmp.mark();
-                LOGGER.error("bad_sensor=tmp sensor_val={} device_id={} fw_version={}", tmp, device_id, fw_version);
-            }
+    @Override
+    public void begin(final String shardId) {
+    }
 
-            //sound
-//            if (hasdb && db > HIGH_NOISE_THRESHOLD) {
-//                highdb.mark();
-//                LOGGER.error("bad_sensor=db sensor_val={} device_id={} fw_version={}", db, device_id, fw_version);
-//            }
+    @Override
+    public void onRecord(final DecodedSenseRecord record, final SenseBatchResult lane) {
+    }
 
+    @Override
+    public void end(final SenseBatchResult batch) {
+        badReadings.flushIfDue();
+        noisyDevices.rotateIfDue();
+    }
 
-        }
+    @Override
+    public void onPeriodicData(final DecodedSenseRecord record, final int i, final SenseBatchResult lane) {
+        rules.evaluate(record, i, badReadings, noisyDevices);
     }
 
 }
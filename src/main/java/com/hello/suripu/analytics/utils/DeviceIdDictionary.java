@@ -0,0 +1,120 @@
+package com.hello.suripu.analytics.utils;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+
+/**
+ * Persistent mapping of device ids to dense integers, shared by every worker through redis.
+ *
+ * Ids are handed out from a counter and claimed with HSETNX, so concurrent workers always agree on the id of a
+ * device; a lost race only burns a counter value. Resolved ids are cached in-process forever since they never
+ * change.
+ */
+public class DeviceIdDictionary {
+
+    static final String DICTIONARY_HASH_KEY = "device_id_dictionary";
+    static final String REVERSE_DICTIONARY_HASH_KEY = "device_id_dictionary_reverse";
+    static final String SEQUENCE_KEY = "device_id_dictionary_sequence";
+
+    private final static Logger LOGGER = LoggerFactory.getLogger(DeviceIdDictionary.class);
+
+    private final JedisPool jedisPool;
+    private final ConcurrentHashMap<String, Integer> cache = new ConcurrentHashMap<>();
+
+    public DeviceIdDictionary(final JedisPool jedisPool) {
+        this.jedisPool = jedisPool;
+    }
+
+    /**
+     * @return the integer id of every given device, assigning new ids where needed
+     */
+    public Map<String, Integer> resolve(final Collection<String> deviceIds) {
+        final Map<String, Integer> resolved = Maps.newHashMapWithExpectedSize(deviceIds.size());
+        final List<String> misses = Lists.newArrayList();
+        for (final String deviceId : deviceIds) {
+            final Integer id = cache.get(deviceId);
+            if (id != null) {
+                resolved.put(deviceId, id);
+            } else {
+                misses.add(deviceId);
+            }
+        }
+        if (misses.isEmpty()) {
+            return resolved;
+        }
+
+        Jedis jedis = null;
+        try {
+            jedis = jedisPool.getResource();
+            final List<String> unassigned = lookup(jedis, misses, resolved);
+            if (!unassigned.isEmpty()) {
+                final List<String> lostRaces = assign(jedis, unassigned, resolved);
+                lookup(jedis, lostRaces, resolved);
+            }
+        } finally {
+            if (jedis != null) {
+                jedis.close();
+            }
+        }
+        return resolved;
+    }
+
+    private List<String> lookup(final Jedis jedis, final List<String> deviceIds, final Map<String, Integer> resolved) {
+        final List<String> unassigned = Lists.newArrayList();
+        if (deviceIds.isEmpty()) {
+            return unassigned;
+        }
+        final List<String> ids = jedis.hmget(DICTIONARY_HASH_KEY, deviceIds.toArray(new String[deviceIds.size()]));
+        for (int i = 0; i < deviceIds.size(); i++) {
+            if (ids.get(i) == null) {
+                unassigned.add(deviceIds.get(i));
+                continue;
+            }
+            final Integer id = Integer.valueOf(ids.get(i));
+            cache.put(deviceIds.get(i), id);
+            resolved.put(deviceIds.get(i), id);
+        }
+        return unassigned;
+    }
+
+    private List<String> assign(final Jedis jedis, final List<String> deviceIds, final Map<String, Integer> resolved) {
+        final long last = jedis.incrBy(SEQUENCE_KEY, deviceIds.size());
+        final long first = last - deviceIds.size() + 1;
+
+        final Pipeline pipe = jedis.pipelined();
+        final List<Response<Long>> claims = Lists.newArrayListWithExpectedSize(deviceIds.size());
+        for (int i = 0; i < deviceIds.size(); i++) {
+            claims.add(pipe.hsetnx(DICTIONARY_HASH_KEY, deviceIds.get(i), String.valueOf(first + i)));
+        }
+        pipe.sync();
+
+        final List<String> lostRaces = Lists.newArrayList();
+        final Pipeline reversePipe = jedis.pipelined();
+        for (int i = 0; i < deviceIds.size(); i++) {
+            if (claims.get(i).get() == 0L) {
+                lostRaces.add(deviceIds.get(i));
+                continue;
+            }
+            final Integer id = (int) (first + i);
+            reversePipe.hset(REVERSE_DICTIONARY_HASH_KEY, id.toString(), deviceIds.get(i));
+            cache.put(deviceIds.get(i), id);
+            resolved.put(deviceIds.get(i), id);
+        }
+        reversePipe.sync();
+        LOGGER.debug("action=device-ids-assigned count={} lost_races={}", deviceIds.size() - lostRaces.size(), lostRaces.size());
+        return lostRaces;
+    }
+}
@@ -0,0 +1,128 @@
+package com.hello.suripu.analytics.utils;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Optional;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import com.hello.suripu.analytics.models.WifiInfo;
+
+import java.util.List;
+import java.util.Map;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.util.SafeEncoder;
+
+/**
+ * Bucketed layout of the wifi info and uptime of each sense: instead of one fleet-wide hash per kind, senses are
+ * spread by a hash of their id over {@code <kind>:bucket:<n>} hashes small enough to keep redis' compact
+ * ziplist/listpack encoding (hash-max-ziplist-entries, 128 by default). Fleet-wide hashes grow to hundreds of MB in
+ * the hashtable encoding and block redis when rehashed, replicated or deleted; buckets do not.
+ *
+ * Values are compact too:
+ * <ul>
+ *     <li>wifi info is one signed byte of rssi followed by the UTF-8 ssid, at most 33 bytes for a 32 byte ssid, which
+ *     stays under hash-max-ziplist-value</li>
+ *     <li>uptime stays a decimal string, which the compact encodings already store as an integer of at most 5 bytes</li>
+ * </ul>
+ *
+ * Readers must use the same number of buckets as the writers, the static read helpers take it as argument.
+ */
+public class DeviceInfoBuckets {
+
+    static final String WIFI_INFO_BUCKET_KEY_PREFIX = ActiveDevicesTracker.WIFI_INFO_HASH_KEY + ":bucket:";
+    static final String SENSE_UPTIME_BUCKET_KEY_PREFIX = ActiveDevicesTracker.SENSE_UPTIME_HSET_KEY + ":bucket:";
+
+    private static final HashFunction DEVICE_ID_HASH = Hashing.murmur3_32();
+
+    private final int buckets;
+
+    public DeviceInfoBuckets(final int buckets) {
+        this.buckets = buckets;
+    }
+
+    public byte[] wifiInfoKey(final String deviceId) {
+        return SafeEncoder.encode(WIFI_INFO_BUCKET_KEY_PREFIX + bucket(deviceId, buckets));
+    }
+
+    public byte[] uptimeKey(final String deviceId) {
+        return SafeEncoder.encode(SENSE_UPTIME_BUCKET_KEY_PREFIX + bucket(deviceId, buckets));
+    }
+
+    static int bucket(final String deviceId, final int buckets) {
+        return Hashing.consistentHash(DEVICE_ID_HASH.hashString(deviceId, Charsets.UTF_8), buckets);
+    }
+
+    public static byte[] encodeWifiInfo(final WifiInfo wifiInfo) {
+        final byte[] ssid = wifiInfo.ssid.getBytes(Charsets.UTF_8);
+        final byte[] encoded = new byte[ssid.length + 1];
+        encoded[0] = (byte) Math.max(Byte.MIN_VALUE, Math.min(Byte.MAX_VALUE, wifiInfo.rssi));
+        System.arraycopy(ssid, 0, encoded, 1, ssid.length);
+        return encoded;
+    }
+
+    public static WifiInfo decodeWifiInfo(final byte[] encoded) {
+        return new WifiInfo((int) encoded[0], new String(encoded, 1, encoded.length - 1, Charsets.UTF_8));
+    }
+
+    public static byte[] encodeUptime(final int uptimeSeconds) {
+        return SafeEncoder.encode(String.valueOf(uptimeSeconds));
+    }
+
+    public static int decodeUptime(final byte[] encoded) {
+        return Integer.parseInt(SafeEncoder.encode(encoded));
+    }
+
+    public static Optional<WifiInfo> wifiInfo(final Jedis jedis, final int buckets, final String deviceId) {
+        final byte[] encoded = jedis.hget(SafeEncoder.encode(WIFI_INFO_BUCKET_KEY_PREFIX + bucket(deviceId, buckets)), SafeEncoder.encode(deviceId));
+        return (encoded == null) ? Optional.<WifiInfo>absent() : Optional.of(decodeWifiInfo(encoded));
+    }
+
+    public static Optional<Integer> uptime(final Jedis jedis, final int buckets, final String deviceId) {
+        final byte[] encoded = jedis.hget(SafeEncoder.encode(SENSE_UPTIME_BUCKET_KEY_PREFIX + bucket(deviceId, buckets)), SafeEncoder.encode(deviceId));
+        return (encoded == null) ? Optional.<Integer>absent() : Optional.of(decodeUptime(encoded));
+    }
+
+    /**
+     * @return wifi info of every sense, read bucket by bucket in one pipeline
+     */
+    public static Map<String, WifiInfo> allWifiInfo(final Jedis jedis, final int buckets) {
+        final Map<String, WifiInfo> wifiInfos = Maps.newHashMap();
+        for (final Map.Entry<String, byte[]> entry : readBuckets(jedis, WIFI_INFO_BUCKET_KEY_PREFIX, buckets).entrySet()) {
+            wifiInfos.put(entry.getKey(), decodeWifiInfo(entry.getValue()));
+        }
+        return wifiInfos;
+    }
+
+    /**
+     * @return uptime of every sense, read bucket by bucket in one pipeline
+     */
+    public static Map<String, Integer> allUptimes(final Jedis jedis, final int buckets) {
+        final Map<String, Integer> uptimes = Maps.newHashMap();
+        for (final Map.Entry<String, byte[]> entry : readBuckets(jedis, SENSE_UPTIME_BUCKET_KEY_PREFIX, buckets).entrySet()) {
+            uptimes.put(entry.getKey(), decodeUptime(entry.getValue()));
+        }
+        return uptimes;
+    }
+
+    private static Map<String, byte[]> readBuckets(final Jedis jedis, final String keyPrefix, final int buckets) {
+        final Pipeline pipe = jedis.pipelined();
+        final List<Response<Map<byte[], byte[]>>> responses = Lists.newArrayListWithExpectedSize(buckets);
+        for (int bucket = 0; bucket < buckets; bucket++) {
+            responses.add(pipe.hgetAll(SafeEncoder.encode(keyPrefix + bucket)));
+        }
+        pipe.sync();
+
+        final Map<String, byte[]> merged = Maps.newHashMap();
+        for (final Response<Map<byte[], byte[]>> response : responses) {
+            for (final Map.Entry<byte[], byte[]> entry : response.get().entrySet()) {
+                merged.put(SafeEncoder.encode(entry.getKey()), entry.getValue());
+            }
+        }
+        return merged;
+    }
+}
@@ -0,0 +1,39 @@
+package com.hello.suripu.analytics.utils;
+
+import com.hello.suripu.analytics.models.WifiInfo;
+import com.hello.suripu.core.models.FirmwareInfo;
+
+import java.util.Map;
+
+/**
+ * Sink for the per-device state extracted by the stats processors.
+ *
+ * Implementations are shared between all shard processors of a worker and must be thread-safe. Callers reuse the
+ * maps they pass from one batch to the next, so implementations must copy whatever they keep past the call.
+ *
+ * A track call reports its own outcome to its caller, since the batches of one shard do not always run on the
+ * same thread.
+ */
+public interface DeviceTracker {
+
+    /**
+     * @return false if the write failed or may have failed, the caller should track the same state again
+     */
+    boolean trackSenses(Map<String, Long> activeSenses);
+
+    boolean trackPills(Map<String, Long> activePills);
+
+    boolean trackFirmwares(Map<String, FirmwareInfo> seenFirmwares);
+
+    boolean trackWifiInfo(Map<String, WifiInfo> wifiInfos);
+
+    boolean trackUptime(Map<String, Integer> uptimes);
+
+    /**
+     * Writes whatever the tracker buffers rather than writing through, and waits for redis to acknowledge it. Called
+     * by a processor before it checkpoints, so that a checkpoint never covers records whose state is still buffered.
+     *
+     * @return true if everything buffered before this call was written
+     */
+    boolean flush();
+}
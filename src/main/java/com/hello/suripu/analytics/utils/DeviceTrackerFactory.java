@@ -0,0 +1,132 @@
+package com.hello.suripu.analytics.utils;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.net.HostAndPort;
+import com.hello.suripu.analytics.configuration.AttributeThrottleConfiguration;
+import com.hello.suripu.analytics.configuration.DeviceInfoLayout;
+import com.hello.suripu.analytics.configuration.DeviceTrackerType;
+import com.hello.suripu.analytics.configuration.HourlyActiveMode;
+import com.hello.suripu.analytics.configuration.LastSeenThrottleConfiguration;
+import com.hello.suripu.analytics.configuration.RedisConfiguration;
+import com.hello.suripu.analytics.configuration.WriteBehindConfiguration;
+import io.dropwizard.lifecycle.setup.LifecycleEnvironment;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisShardInfo;
+import redis.clients.jedis.ShardedJedisPool;
+
+import java.util.List;
+
+/**
+ * Builds the {@link DeviceTracker} shared by all processors of a worker from the redis configuration.
+ */
+public class DeviceTrackerFactory {
+
+    private final static Logger LOGGER = LoggerFactory.getLogger(DeviceTrackerFactory.class);
+
+    private DeviceTrackerFactory() {}
+
+    public static DeviceTracker create(final RedisConfiguration redisConfiguration,
+                                       final JedisPool jedisPool,
+                                       final MetricRegistry metricRegistry,
+                                       final LifecycleEnvironment lifecycle) {
+        final LastSeenThrottle senseThrottle = createThrottle(ActiveDevicesTracker.SENSE_ACTIVE_SET_KEY, redisConfiguration.getLastSeenThrottle(), metricRegistry);
+        final LastSeenThrottle pillThrottle = createThrottle(ActiveDevicesTracker.PILL_ACTIVE_SET_KEY, redisConfiguration.getLastSeenThrottle(), metricRegistry);
+
+        if (!DeviceInfoLayout.HASH.equals(redisConfiguration.getDeviceInfoLayout())
+                && !DeviceTrackerType.PIPELINE.equals(redisConfiguration.getTracker())) {
+            LOGGER.warn("warning=device-info-layout-unsupported layout={} tracker={}", redisConfiguration.getDeviceInfoLayout(), redisConfiguration.getTracker());
+        }
+
+        DeviceTracker redisTracker;
+        switch (redisConfiguration.getTracker()) {
+            case LUA:
+                redisTracker = new LuaActiveDevicesTracker(jedisPool, senseThrottle, pillThrottle, redisConfiguration.getHourlyActiveMode(), metricRegistry);
+                break;
+            case SHARDED:
+                if (!HourlyActiveMode.SET.equals(redisConfiguration.getHourlyActiveMode())) {
+                    LOGGER.warn("warning=hourly-active-mode-unsupported mode={} tracker=sharded", redisConfiguration.getHourlyActiveMode());
+                }
+                redisTracker = new ShardedActiveDevicesTracker(createShardedPool(redisConfiguration, metricRegistry), redisConfiguration.getLogicalShards(), senseThrottle, pillThrottle, metricRegistry);
+                break;
+            case PIPELINE:
+            default:
+                redisTracker = new ActiveDevicesTracker(jedisPool, senseThrottle, pillThrottle, redisConfiguration.getHourlyActiveMode(),
+                        redisConfiguration.getDeviceInfoLayout(), new DeviceInfoBuckets(redisConfiguration.getDeviceInfoBuckets()), metricRegistry);
+        }
+
+        if (HourlyActiveMode.BITMAP.equals(redisConfiguration.getHourlyActiveMode())
+                && !DeviceTrackerType.SHARDED.equals(redisConfiguration.getTracker())) {
+            final BitmapHourlyActivesTracker bitmapTracker = new BitmapHourlyActivesTracker(
+                    redisTracker,
+                    jedisPool,
+                    new DeviceIdDictionary(jedisPool),
+                    redisConfiguration.getBitmapPersistIntervalSeconds()
+            );
+            lifecycle.manage(bitmapTracker);
+            redisTracker = bitmapTracker;
+        }
+
+        final AttributeThrottleConfiguration attributeThrottle = redisConfiguration.getAttributeThrottle();
+        if (attributeThrottle.getEnabled()) {
+            redisTracker = new ChangeDetectingDeviceTracker(
+                    redisTracker,
+                    attributeThrottle.getRefreshSeconds() * 1000L,
+                    attributeThrottle.getRssiBucketDb(),
+                    attributeThrottle.getMaxDevices(),
+                    metricRegistry
+            );
+        }
+
+        final WriteBehindConfiguration writeBehind = redisConfiguration.getWriteBehind();
+        if (!writeBehind.getEnabled()) {
+            return redisTracker;
+        }
+
+        final WriteBehindDeviceTracker writeBehindTracker = new WriteBehindDeviceTracker(
+                redisTracker,
+                writeBehind.getFlushIntervalMillis(),
+                writeBehind.getMaxPendingDevices(),
+                metricRegistry
+        );
+        lifecycle.manage(writeBehindTracker);
+        return writeBehindTracker;
+    }
+
+    /**
+     * @return the pool sized and instrumented from the redis configuration, shared by the tracker and its decorators
+     */
+    public static JedisPool createJedisPool(final RedisConfiguration redisConfiguration, final MetricRegistry metricRegistry) {
+        return new InstrumentedJedisPool(
+                redisConfiguration.getHost(),
+                redisConfiguration.getPort(),
+                redisConfiguration.getPool(),
+                metricRegistry
+        );
+    }
+
+    private static LastSeenThrottle createThrottle(final String activeKey, final LastSeenThrottleConfiguration configuration, final MetricRegistry metricRegistry) {
+        return new LastSeenThrottle(
+                activeKey,
+                configuration.getEnabled(),
+                configuration.getResolutionSeconds() * 1000L,
+                configuration.getMaxDevices(),
+                metricRegistry
+        );
+    }
+
+    private static ShardedJedisPool createShardedPool(final RedisConfiguration redisConfiguration, final MetricRegistry metricRegistry) {
+        Preconditions.checkArgument(!redisConfiguration.getNodes().isEmpty(), "redis.nodes is required by the sharded tracker");
+        final List<JedisShardInfo> shards = Lists.newArrayListWithExpectedSize(redisConfiguration.getNodes().size());
+        for (final String node : redisConfiguration.getNodes()) {
+            final HostAndPort hostAndPort = HostAndPort.fromString(node).withDefaultPort(6379);
+            // name the shard after the node so that reordering the list does not move keys
+            // JedisShardInfo takes a single timeout when the shard is named
+            shards.add(new JedisShardInfo(hostAndPort.getHostText(), node, hostAndPort.getPort(), redisConfiguration.getPool().getSoTimeoutMillis(), 1));
+        }
+        return new InstrumentedShardedJedisPool(shards, redisConfiguration.getPool(), metricRegistry);
+    }
+}
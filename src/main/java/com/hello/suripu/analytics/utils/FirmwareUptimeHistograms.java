@@ -0,0 +1,249 @@
+package com.hello.suripu.analytics.utils;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+/**
+ * Uptime distribution of the senses of each firmware version, over fixed intervals, shared by every processor of a
+ * worker.
+ *
+ * Values go to one HdrHistogram {@link Recorder} per version, which any number of threads can record into without
+ * locking; every interval the recorders are swapped for the interval histograms exposed by {@link #latest()} and by
+ * gauges. Only the most active versions get a recorder of their own: once there are as many as allowed, records of
+ * other versions go to {@link #OTHER_FIRMWARES} and are counted, and at the end of the interval a version with more
+ * records than the least active tracked one takes its place.
+ */
+public class FirmwareUptimeHistograms {
+
+    public static final String OTHER_FIRMWARES = "other";
+
+    private static final long HIGHEST_TRACKABLE_SECONDS = TimeUnit.DAYS.toSeconds(3650L);
+    private static final int SIGNIFICANT_VALUE_DIGITS = 2;
+    // low percentiles first, a firmware stuck in a reboot loop drags them down
+    private static final List<String> STATISTICS = ImmutableList.of("count", "min", "p01", "p05", "p50", "p95", "max");
+
+    private final MetricRegistry metrics;
+    private final Class<?> metricsClass;
+    private final int maxFirmwares;
+    private final long intervalMillis;
+
+    private final ConcurrentMap<String, TrackedFirmware> tracked = new ConcurrentHashMap<>();
+    // versions without a recorder and their records in the current interval
+    private final ConcurrentMap<String, AtomicLong> candidates = new ConcurrentHashMap<>();
+    private final TrackedFirmware other = new TrackedFirmware();
+
+    private volatile Snapshot latest;
+
+    // Guarded by this
+    private long intervalStartMillis;
+
+    /**
+     * @param metricsClass gauges are named after it, {@code <class>.firmware-uptime.<version>.<statistic>}
+     */
+    public FirmwareUptimeHistograms(final MetricRegistry metrics, final Class<?> metricsClass, final int maxFirmwares, final long intervalMillis) {
+        this.metrics = metrics;
+        this.metricsClass = metricsClass;
+        this.maxFirmwares = maxFirmwares;
+        this.intervalMillis = intervalMillis;
+        this.intervalStartMillis = System.currentTimeMillis();
+        this.latest = new Snapshot(intervalStartMillis, intervalStartMillis, ImmutableMap.<String, Histogram>of());
+        registerGauges(OTHER_FIRMWARES);
+    }
+
+    /**
+     * Safe to call from any thread.
+     */
+    public void record(final String firmware, final long uptimeSeconds) {
+        final long value = Math.min(Math.max(uptimeSeconds, 0L), HIGHEST_TRACKABLE_SECONDS);
+
+        TrackedFirmware firmwareUptime = tracked.get(firmware);
+        if (firmwareUptime == null && tracked.size() < maxFirmwares) {
+            firmwareUptime = track(firmware);
+        }
+        if (firmwareUptime == null) {
+            countCandidate(firmware);
+            firmwareUptime = other;
+        }
+        firmwareUptime.records.incrementAndGet();
+        firmwareUptime.recorder.recordValue(value);
+    }
+
+    /**
+     * Ends the current interval if it is over. Cheap enough to call after every batch.
+     */
+    public void rotateIfDue() {
+        final long nowMillis = System.currentTimeMillis();
+        synchronized (this) {
+            if (nowMillis - intervalStartMillis < intervalMillis) {
+                return;
+            }
+            rotate(nowMillis);
+        }
+    }
+
+    /**
+     * @return histograms of the last complete interval, by firmware version
+     */
+    public Snapshot latest() {
+        return latest;
+    }
+
+    private void rotate(final long nowMillis) {
+        final Map<String, Histogram> histograms = Maps.newTreeMap();
+        final Map<String, Long> records = Maps.newHashMap();
+        for (final Map.Entry<String, TrackedFirmware> entry : tracked.entrySet()) {
+            histograms.put(entry.getKey(), entry.getValue().recorder.getIntervalHistogram());
+            records.put(entry.getKey(), entry.getValue().records.getAndSet(0L));
+        }
+        histograms.put(OTHER_FIRMWARES, other.recorder.getIntervalHistogram());
+        other.records.set(0L);
+
+        latest = new Snapshot(intervalStartMillis, nowMillis, ImmutableMap.copyOf(histograms));
+        intervalStartMillis = nowMillis;
+
+        promoteCandidates(records);
+    }
+
+    /**
+     * Swaps the least active tracked versions for the most active candidates, as long as the candidate had more
+     * records over the interval.
+     */
+    private void promoteCandidates(final Map<String, Long> trackedRecords) {
+        final List<Map.Entry<String, Long>> mostActiveCandidates = Lists.newArrayList();
+        for (final Map.Entry<String, AtomicLong> entry : candidates.entrySet()) {
+            mostActiveCandidates.add(Maps.immutableEntry(entry.getKey(), entry.getValue().get()));
+        }
+        candidates.clear();
+        if (mostActiveCandidates.isEmpty()) {
+            return;
+        }
+        Collections.sort(mostActiveCandidates, Collections.reverseOrder(BY_RECORDS));
+
+        final List<Map.Entry<String, Long>> leastActiveTracked = Lists.newArrayList(trackedRecords.entrySet());
+        Collections.sort(leastActiveTracked, BY_RECORDS);
+
+        int evicted = 0;
+        for (final Map.Entry<String, Long> candidate : mostActiveCandidates) {
+            if (tracked.size() >= maxFirmwares) {
+                if (evicted >= leastActiveTracked.size() || leastActiveTracked.get(evicted).getValue() >= candidate.getValue()) {
+                    return;
+                }
+                untrack(leastActiveTracked.get(evicted).getKey());
+                evicted++;
+            }
+            track(candidate.getKey());
+        }
+    }
+
+    private TrackedFirmware track(final String firmware) {
+        final TrackedFirmware created = new TrackedFirmware();
+        final TrackedFirmware existing = tracked.putIfAbsent(firmware, created);
+        if (existing != null) {
+            return existing;
+        }
+        registerGauges(firmware);
+        return created;
+    }
+
+    private void untrack(final String firmware) {
+        tracked.remove(firmware);
+        for (final String statistic : STATISTICS) {
+            metrics.remove(name(metricsClass, "firmware-uptime", firmware, statistic));
+        }
+    }
+
+    private void countCandidate(final String firmware) {
+        AtomicLong count = candidates.get(firmware);
+        if (count == null) {
+            if (candidates.size() >= maxFirmwares) {
+                return;
+            }
+            final AtomicLong created = new AtomicLong();
+            count = candidates.putIfAbsent(firmware, created);
+            if (count == null) {
+                count = created;
+            }
+        }
+        count.incrementAndGet();
+    }
+
+    private void registerGauges(final String firmware) {
+        for (final String statistic : STATISTICS) {
+            final String metricName = name(metricsClass, "firmware-uptime", firmware, statistic);
+            metrics.remove(metricName);
+            metrics.register(metricName, new Gauge<Long>() {
+                @Override
+                public Long getValue() {
+                    final Histogram histogram = latest.histograms.get(firmware);
+                    return (histogram == null) ? 0L : statistic(histogram, statistic);
+                }
+            });
+        }
+    }
+
+    private static long statistic(final Histogram histogram, final String statistic) {
+        switch (statistic) {
+            case "count":
+                return histogram.getTotalCount();
+            case "min":
+                return (histogram.getTotalCount() == 0L) ? 0L : histogram.getMinValue();
+            case "p01":
+                return histogram.getValueAtPercentile(1.0);
+            case "p05":
+                return histogram.getValueAtPercentile(5.0);
+            case "p50":
+                return histogram.getValueAtPercentile(50.0);
+            case "p95":
+                return histogram.getValueAtPercentile(95.0);
+            case "max":
+                return histogram.getMaxValue();
+            default:
+                throw new IllegalArgumentException(statistic);
+        }
+    }
+
+    private static final Comparator<Map.Entry<String, Long>> BY_RECORDS = new Comparator<Map.Entry<String, Long>>() {
+        @Override
+        public int compare(final Map.Entry<String, Long> first, final Map.Entry<String, Long> second) {
+            return Long.compare(first.getValue(), second.getValue());
+        }
+    };
+
+    private static class TrackedFirmware {
+        final Recorder recorder = new Recorder(HIGHEST_TRACKABLE_SECONDS, SIGNIFICANT_VALUE_DIGITS);
+        final AtomicLong records = new AtomicLong();
+    }
+
+    /**
+     * Uptime histograms, in seconds, of one interval. Histograms must not be modified.
+     */
+    public static class Snapshot {
+        public final long startMillis;
+        public final long endMillis;
+        public final Map<String, Histogram> histograms;
+
+        Snapshot(final long startMillis, final long endMillis, final Map<String, Histogram> histograms) {
+            this.startMillis = startMillis;
+            this.endMillis = endMillis;
+            this.histograms = histograms;
+        }
+    }
+}
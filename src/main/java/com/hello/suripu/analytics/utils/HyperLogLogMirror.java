@@ -0,0 +1,188 @@
+package com.hello.suripu.analytics.utils;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Local copy of the registers of the redis HyperLogLog currently being written, so that a batch only PFADDs
+ * the members that can still raise a register.
+ *
+ * Register index and rank are computed exactly like redis does (MurmurHash64A, 2^14 registers), and registers
+ * are only raised once redis acknowledged the PFADD. Redis holds the max over every worker, so skipping a
+ * member whose rank is not above the local register never loses information.
+ *
+ * Assumes redis 5.0 or later: seed 0xadc83b19, the tail bytes read as unsigned, and the rank counted over the 50
+ * bits above the index with a sentinel bit, so it is capped at 51. Redis 3.x/4.x counted up to bit 63 and capped
+ * it at 50; the mirror would then only differ on hashes with those 49 bits all zero. The class refuses to load if
+ * it disagrees with the registers redis computes for a fixed set of members.
+ */
+public class HyperLogLogMirror {
+
+    private static final int HLL_P = 14;
+    private static final int HLL_Q = 64 - HLL_P;
+    private static final int HLL_REGISTERS = 1 << HLL_P;
+    private static final int HLL_P_MASK = HLL_REGISTERS - 1;
+    private static final long HLL_HASH_SEED = 0xadc83b19L;
+
+    /**
+     * Register index and rank computed by hllPatLen() in redis' hyperloglog.c for these members, covering every
+     * tail length of the hash, a multibyte member and ranks well above 1.
+     */
+    private static final String[] KNOWN_MEMBERS = {
+            "", "a", "ab", "abc", "abcd", "abcde", "abcdef", "abcdefg", "abcdefgh",
+            "9A8B7C6D5E4F3021", "D4A2B1C3E5F60718A", "0123456789ABCDEF012", "sense-\u00fc",
+            "device-137", "device-242"
+    };
+    private static final int[] KNOWN_INDEXES = {
+            5938, 12711, 719, 9474, 11070, 3726, 13647, 5634, 1383,
+            7958, 12467, 5855, 12569,
+            12774, 1830
+    };
+    private static final byte[] KNOWN_RANKS = {
+            2, 2, 1, 1, 8, 4, 2, 2, 1,
+            1, 2, 1, 2,
+            9, 12
+    };
+
+    static {
+        checkKnownRegisters();
+    }
+
+    private String currentKey = "";
+    private byte[] registers = new byte[HLL_REGISTERS];
+
+    /**
+     * Keeps, for every register, the highest ranked member of the batch if it beats the local register.
+     */
+    public synchronized Pending pending(final String key, final Collection<String> members) {
+        if (!currentKey.equals(key)) {
+            currentKey = key;
+            registers = new byte[HLL_REGISTERS];
+        }
+
+        final String[] bestMembers = new String[HLL_REGISTERS];
+        final byte[] bestRanks = new byte[HLL_REGISTERS];
+        final List<Integer> indexes = Lists.newArrayList();
+        for (final String member : members) {
+            final long hash = murmurHash64A(member.getBytes(Charsets.UTF_8), HLL_HASH_SEED);
+            final int index = (int) (hash & HLL_P_MASK);
+            final byte rank = rank(hash);
+            if (rank <= registers[index] || rank <= bestRanks[index]) {
+                continue;
+            }
+            if (bestMembers[index] == null) {
+                indexes.add(index);
+            }
+            bestMembers[index] = member;
+            bestRanks[index] = rank;
+        }
+
+        final List<String> toSend = Lists.newArrayListWithExpectedSize(indexes.size());
+        final int[] pendingIndexes = new int[indexes.size()];
+        final byte[] pendingRanks = new byte[indexes.size()];
+        for (int i = 0; i < indexes.size(); i++) {
+            final int index = indexes.get(i);
+            toSend.add(bestMembers[index]);
+            pendingIndexes[i] = index;
+            pendingRanks[i] = bestRanks[index];
+        }
+        return new Pending(key, ImmutableList.copyOf(toSend), pendingIndexes, pendingRanks);
+    }
+
+    /**
+     * Raises the local registers once redis acknowledged the PFADD of a pending batch.
+     */
+    public synchronized void commit(final Pending pending) {
+        if (!currentKey.equals(pending.key)) {
+            return;
+        }
+        for (int i = 0; i < pending.indexes.length; i++) {
+            if (registers[pending.indexes[i]] < pending.ranks[i]) {
+                registers[pending.indexes[i]] = pending.ranks[i];
+            }
+        }
+    }
+
+    private static void checkKnownRegisters() {
+        for (int i = 0; i < KNOWN_MEMBERS.length; i++) {
+            final long hash = murmurHash64A(KNOWN_MEMBERS[i].getBytes(Charsets.UTF_8), HLL_HASH_SEED);
+            final int index = (int) (hash & HLL_P_MASK);
+            final byte rank = rank(hash);
+            Preconditions.checkState(index == KNOWN_INDEXES[i] && rank == KNOWN_RANKS[i],
+                    "hyperloglog register mismatch member=%s index=%s rank=%s expected_index=%s expected_rank=%s",
+                    KNOWN_MEMBERS[i], index, rank, KNOWN_INDEXES[i], KNOWN_RANKS[i]);
+        }
+    }
+
+    private static byte rank(final long hash) {
+        long bits = hash >>> HLL_P;
+        bits |= 1L << HLL_Q;
+        return (byte) (Long.numberOfTrailingZeros(bits) + 1);
+    }
+
+    /**
+     * MurmurHash64A as used by redis' hyperloglog.c (unaligned little-endian reads).
+     */
+    static long murmurHash64A(final byte[] data, final long seed) {
+        final long m = 0xc6a4a7935bd1e995L;
+        final int r = 47;
+        final int length = data.length;
+
+        long h = seed ^ (length * m);
+
+        final int blocks = length - (length & 7);
+        for (int i = 0; i < blocks; i += 8) {
+            long k = (data[i] & 0xffL)
+                    | (data[i + 1] & 0xffL) << 8
+                    | (data[i + 2] & 0xffL) << 16
+                    | (data[i + 3] & 0xffL) << 24
+                    | (data[i + 4] & 0xffL) << 32
+                    | (data[i + 5] & 0xffL) << 40
+                    | (data[i + 6] & 0xffL) << 48
+                    | (data[i + 7] & 0xffL) << 56;
+            k *= m;
+            k ^= k >>> r;
+            k *= m;
+            h ^= k;
+            h *= m;
+        }
+
+        switch (length & 7) {
+            case 7: h ^= (data[blocks + 6] & 0xffL) << 48; // fall through
+            case 6: h ^= (data[blocks + 5] & 0xffL) << 40; // fall through
+            case 5: h ^= (data[blocks + 4] & 0xffL) << 32; // fall through
+            case 4: h ^= (data[blocks + 3] & 0xffL) << 24; // fall through
+            case 3: h ^= (data[blocks + 2] & 0xffL) << 16; // fall through
+            case 2: h ^= (data[blocks + 1] & 0xffL) << 8;  // fall through
+            case 1: h ^= (data[blocks] & 0xffL);
+                    h *= m;
+                    break;
+            default:
+                    break;
+        }
+
+        h ^= h >>> r;
+        h *= m;
+        h ^= h >>> r;
+        return h;
+    }
+
+    public static class Pending {
+        public final String key;
+        public final List<String> members;
+        private final int[] indexes;
+        private final byte[] ranks;
+
+        private Pending(final String key, final List<String> members, final int[] indexes, final byte[] ranks) {
+            this.key = key;
+            this.members = members;
+            this.indexes = indexes;
+            this.ranks = ranks;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.hello.suripu.analytics.utils;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+
+import com.hello.suripu.analytics.configuration.RedisPoolConfiguration;
+
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Protocol;
+import redis.clients.jedis.exceptions.JedisException;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+/**
+ * {@link JedisPool} reporting how long callers wait for a connection, how many connections are busy or idle and how
+ * many get returned broken.
+ */
+public class InstrumentedJedisPool extends JedisPool {
+
+    private final Timer borrowTimer;
+    private final Counter borrowFailures;
+    private final Counter brokenConnections;
+
+    public InstrumentedJedisPool(final String host,
+                                 final int port,
+                                 final RedisPoolConfiguration configuration,
+                                 final MetricRegistry metricRegistry) {
+        super(poolConfig(configuration), host, port,
+                configuration.getConnectionTimeoutMillis(),
+                configuration.getSoTimeoutMillis(),
+                null,
+                Protocol.DEFAULT_DATABASE,
+                null);
+
+        this.borrowTimer = metricRegistry.timer(name(InstrumentedJedisPool.class, "borrow-wait"));
+        this.borrowFailures = metricRegistry.counter(name(InstrumentedJedisPool.class, "borrow-failures"));
+        this.brokenConnections = metricRegistry.counter(name(InstrumentedJedisPool.class, "broken-connections"));
+        metricRegistry.register(name(InstrumentedJedisPool.class, "active"), new Gauge<Integer>() {
+            @Override
+            public Integer getValue() {
+                return getNumActive();
+            }
+        });
+        metricRegistry.register(name(InstrumentedJedisPool.class, "idle"), new Gauge<Integer>() {
+            @Override
+            public Integer getValue() {
+                return getNumIdle();
+            }
+        });
+        metricRegistry.register(name(InstrumentedJedisPool.class, "waiters"), new Gauge<Integer>() {
+            @Override
+            public Integer getValue() {
+                return getNumWaiters();
+            }
+        });
+    }
+
+    static GenericObjectPoolConfig poolConfig(final RedisPoolConfiguration configuration) {
+        final GenericObjectPoolConfig poolConfig = new GenericObjectPoolConfig();
+        poolConfig.setMaxTotal(configuration.getMaxTotal());
+        poolConfig.setMaxIdle(configuration.getMaxIdle());
+        poolConfig.setMinIdle(configuration.getMinIdle());
+        poolConfig.setMaxWaitMillis(configuration.getMaxWaitMillis());
+        return poolConfig;
+    }
+
+    @Override
+    public Jedis getResource() {
+        final Timer.Context context = borrowTimer.time();
+        try {
+            return super.getResource();
+        } catch (JedisException e) {
+            borrowFailures.inc();
+            throw e;
+        } finally {
+            context.stop();
+        }
+    }
+
+    @Override
+    public void returnBrokenResource(final Jedis resource) {
+        if (resource != null) {
+            brokenConnections.inc();
+        }
+        super.returnBrokenResource(resource);
+    }
+}
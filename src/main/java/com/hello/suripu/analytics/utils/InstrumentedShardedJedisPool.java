@@ -0,0 +1,77 @@
+package com.hello.suripu.analytics.utils;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+
+import com.hello.suripu.analytics.configuration.RedisPoolConfiguration;
+
+import java.util.List;
+
+import redis.clients.jedis.JedisShardInfo;
+import redis.clients.jedis.ShardedJedis;
+import redis.clients.jedis.ShardedJedisPool;
+import redis.clients.jedis.exceptions.JedisException;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+/**
+ * {@link ShardedJedisPool} reporting the same metrics as {@link InstrumentedJedisPool}, under its own name. A pooled
+ * {@link ShardedJedis} holds one connection per node and is returned broken when any of them is.
+ */
+public class InstrumentedShardedJedisPool extends ShardedJedisPool {
+
+    private final Timer borrowTimer;
+    private final Counter borrowFailures;
+    private final Counter brokenConnections;
+
+    public InstrumentedShardedJedisPool(final List<JedisShardInfo> shards,
+                                        final RedisPoolConfiguration configuration,
+                                        final MetricRegistry metricRegistry) {
+        super(InstrumentedJedisPool.poolConfig(configuration), shards);
+
+        this.borrowTimer = metricRegistry.timer(name(InstrumentedShardedJedisPool.class, "borrow-wait"));
+        this.borrowFailures = metricRegistry.counter(name(InstrumentedShardedJedisPool.class, "borrow-failures"));
+        this.brokenConnections = metricRegistry.counter(name(InstrumentedShardedJedisPool.class, "broken-connections"));
+        metricRegistry.register(name(InstrumentedShardedJedisPool.class, "active"), new Gauge<Integer>() {
+            @Override
+            public Integer getValue() {
+                return getNumActive();
+            }
+        });
+        metricRegistry.register(name(InstrumentedShardedJedisPool.class, "idle"), new Gauge<Integer>() {
+            @Override
+            public Integer getValue() {
+                return getNumIdle();
+            }
+        });
+        metricRegistry.register(name(InstrumentedShardedJedisPool.class, "waiters"), new Gauge<Integer>() {
+            @Override
+            public Integer getValue() {
+                return getNumWaiters();
+            }
+        });
+    }
+
+    @Override
+    public ShardedJedis getResource() {
+        final Timer.Context context = borrowTimer.time();
+        try {
+            return super.getResource();
+        } catch (JedisException e) {
+            borrowFailures.inc();
+            throw e;
+        } finally {
+            context.stop();
+        }
+    }
+
+    @Override
+    public void returnBrokenResource(final ShardedJedis resource) {
+        if (resource != null) {
+            brokenConnections.inc();
+        }
+        super.returnBrokenResource(resource);
+    }
+}
@@ -0,0 +1,107 @@
+package com.hello.suripu.analytics.utils;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+/**
+ * Remembers what was last written to an active devices sorted set and its hourly set, so writes that would not
+ * change anything observable can be skipped.
+ *
+ * A last-seen score is only advanced once it moved by at least the configured resolution, and a device is only
+ * added to an hourly set once per hour. Memory is bounded by the maximum number of devices remembered; evicted
+ * devices are simply written again.
+ */
+public class LastSeenThrottle {
+
+    private final boolean enabled;
+    private final long resolutionMillis;
+
+    private final Cache<String, Long> lastScores;
+    private final Cache<String, String> lastHourlyKeys;
+
+    private final Meter hits;
+    private final Meter misses;
+    private final Meter suppressed;
+
+    public LastSeenThrottle(final String activeKey,
+                            final boolean enabled,
+                            final long resolutionMillis,
+                            final long maxDevices,
+                            final MetricRegistry metrics) {
+        this.enabled = enabled;
+        this.resolutionMillis = resolutionMillis;
+        this.lastScores = CacheBuilder.newBuilder()
+                .maximumSize(maxDevices)
+                .expireAfterWrite(resolutionMillis, TimeUnit.MILLISECONDS)
+                .build();
+        this.lastHourlyKeys = CacheBuilder.newBuilder()
+                .maximumSize(maxDevices)
+                .expireAfterWrite(1, TimeUnit.HOURS)
+                .build();
+
+        this.hits = metrics.meter(name(LastSeenThrottle.class, activeKey, "hits"));
+        this.misses = metrics.meter(name(LastSeenThrottle.class, activeKey, "misses"));
+        this.suppressed = metrics.meter(name(LastSeenThrottle.class, activeKey, "suppressed"));
+    }
+
+    /**
+     * @return true if the sorted set score of this device needs to be written
+     */
+    public boolean shouldAdvanceScore(final String deviceId, final Long score) {
+        if (!enabled) {
+            return true;
+        }
+        final Long lastScore = lastScores.getIfPresent(deviceId);
+        if (lastScore == null) {
+            misses.mark();
+            return true;
+        }
+        hits.mark();
+        if (score < lastScore + resolutionMillis) {
+            suppressed.mark();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return true if this device has not been added to the given hourly set yet
+     */
+    public boolean shouldAddToHourlySet(final String deviceId, final String hourlyKey) {
+        if (!enabled) {
+            return true;
+        }
+        final String lastHourlyKey = lastHourlyKeys.getIfPresent(deviceId);
+        if (lastHourlyKey == null) {
+            misses.mark();
+            return true;
+        }
+        hits.mark();
+        if (lastHourlyKey.equals(hourlyKey)) {
+            suppressed.mark();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Records writes once redis acknowledged them.
+     */
+    public void recordWrites(final Map<String, Long> scores, final Collection<String> hourlyMembers, final String hourlyKey) {
+        if (!enabled) {
+            return;
+        }
+        lastScores.putAll(scores);
+        for (final String deviceId : hourlyMembers) {
+            lastHourlyKeys.put(deviceId, hourlyKey);
+        }
+    }
+}
@@ -0,0 +1,303 @@
+package com.hello.suripu.analytics.utils;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.io.Resources;
+
+import com.hello.suripu.analytics.configuration.HourlyActiveMode;
+import com.hello.suripu.analytics.models.WifiInfo;
+import com.hello.suripu.core.models.FirmwareInfo;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.util.SafeEncoder;
+
+/**
+ * Same key layout as {@link ActiveDevicesTracker}, but each batch is shipped as a single msgpack argument to a
+ * lua script which performs the ZADD/SADD/HSET/EXPIREAT fan-out server-side.
+ *
+ * Scripts are loaded with SCRIPT LOAD on first use and then invoked with EVALSHA, so only the packed batch
+ * goes over the wire.
+ */
+public class LuaActiveDevicesTracker implements DeviceTracker {
+
+    private static final String NO_SCRIPT_ERROR_PREFIX = "NOSCRIPT";
+    private static final String GENERIC_EXCEPTION_LOG_MESSAGE = "error=jedis-connection-exception";
+    private final static Logger LOGGER = LoggerFactory.getLogger(LuaActiveDevicesTracker.class);
+
+    private final JedisPool jedisPool;
+    private final LastSeenThrottle senseThrottle;
+    private final LastSeenThrottle pillThrottle;
+    private final boolean writeHourlySets;
+    private final boolean writeHyperLogLogs;
+    private final HyperLogLogMirror senseHyperLogLog = new HyperLogLogMirror();
+    private final HyperLogLogMirror pillHyperLogLog = new HyperLogLogMirror();
+
+    private final Script trackDevicesScript;
+    private final Script trackFirmwaresScript;
+    private final Script trackWifiInfoScript;
+    private final Script trackUptimeScript;
+    private final PipelineMetrics pipelineMetrics;
+
+    public LuaActiveDevicesTracker(final JedisPool jedisPool, final LastSeenThrottle senseThrottle, final LastSeenThrottle pillThrottle, final HourlyActiveMode hourlyActiveMode, final MetricRegistry metricRegistry) {
+        this.jedisPool = jedisPool;
+        this.pipelineMetrics = new PipelineMetrics(LuaActiveDevicesTracker.class, metricRegistry);
+        this.senseThrottle = senseThrottle;
+        this.pillThrottle = pillThrottle;
+        this.writeHourlySets = HourlyActiveMode.SET.equals(hourlyActiveMode) || HourlyActiveMode.BOTH.equals(hourlyActiveMode);
+        this.writeHyperLogLogs = HourlyActiveMode.HYPERLOGLOG.equals(hourlyActiveMode) || HourlyActiveMode.BOTH.equals(hourlyActiveMode);
+
+        this.trackDevicesScript = Script.fromResource("lua/track_devices.lua");
+        this.trackFirmwaresScript = Script.fromResource("lua/track_firmwares.lua");
+        this.trackWifiInfoScript = Script.fromResource("lua/track_wifi_info.lua");
+        this.trackUptimeScript = Script.fromResource("lua/track_uptime.lua");
+    }
+
+    @Override
+    public boolean trackSenses(final Map<String, Long> activeSenses) {
+        return trackDevices(ActiveDevicesTracker.SENSE_ACTIVE_SET_KEY, ActiveDevicesTracker.HOURLY_ACTIVE_SENSE_SET_KEY_PREFIX,
+                ActiveDevicesTracker.HOURLY_ACTIVE_SENSE_HLL_KEY_PREFIX, ActiveDevicesTracker.DAILY_ACTIVE_SENSE_HLL_KEY_PREFIX,
+                activeSenses, senseThrottle, senseHyperLogLog);
+    }
+
+    @Override
+    public boolean trackPills(final Map<String, Long> activePills) {
+        return trackDevices(ActiveDevicesTracker.PILL_ACTIVE_SET_KEY, ActiveDevicesTracker.HOURLY_ACTIVE_PILL_SET_KEY_PREFIX,
+                ActiveDevicesTracker.HOURLY_ACTIVE_PILL_HLL_KEY_PREFIX, ActiveDevicesTracker.DAILY_ACTIVE_PILL_HLL_KEY_PREFIX,
+                activePills, pillThrottle, pillHyperLogLog);
+    }
+
+    private boolean trackDevices(final String activeKey,
+                              final String hourlyActiveKeySetPrefix,
+                              final String hourlyActiveHyperLogLogKeyPrefix,
+                              final String dailyActiveHyperLogLogKeyPrefix,
+                              final Map<String, Long> devicesSeen,
+                              final LastSeenThrottle throttle,
+                              final HyperLogLogMirror hyperLogLogMirror) {
+        final DateTime dateTimeNow = DateTime.now(DateTimeZone.UTC);
+        final String hourlyActiveSetKey = ActiveDevicesTracker.hourlyKey(hourlyActiveKeySetPrefix, dateTimeNow);
+        final Long hourlyActiveKeySetExpirationTimestampSeconds = ActiveDevicesTracker.hourlyKeyExpirationSeconds(dateTimeNow);
+
+        final Map<String, Long> scoresToWrite = Maps.newHashMapWithExpectedSize(devicesSeen.size());
+        final Set<String> hourlyMembersToWrite = Sets.newHashSetWithExpectedSize(devicesSeen.size());
+        final List<Map.Entry<String, Long>> entries = Lists.newArrayListWithExpectedSize(devicesSeen.size());
+        for(final Map.Entry<String, Long> entry : devicesSeen.entrySet()) {
+            final boolean advanceScore = throttle.shouldAdvanceScore(entry.getKey(), entry.getValue());
+            final boolean addToHourlySet = throttle.shouldAddToHourlySet(entry.getKey(), hourlyActiveSetKey);
+            if (advanceScore) {
+                scoresToWrite.put(entry.getKey(), entry.getValue());
+            }
+            if (addToHourlySet) {
+                hourlyMembersToWrite.add(entry.getKey());
+            }
+            if (advanceScore || addToHourlySet) {
+                entries.add(entry);
+            }
+        }
+
+        if (entries.isEmpty()) {
+            LOGGER.debug("action=active-devices-throttled device_count={} key={}", devicesSeen.size(), activeKey);
+            return true;
+        }
+
+        final MessagePacker packer = new MessagePacker(entries.size() * 32);
+        packer.packArrayHeader(entries.size() * 3);
+        for(final Map.Entry<String, Long> entry : entries) {
+            packer.packString(entry.getKey());
+            packer.packLong(scoresToWrite.containsKey(entry.getKey()) ? entry.getValue() : -1L);
+            packer.packLong(writeHourlySets && hourlyMembersToWrite.contains(entry.getKey()) ? 1L : 0L);
+        }
+
+        final String hourlyActiveHyperLogLogKey = ActiveDevicesTracker.hourlyKey(hourlyActiveHyperLogLogKeyPrefix, dateTimeNow);
+        final String dailyActiveHyperLogLogKey = ActiveDevicesTracker.dailyKey(dailyActiveHyperLogLogKeyPrefix, dateTimeNow);
+        final HyperLogLogMirror.Pending hyperLogLogPending = writeHyperLogLogs
+                ? hyperLogLogMirror.pending(hourlyActiveHyperLogLogKey, hourlyMembersToWrite)
+                : null;
+        final List<String> hyperLogLogMembers = (hyperLogLogPending != null) ? hyperLogLogPending.members : ImmutableList.<String>of();
+        final MessagePacker hyperLogLogPacker = new MessagePacker(hyperLogLogMembers.size() * 28);
+        hyperLogLogPacker.packArrayHeader(hyperLogLogMembers.size());
+        for(final String member : hyperLogLogMembers) {
+            hyperLogLogPacker.packString(member);
+        }
+
+        final boolean written = eval(trackDevicesScript,
+                ImmutableList.of(activeKey, hourlyActiveSetKey, hourlyActiveHyperLogLogKey, dailyActiveHyperLogLogKey),
+                ImmutableList.of(
+                        SafeEncoder.encode(hourlyActiveKeySetExpirationTimestampSeconds.toString()),
+                        packer.toByteArray(),
+                        SafeEncoder.encode(ActiveDevicesTracker.dailyKeyExpirationSeconds(dateTimeNow).toString()),
+                        hyperLogLogPacker.toByteArray()));
+        if (written) {
+            throttle.recordWrites(scoresToWrite, hourlyMembersToWrite, hourlyActiveSetKey);
+            if (hyperLogLogPending != null) {
+                hyperLogLogMirror.commit(hyperLogLogPending);
+            }
+        }
+        LOGGER.debug("action=active-devices-tracked device_count={} scores_written={} hourly_members_written={} key={}",
+                devicesSeen.size(), scoresToWrite.size(), hourlyMembersToWrite.size(), activeKey);
+        return written;
+    }
+
+    @Override
+    public boolean trackFirmwares(final Map<String, FirmwareInfo> seenFirmwares) {
+        // Every key the script writes is passed in KEYS, so that redis can route and check them
+        final List<String> keys = Lists.newArrayList(ActiveDevicesTracker.FIRMWARES_SEEN_SET_KEY, ActiveDevicesTracker.TOP_FIRMWARES_SEEN_SET_KEY);
+        final Map<String, Integer> keyIndexes = Maps.newHashMap();
+
+        final MessagePacker packer = new MessagePacker(seenFirmwares.size() * 56);
+        packer.packArrayHeader(seenFirmwares.size() * 7);
+        for(final FirmwareInfo fwEntry : seenFirmwares.values()) {
+            packer.packString(fwEntry.device_id);
+            packer.packLong(keyIndex(keys, keyIndexes, ActiveDevicesTracker.DEVICE_ID_KEY_BASE.concat(fwEntry.device_id)));
+            packer.packString(fwEntry.middleVersion);
+            packer.packLong("0".equals(fwEntry.middleVersion)
+                    ? 0 : keyIndex(keys, keyIndexes, ActiveDevicesTracker.MIDDLE_FIRMWARE_KEY_BASE.concat(fwEntry.middleVersion)));
+            packer.packString(fwEntry.topVersion);
+            packer.packLong("0".equals(fwEntry.topVersion)
+                    ? 0 : keyIndex(keys, keyIndexes, ActiveDevicesTracker.TOP_FIRMWARE_KEY_BASE.concat(fwEntry.topVersion)));
+            packer.packLong(fwEntry.timestamp);
+        }
+
+        final boolean written = eval(trackFirmwaresScript, keys, ImmutableList.of(packer.toByteArray()));
+        LOGGER.debug("action=firmware-info-tracked device_count={}", seenFirmwares.size());
+        return written;
+    }
+
+    /**
+     * @return lua (1-based) index of the key in KEYS, appending it the first time it is used
+     */
+    private static int keyIndex(final List<String> keys, final Map<String, Integer> keyIndexes, final String key) {
+        final Integer index = keyIndexes.get(key);
+        if (index != null) {
+            return index;
+        }
+        keys.add(key);
+        keyIndexes.put(key, keys.size());
+        return keys.size();
+    }
+
+    @Override
+    public boolean trackWifiInfo(final Map<String, WifiInfo> wifiInfos) {
+        final MessagePacker packer = new MessagePacker(wifiInfos.size() * 40);
+        packer.packArrayHeader(wifiInfos.size() * 3);
+        for(final Map.Entry<String, WifiInfo> entry : wifiInfos.entrySet()) {
+            packer.packString(entry.getKey());
+            packer.packString(entry.getValue().ssid);
+            packer.packLong(entry.getValue().rssi);
+        }
+
+        final boolean written = eval(trackWifiInfoScript, ImmutableList.of(ActiveDevicesTracker.WIFI_INFO_HASH_KEY), ImmutableList.of(packer.toByteArray()));
+        LOGGER.debug("action=wifi-info-tracked device_count={}", wifiInfos.size());
+        return written;
+    }
+
+    @Override
+    public boolean trackUptime(final Map<String, Integer> uptimes) {
+        final MessagePacker packer = new MessagePacker(uptimes.size() * 24);
+        packer.packArrayHeader(uptimes.size() * 2);
+        for(final Map.Entry<String, Integer> entry : uptimes.entrySet()) {
+            packer.packString(entry.getKey());
+            packer.packLong(entry.getValue());
+        }
+
+        final boolean written = eval(trackUptimeScript, ImmutableList.of(ActiveDevicesTracker.SENSE_UPTIME_HSET_KEY), ImmutableList.of(packer.toByteArray()));
+        LOGGER.debug("action=track-uptime num_senses={}", uptimes.size());
+        return written;
+    }
+
+    @Override
+    public boolean flush() {
+        return true;
+    }
+
+    /**
+     * Runs the script by sha, loading it first if redis does not know it (first call, restart or failover).
+     *
+     * @return true if redis acknowledged the script execution
+     */
+    private boolean eval(final Script script, final List<String> keys, final List<byte[]> args) {
+        final List<byte[]> encodedKeys = Lists.newArrayListWithExpectedSize(keys.size());
+        for (final String key : keys) {
+            encodedKeys.add(SafeEncoder.encode(key));
+        }
+
+        Jedis jedis = null;
+        try {
+            jedis = jedisPool.getResource();
+            final Timer.Context context = pipelineMetrics.time(1);
+            try {
+                jedis.evalsha(script.sha(jedis), encodedKeys, args);
+            } catch (JedisDataException exception) {
+                if (exception.getMessage() == null || !exception.getMessage().startsWith(NO_SCRIPT_ERROR_PREFIX)) {
+                    throw exception;
+                }
+                jedis.evalsha(script.reload(jedis), encodedKeys, args);
+            } finally {
+                context.stop();
+            }
+            return true;
+        } catch (JedisDataException exception) {
+            LOGGER.error("error=jedis-data-exception script={} message={}", script.name, exception.getMessage());
+        } catch (Exception exception) {
+            LOGGER.error("error=redis-unknown-failure script={} message={}", script.name, exception.getMessage());
+            jedisPool.returnBrokenResource(jedis);
+            jedis = null;
+        } finally {
+            try {
+                if (jedis != null) {
+                    jedisPool.returnResource(jedis);
+                }
+            } catch (JedisConnectionException e) {
+                LOGGER.error(GENERIC_EXCEPTION_LOG_MESSAGE + " message={}", e.getMessage());
+            }
+        }
+        return false;
+    }
+
+    private static class Script {
+        private final String name;
+        private final String body;
+        private volatile byte[] sha;
+
+        private Script(final String name, final String body) {
+            this.name = name;
+            this.body = body;
+        }
+
+        static Script fromResource(final String resourceName) {
+            try {
+                return new Script(resourceName, Resources.toString(Resources.getResource(resourceName), Charsets.UTF_8));
+            } catch (IOException e) {
+                throw new IllegalStateException(String.format("Could not read lua script %s", resourceName), e);
+            }
+        }
+
+        byte[] sha(final Jedis jedis) {
+            final byte[] loaded = sha;
+            return (loaded != null) ? loaded : reload(jedis);
+        }
+
+        byte[] reload(final Jedis jedis) {
+            sha = SafeEncoder.encode(jedis.scriptLoad(body));
+            LOGGER.info("action=lua-script-loaded script={}", name);
+            return sha;
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.hello.suripu.analytics.utils;
+
+import com.google.common.base.Charsets;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Minimal MessagePack encoder for the flat arrays of strings and integers unpacked by our lua scripts with
+ * redis' bundled cmsgpack.
+ *
+ * Only the formats understood by every cmsgpack version shipped with redis are used (no str8).
+ */
+public class MessagePacker {
+
+    private final ByteArrayOutputStream buffer;
+    private final DataOutputStream out;
+
+    public MessagePacker(final int expectedSize) {
+        this.buffer = new ByteArrayOutputStream(expectedSize);
+        this.out = new DataOutputStream(buffer);
+    }
+
+    public MessagePacker packArrayHeader(final int size) {
+        try {
+            if (size < 16) {
+                out.writeByte(0x90 | size);
+            } else if (size < 65536) {
+                out.writeByte(0xdc);
+                out.writeShort(size);
+            } else {
+                out.writeByte(0xdd);
+                out.writeInt(size);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return this;
+    }
+
+    public MessagePacker packString(final String value) {
+        final byte[] bytes = value.getBytes(Charsets.UTF_8);
+        try {
+            if (bytes.length < 32) {
+                out.writeByte(0xa0 | bytes.length);
+            } else if (bytes.length < 65536) {
+                out.writeByte(0xda);
+                out.writeShort(bytes.length);
+            } else {
+                out.writeByte(0xdb);
+                out.writeInt(bytes.length);
+            }
+            out.write(bytes);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return this;
+    }
+
+    public MessagePacker packLong(final long value) {
+        try {
+            if (value >= 0) {
+                if (value < 128) {
+                    out.writeByte((int) value);
+                } else if (value < 256) {
+                    out.writeByte(0xcc);
+                    out.writeByte((int) value);
+                } else if (value < 65536) {
+                    out.writeByte(0xcd);
+                    out.writeShort((int) value);
+                } else if (value < 4294967296L) {
+                    out.writeByte(0xce);
+                    out.writeInt((int) value);
+                } else {
+                    out.writeByte(0xcf);
+                    out.writeLong(value);
+                }
+            } else {
+                if (value >= -32) {
+                    out.writeByte((int) value);
+                } else if (value >= Byte.MIN_VALUE) {
+                    out.writeByte(0xd0);
+                    out.writeByte((int) value);
+                } else if (value >= Short.MIN_VALUE) {
+                    out.writeByte(0xd1);
+                    out.writeShort((int) value);
+                } else if (value >= Integer.MIN_VALUE) {
+                    out.writeByte(0xd2);
+                    out.writeInt((int) value);
+                } else {
+                    out.writeByte(0xd3);
+                    out.writeLong(value);
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return this;
+    }
+
+    public byte[] toByteArray() {
+        return buffer.toByteArray();
+    }
+}
@@ -0,0 +1,141 @@
+package com.hello.suripu.analytics.utils;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Device ids and firmware versions producing the most bad readings of each data quality metric, over fixed intervals,
+ * shared by every processor of a worker so that the top of a metric covers all shards.
+ *
+ * Each metric has one {@link SpaceSavingSketch} for devices and one for firmwares, so memory only depends on the number
+ * of metrics and the capacity, not on the size of the fleet. Sketches of a metric are locked while adding to them,
+ * which only bad readings do.
+ */
+public class NoisyDevices {
+
+    private final List<String> metrics;
+    private final int capacity;
+    private final long intervalMillis;
+
+    private volatile MetricSketches[] current;
+    private volatile Snapshot latest;
+
+    // Guarded by this
+    private long intervalStartMillis;
+
+    /**
+     * @param metrics names of the data quality metrics, records refer to them by index
+     */
+    public NoisyDevices(final List<String> metrics, final int capacity, final long intervalMillis) {
+        this.metrics = ImmutableList.copyOf(metrics);
+        this.capacity = capacity;
+        this.intervalMillis = intervalMillis;
+        this.current = newSketches();
+        this.intervalStartMillis = System.currentTimeMillis();
+        this.latest = new Snapshot(intervalStartMillis, intervalStartMillis, ImmutableMap.<String, Top>of());
+    }
+
+    /**
+     * Safe to call from any thread.
+     */
+    public void record(final int metric, final String deviceId, final int firmwareVersion) {
+        final MetricSketches sketches = current[metric];
+        synchronized (sketches) {
+            sketches.devices.add(deviceId);
+            sketches.firmwares.add(Integer.toString(firmwareVersion));
+        }
+    }
+
+    /**
+     * Ends the current interval if it is over. Cheap enough to call after every batch.
+     */
+    public void rotateIfDue() {
+        final long nowMillis = System.currentTimeMillis();
+        synchronized (this) {
+            if (nowMillis - intervalStartMillis < intervalMillis) {
+                return;
+            }
+            final MetricSketches[] interval = current;
+            current = newSketches();
+            latest = snapshot(interval, intervalStartMillis, nowMillis, capacity);
+            intervalStartMillis = nowMillis;
+        }
+    }
+
+    /**
+     * @return top devices and firmwares of the last complete interval, by metric
+     */
+    public Snapshot latest() {
+        return latest;
+    }
+
+    /**
+     * @return top devices and firmwares of the interval in progress, by metric
+     */
+    public Snapshot current(final int k) {
+        final long startMillis;
+        final MetricSketches[] interval;
+        synchronized (this) {
+            startMillis = intervalStartMillis;
+            interval = current;
+        }
+        return snapshot(interval, startMillis, System.currentTimeMillis(), k);
+    }
+
+    private Snapshot snapshot(final MetricSketches[] interval, final long startMillis, final long endMillis, final int k) {
+        final Map<String, Top> tops = Maps.newTreeMap();
+        for (int metric = 0; metric < interval.length; metric++) {
+            final MetricSketches sketches = interval[metric];
+            synchronized (sketches) {
+                tops.put(metrics.get(metric), new Top(sketches.devices.total(), sketches.devices.top(k), sketches.firmwares.top(k)));
+            }
+        }
+        return new Snapshot(startMillis, endMillis, ImmutableMap.copyOf(tops));
+    }
+
+    private MetricSketches[] newSketches() {
+        final MetricSketches[] sketches = new MetricSketches[metrics.size()];
+        for (int metric = 0; metric < sketches.length; metric++) {
+            sketches[metric] = new MetricSketches(capacity);
+        }
+        return sketches;
+    }
+
+    private static class MetricSketches {
+        final SpaceSavingSketch devices;
+        final SpaceSavingSketch firmwares;
+
+        MetricSketches(final int capacity) {
+            this.devices = new SpaceSavingSketch(capacity);
+            this.firmwares = new SpaceSavingSketch(capacity);
+        }
+    }
+
+    public static class Top {
+        public final long badReadings;
+        public final List<SpaceSavingSketch.Entry> devices;
+        public final List<SpaceSavingSketch.Entry> firmwares;
+
+        Top(final long badReadings, final List<SpaceSavingSketch.Entry> devices, final List<SpaceSavingSketch.Entry> firmwares) {
+            this.badReadings = badReadings;
+            this.devices = ImmutableList.copyOf(devices);
+            this.firmwares = ImmutableList.copyOf(firmwares);
+        }
+    }
+
+    public static class Snapshot {
+        public final long startMillis;
+        public final long endMillis;
+        public final Map<String, Top> metrics;
+
+        Snapshot(final long startMillis, final long endMillis, final Map<String, Top> metrics) {
+            this.startMillis = startMillis;
+            this.endMillis = endMillis;
+            this.metrics = metrics;
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.hello.suripu.analytics.utils;
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+/**
+ * Round-trip latency and size of the pipelines (or scripts) sent by a tracker, named after the tracker class.
+ */
+public class PipelineMetrics {
+
+    private final Timer latency;
+    private final Histogram commands;
+
+    public PipelineMetrics(final Class<?> tracker, final MetricRegistry metricRegistry) {
+        this.latency = metricRegistry.timer(name(tracker, "pipeline-latency"));
+        this.commands = metricRegistry.histogram(name(tracker, "pipeline-commands"));
+    }
+
+    /**
+     * Starts timing a pipeline of the given number of queued commands, stop the context once it is synced.
+     */
+    public Timer.Context time(final int commandCount) {
+        commands.update(commandCount);
+        return latency.time();
+    }
+}
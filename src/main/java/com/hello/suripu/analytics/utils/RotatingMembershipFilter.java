@@ -0,0 +1,85 @@
+package com.hello.suripu.analytics.utils;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+
+import java.util.Collection;
+
+/**
+ * Approximate set of the strings seen within the last window or so, shared by every processor of a worker.
+ *
+ * Two bloom filters are kept, for the current and the previous window; a string is a member if either contains it and
+ * is always added to the current one. At every window boundary the previous filter is dropped and the current one
+ * becomes the previous, so members are remembered for one to two windows and never forgotten all at once. Memory is
+ * bounded by the two filters, sized for the given expected insertions per window.
+ */
+public class RotatingMembershipFilter {
+
+    private final int expectedInsertions;
+    private final double falsePositiveProbability;
+    private final long windowMillis;
+
+    // Guarded by this
+    private BloomFilter<CharSequence> current;
+    private BloomFilter<CharSequence> previous;
+    private long currentWindowStart;
+    private int currentInsertions = 0;
+
+    public RotatingMembershipFilter(final int expectedInsertions, final double falsePositiveProbability, final long windowMillis) {
+        this.expectedInsertions = expectedInsertions;
+        this.falsePositiveProbability = falsePositiveProbability;
+        this.windowMillis = windowMillis;
+        this.current = newFilter();
+        this.previous = newFilter();
+        this.currentWindowStart = System.currentTimeMillis();
+    }
+
+    /**
+     * Adds the strings not already members.
+     *
+     * @return how many were added
+     */
+    public synchronized int addAbsent(final Collection<String> values) {
+        rotateIfNeeded(System.currentTimeMillis());
+        int added = 0;
+        for (final String value : values) {
+            if (!current.mightContain(value) && !previous.mightContain(value)) {
+                current.put(value);
+                currentInsertions++;
+                added++;
+            }
+        }
+        return added;
+    }
+
+    /**
+     * @return insertions in the current window over the expected insertions, accuracy degrades past 1
+     */
+    public synchronized double fillRatio() {
+        return currentInsertions / (double) expectedInsertions;
+    }
+
+    /**
+     * @return estimated probability that a string never added is taken for a member, given what both filters hold
+     */
+    public synchronized double falsePositiveProbability() {
+        return 1.0 - ((1.0 - current.expectedFpp()) * (1.0 - previous.expectedFpp()));
+    }
+
+    private void rotateIfNeeded(final long nowMillis) {
+        final long elapsed = nowMillis - currentWindowStart;
+        if (elapsed < windowMillis) {
+            return;
+        }
+        // nothing seen during the last window is worth keeping after two of them
+        previous = (elapsed < 2 * windowMillis) ? current : newFilter();
+        current = newFilter();
+        currentInsertions = 0;
+        currentWindowStart = nowMillis - (elapsed % windowMillis);
+    }
+
+    private BloomFilter<CharSequence> newFilter() {
+        return BloomFilter.create(Funnels.stringFunnel(Charsets.UTF_8), expectedInsertions, falsePositiveProbability);
+    }
+}
@@ -0,0 +1,321 @@
+package com.hello.suripu.analytics.utils;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import com.hello.suripu.analytics.models.WifiInfo;
+import com.hello.suripu.core.models.FirmwareInfo;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import redis.clients.jedis.ShardedJedis;
+import redis.clients.jedis.ShardedJedisPipeline;
+import redis.clients.jedis.ShardedJedisPool;
+import redis.clients.jedis.Tuple;
+
+/**
+ * Spreads the fleet-wide keys of {@link ActiveDevicesTracker} over several redis nodes.
+ *
+ * Each fleet-wide key is split into a fixed number of logical sub-keys named {@code <key>:<n>}, where n is a
+ * consistent hash of the device id. Sub-keys are then placed on nodes by {@link ShardedJedisPool}. Per-device keys
+ * ({@code device_id:<id>}) keep their name. Use the merge helpers to read a whole key back, including the per-version
+ * firmware sorted sets.
+ *
+ * Batches are sent as one plain pipeline per node; there is no MULTI/EXEC across nodes. Hourly actives are only
+ * kept as sets.
+ */
+public class ShardedActiveDevicesTracker implements DeviceTracker {
+
+    private static final HashFunction DEVICE_ID_HASH = Hashing.murmur3_32();
+    private final static Logger LOGGER = LoggerFactory.getLogger(ShardedActiveDevicesTracker.class);
+
+    private final ShardedJedisPool shardedJedisPool;
+    private final int logicalShards;
+    private final LastSeenThrottle senseThrottle;
+    private final LastSeenThrottle pillThrottle;
+    private final PipelineMetrics pipelineMetrics;
+
+    public ShardedActiveDevicesTracker(final ShardedJedisPool shardedJedisPool, final int logicalShards, final LastSeenThrottle senseThrottle, final LastSeenThrottle pillThrottle, final MetricRegistry metricRegistry) {
+        this.shardedJedisPool = shardedJedisPool;
+        this.pipelineMetrics = new PipelineMetrics(ShardedActiveDevicesTracker.class, metricRegistry);
+        this.logicalShards = logicalShards;
+        this.senseThrottle = senseThrottle;
+        this.pillThrottle = pillThrottle;
+    }
+
+    String subKey(final String key, final String deviceId) {
+        final int shard = Hashing.consistentHash(DEVICE_ID_HASH.hashString(deviceId, Charsets.UTF_8), logicalShards);
+        return key + ":" + shard;
+    }
+
+    private List<String> subKeys(final String key) {
+        final List<String> keys = Lists.newArrayListWithExpectedSize(logicalShards);
+        for (int shard = 0; shard < logicalShards; shard++) {
+            keys.add(key + ":" + shard);
+        }
+        return keys;
+    }
+
+    @Override
+    public boolean trackSenses(final Map<String, Long> activeSenses) {
+        return trackDevices(ActiveDevicesTracker.SENSE_ACTIVE_SET_KEY, ActiveDevicesTracker.HOURLY_ACTIVE_SENSE_SET_KEY_PREFIX, activeSenses, senseThrottle);
+    }
+
+    @Override
+    public boolean trackPills(final Map<String, Long> activePills) {
+        return trackDevices(ActiveDevicesTracker.PILL_ACTIVE_SET_KEY, ActiveDevicesTracker.HOURLY_ACTIVE_PILL_SET_KEY_PREFIX, activePills, pillThrottle);
+    }
+
+    private boolean trackDevices(final String activeKey, final String hourlyActiveKeySetPrefix, final Map<String, Long> devicesSeen, final LastSeenThrottle throttle) {
+        final DateTime dateTimeNow = DateTime.now(DateTimeZone.UTC);
+        final String hourlyActiveSetKey = ActiveDevicesTracker.hourlyKey(hourlyActiveKeySetPrefix, dateTimeNow);
+        final Long hourlyActiveKeySetExpirationTimestampSeconds = ActiveDevicesTracker.hourlyKeyExpirationSeconds(dateTimeNow);
+
+        final Map<String, Long> scoresToWrite = Maps.newHashMapWithExpectedSize(devicesSeen.size());
+        final List<String> hourlyMembersToWrite = Lists.newArrayListWithExpectedSize(devicesSeen.size());
+        for(final Map.Entry<String, Long> entry : devicesSeen.entrySet()) {
+            if (throttle.shouldAdvanceScore(entry.getKey(), entry.getValue())) {
+                scoresToWrite.put(entry.getKey(), entry.getValue());
+            }
+            if (throttle.shouldAddToHourlySet(entry.getKey(), hourlyActiveSetKey)) {
+                hourlyMembersToWrite.add(entry.getKey());
+            }
+        }
+        if (scoresToWrite.isEmpty() && hourlyMembersToWrite.isEmpty()) {
+            return true;
+        }
+
+        final ShardedJedis shardedJedis = shardedJedisPool.getResource();
+        try {
+            final ShardedJedisPipeline pipe = shardedJedis.pipelined();
+            for(final Map.Entry<String, Long> entry : scoresToWrite.entrySet()) {
+                pipe.zadd(subKey(activeKey, entry.getKey()), entry.getValue(), entry.getKey());
+            }
+            final Set<String> touchedHourlyKeys = Sets.newHashSet();
+            for(final String deviceId : hourlyMembersToWrite) {
+                final String hourlySubKey = subKey(hourlyActiveSetKey, deviceId);
+                pipe.sadd(hourlySubKey, deviceId);
+                touchedHourlyKeys.add(hourlySubKey);
+            }
+            for(final String hourlySubKey : touchedHourlyKeys) {
+                pipe.expireAt(hourlySubKey, hourlyActiveKeySetExpirationTimestampSeconds);
+            }
+            final Timer.Context context = pipelineMetrics.time(scoresToWrite.size() + hourlyMembersToWrite.size() + touchedHourlyKeys.size());
+            try {
+                pipe.sync();
+            } finally {
+                context.stop();
+            }
+            throttle.recordWrites(scoresToWrite, hourlyMembersToWrite, hourlyActiveSetKey);
+        } catch (Exception exception) {
+            LOGGER.error("error=redis-unknown-failure key={} message={}", activeKey, exception.getMessage());
+            return false;
+        } finally {
+            shardedJedis.close();
+        }
+        LOGGER.debug("action=active-devices-tracked device_count={} scores_written={} hourly_members_written={} key={}",
+                devicesSeen.size(), scoresToWrite.size(), hourlyMembersToWrite.size(), activeKey);
+        return true;
+    }
+
+    @Override
+    public boolean trackFirmwares(final Map<String, FirmwareInfo> seenFirmwares) {
+        final ShardedJedis shardedJedis = shardedJedisPool.getResource();
+        try {
+            final ShardedJedisPipeline pipe = shardedJedis.pipelined();
+            int commands = 0;
+            for(final FirmwareInfo fwEntry : seenFirmwares.values()) {
+                final String deviceKey = ActiveDevicesTracker.DEVICE_ID_KEY_BASE.concat(fwEntry.device_id);
+                if (!fwEntry.middleVersion.equals("0")) {
+                    pipe.zadd(subKey(ActiveDevicesTracker.FIRMWARES_SEEN_SET_KEY, fwEntry.device_id), fwEntry.timestamp, fwEntry.middleVersion);
+                    pipe.hset(deviceKey, "middle_version", fwEntry.middleVersion);
+                    pipe.hset(deviceKey, "timestamp", fwEntry.timestamp.toString());
+                    pipe.zadd(subKey(ActiveDevicesTracker.MIDDLE_FIRMWARE_KEY_BASE.concat(fwEntry.middleVersion), fwEntry.device_id), fwEntry.timestamp, fwEntry.device_id);
+                    commands += 4;
+                }
+                if (!fwEntry.topVersion.equals("0")) {
+                    pipe.zadd(subKey(ActiveDevicesTracker.TOP_FIRMWARES_SEEN_SET_KEY, fwEntry.device_id), fwEntry.timestamp, fwEntry.topVersion);
+                    pipe.hset(deviceKey, "top_version", fwEntry.topVersion);
+                    pipe.hset(deviceKey, "timestamp", fwEntry.timestamp.toString());
+                    pipe.zadd(subKey(ActiveDevicesTracker.TOP_FIRMWARE_KEY_BASE.concat(fwEntry.topVersion), fwEntry.device_id), fwEntry.timestamp, fwEntry.device_id);
+                    commands += 4;
+                }
+            }
+            final Timer.Context context = pipelineMetrics.time(commands);
+            try {
+                pipe.sync();
+            } finally {
+                context.stop();
+            }
+        } catch (Exception exception) {
+            LOGGER.error("error=redis-unknown-failure message={}", exception.getMessage());
+            return false;
+        } finally {
+            shardedJedis.close();
+        }
+        LOGGER.debug("action=firmware-info-tracked device_count={}", seenFirmwares.size());
+        return true;
+    }
+
+    @Override
+    public boolean trackWifiInfo(final Map<String, WifiInfo> wifiInfos) {
+        final ShardedJedis shardedJedis = shardedJedisPool.getResource();
+        try {
+            final ShardedJedisPipeline pipe = shardedJedis.pipelined();
+            for(final Map.Entry<String, WifiInfo> entry : wifiInfos.entrySet()) {
+                final WifiInfo wifiInfo = entry.getValue();
+                pipe.hset(subKey(ActiveDevicesTracker.WIFI_INFO_HASH_KEY, entry.getKey()), entry.getKey(), String.format("%s : %s", wifiInfo.ssid, wifiInfo.rssi));
+            }
+            final Timer.Context context = pipelineMetrics.time(wifiInfos.size());
+            try {
+                pipe.sync();
+            } finally {
+                context.stop();
+            }
+        } catch (Exception exception) {
+            LOGGER.error("error=redis-unknown-failure message={}", exception.getMessage());
+            return false;
+        } finally {
+            shardedJedis.close();
+        }
+        LOGGER.debug("action=wifi-info-tracked device_count={}", wifiInfos.size());
+        return true;
+    }
+
+    @Override
+    public boolean trackUptime(final Map<String, Integer> uptimes) {
+        final ShardedJedis shardedJedis = shardedJedisPool.getResource();
+        try {
+            final ShardedJedisPipeline pipe = shardedJedis.pipelined();
+            for(final Map.Entry<String, Integer> entry : uptimes.entrySet()) {
+                pipe.hset(subKey(ActiveDevicesTracker.SENSE_UPTIME_HSET_KEY, entry.getKey()), entry.getKey(), String.valueOf(entry.getValue()));
+            }
+            final Timer.Context context = pipelineMetrics.time(uptimes.size());
+            try {
+                pipe.sync();
+            } finally {
+                context.stop();
+            }
+        } catch (Exception exception) {
+            LOGGER.error("error=redis-unknown-failure message={}", exception.getMessage());
+            return false;
+        } finally {
+            shardedJedis.close();
+        }
+        LOGGER.debug("action=track-uptime num_senses={}", uptimes.size());
+        return true;
+    }
+
+    @Override
+    public boolean flush() {
+        return true;
+    }
+
+    /**
+     * @return last seen millis of every sense seen at or after the given time, merged across sub-keys
+     */
+    public Map<String, Long> activeSensesSince(final long sinceMillis) {
+        return mergeSortedSets(ActiveDevicesTracker.SENSE_ACTIVE_SET_KEY, sinceMillis);
+    }
+
+    /**
+     * @return last seen millis of every pill seen at or after the given time, merged across sub-keys
+     */
+    public Map<String, Long> activePillsSince(final long sinceMillis) {
+        return mergeSortedSets(ActiveDevicesTracker.PILL_ACTIVE_SET_KEY, sinceMillis);
+    }
+
+    /**
+     * @return middle firmware versions seen at or after the given time, with the latest time they were seen
+     */
+    public Map<String, Long> firmwaresSeenSince(final long sinceMillis) {
+        return mergeSortedSets(ActiveDevicesTracker.FIRMWARES_SEEN_SET_KEY, sinceMillis);
+    }
+
+    /**
+     * @return top firmware versions seen at or after the given time, with the latest time they were seen
+     */
+    public Map<String, Long> topFirmwaresSeenSince(final long sinceMillis) {
+        return mergeSortedSets(ActiveDevicesTracker.TOP_FIRMWARES_SEEN_SET_KEY, sinceMillis);
+    }
+
+    /**
+     * @return last seen millis of every sense seen running the given middle firmware at or after the given time
+     */
+    public Map<String, Long> middleFirmwareDevicesSince(final String version, final long sinceMillis) {
+        return mergeSortedSets(ActiveDevicesTracker.MIDDLE_FIRMWARE_KEY_BASE.concat(version), sinceMillis);
+    }
+
+    /**
+     * @return last seen millis of every sense seen running the given top firmware at or after the given time
+     */
+    public Map<String, Long> topFirmwareDevicesSince(final String version, final long sinceMillis) {
+        return mergeSortedSets(ActiveDevicesTracker.TOP_FIRMWARE_KEY_BASE.concat(version), sinceMillis);
+    }
+
+    public Map<String, String> wifiInfo() {
+        return mergeHashes(ActiveDevicesTracker.WIFI_INFO_HASH_KEY);
+    }
+
+    public Map<String, String> uptimes() {
+        return mergeHashes(ActiveDevicesTracker.SENSE_UPTIME_HSET_KEY);
+    }
+
+    public Set<String> hourlyActiveSenses(final DateTime hour) {
+        final Set<String> members = Sets.newHashSet();
+        final ShardedJedis shardedJedis = shardedJedisPool.getResource();
+        try {
+            for (final String key : subKeys(ActiveDevicesTracker.hourlyKey(ActiveDevicesTracker.HOURLY_ACTIVE_SENSE_SET_KEY_PREFIX, hour))) {
+                members.addAll(shardedJedis.smembers(key));
+            }
+        } finally {
+            shardedJedis.close();
+        }
+        return members;
+    }
+
+    private Map<String, Long> mergeSortedSets(final String key, final long minScore) {
+        final Map<String, Long> merged = Maps.newHashMap();
+        final ShardedJedis shardedJedis = shardedJedisPool.getResource();
+        try {
+            for (final String subKey : subKeys(key)) {
+                for (final Tuple tuple : shardedJedis.zrangeByScoreWithScores(subKey, minScore, Double.POSITIVE_INFINITY)) {
+                    final Long score = (long) tuple.getScore();
+                    final Long previous = merged.get(tuple.getElement());
+                    if (previous == null || previous < score) {
+                        merged.put(tuple.getElement(), score);
+                    }
+                }
+            }
+        } finally {
+            shardedJedis.close();
+        }
+        return merged;
+    }
+
+    private Map<String, String> mergeHashes(final String key) {
+        final Map<String, String> merged = Maps.newHashMap();
+        final ShardedJedis shardedJedis = shardedJedisPool.getResource();
+        try {
+            for (final String subKey : subKeys(key)) {
+                merged.putAll(shardedJedis.hgetAll(subKey));
+            }
+        } finally {
+            shardedJedis.close();
+        }
+        return merged;
+    }
+}
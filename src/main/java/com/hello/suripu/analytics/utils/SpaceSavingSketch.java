@@ -0,0 +1,102 @@
+package com.hello.suripu.analytics.utils;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Space-Saving heavy hitters (Metwally et al.): counts at most capacity keys, a new key takes over the counter of the
+ * least counted one and inherits its count as overestimation error. Any key seen more than total / capacity times is
+ * guaranteed to be counted, and each count is at most error above the true one.
+ *
+ * Memory is fixed by capacity whatever the number of distinct keys. Not thread-safe.
+ */
+public class SpaceSavingSketch {
+
+    private final String[] keys;
+    private final long[] counts;
+    private final long[] errors;
+    private final Map<String, Integer> slots;
+    private int size = 0;
+    private long total = 0L;
+
+    public SpaceSavingSketch(final int capacity) {
+        this.keys = new String[capacity];
+        this.counts = new long[capacity];
+        this.errors = new long[capacity];
+        this.slots = Maps.newHashMapWithExpectedSize(capacity);
+    }
+
+    public void add(final String key) {
+        total++;
+        final Integer slot = slots.get(key);
+        if (slot != null) {
+            counts[slot]++;
+            return;
+        }
+        if (size < keys.length) {
+            keys[size] = key;
+            counts[size] = 1L;
+            errors[size] = 0L;
+            slots.put(key, size);
+            size++;
+            return;
+        }
+
+        // capacity is small and only bad readings get here, a scan is cheaper than keeping counters sorted
+        int min = 0;
+        for (int i = 1; i < size; i++) {
+            if (counts[i] < counts[min]) {
+                min = i;
+            }
+        }
+        slots.remove(keys[min]);
+        keys[min] = key;
+        errors[min] = counts[min];
+        counts[min]++;
+        slots.put(key, min);
+    }
+
+    /**
+     * @return total number of keys added, counted or not
+     */
+    public long total() {
+        return total;
+    }
+
+    /**
+     * @return the k most counted keys, most counted first
+     */
+    public List<Entry> top(final int k) {
+        final List<Entry> entries = Lists.newArrayListWithExpectedSize(size);
+        for (int i = 0; i < size; i++) {
+            entries.add(new Entry(keys[i], counts[i], errors[i]));
+        }
+        Collections.sort(entries, MOST_COUNTED_FIRST);
+        return entries.subList(0, Math.min(k, entries.size()));
+    }
+
+    private static final Comparator<Entry> MOST_COUNTED_FIRST = new Comparator<Entry>() {
+        @Override
+        public int compare(final Entry first, final Entry second) {
+            return Long.compare(second.count, first.count);
+        }
+    };
+
+    public static class Entry {
+        public final String key;
+        public final long count;
+        // count - error is a lower bound of the true count
+        public final long error;
+
+        Entry(final String key, final long count, final long error) {
+            this.key = key;
+            this.count = count;
+            this.error = error;
+        }
+    }
+}
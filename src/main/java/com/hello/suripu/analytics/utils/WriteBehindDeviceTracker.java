@@ -0,0 +1,319 @@
+package com.hello.suripu.analytics.utils;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.hello.suripu.analytics.models.WifiInfo;
+import com.hello.suripu.core.models.FirmwareInfo;
+import io.dropwizard.lifecycle.Managed;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+/**
+ * Aggregates device state from every shard processor and writes it to the delegate tracker from a single
+ * background thread.
+ *
+ * Only the latest state per device is kept between flushes, so a Sense reporting on several shards or in
+ * several batches within one interval costs a single write. A flush happens every interval, or earlier once
+ * the number of pending devices reaches the configured maximum.
+ *
+ * Track calls return as soon as the state is queued. {@link #flush()} writes the pending state synchronously on the
+ * calling thread and waits for the delegate to acknowledge it. A flush the delegate did not acknowledge is merged
+ * back into the pending state, newer state winning. Flushes then back off until the next interval: size-triggered
+ * flushes are suppressed and {@link #flush()} fails fast, so a dead redis is tried once per interval.
+ */
+public class WriteBehindDeviceTracker implements DeviceTracker, Managed {
+
+    private final static Logger LOGGER = LoggerFactory.getLogger(WriteBehindDeviceTracker.class);
+
+    private final DeviceTracker delegate;
+    private final long flushIntervalMillis;
+    private final int maxPendingDevices;
+
+    private final ScheduledExecutorService executorService;
+    private final ReadWriteLock swapLock = new ReentrantReadWriteLock();
+    private final AtomicBoolean flushRequested = new AtomicBoolean(false);
+
+    private final Histogram flushSize;
+    private final Timer flushLatency;
+    private final Meter requeuedDevices;
+
+    private volatile PendingState pending = new PendingState();
+    // System.nanoTime() until which flushes back off, after one was not acknowledged
+    private volatile long backoffUntilNanos = System.nanoTime();
+
+    public WriteBehindDeviceTracker(final DeviceTracker delegate, final long flushIntervalMillis, final int maxPendingDevices, final MetricRegistry metrics) {
+        this.delegate = delegate;
+        this.flushIntervalMillis = flushIntervalMillis;
+        this.maxPendingDevices = maxPendingDevices;
+        this.executorService = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setNameFormat("device-tracker-flush-%d").setDaemon(true).build());
+
+        this.flushSize = metrics.histogram(name(WriteBehindDeviceTracker.class, "flush-size"));
+        this.flushLatency = metrics.timer(name(WriteBehindDeviceTracker.class, "flush-latency"));
+        this.requeuedDevices = metrics.meter(name(WriteBehindDeviceTracker.class, "requeued-devices"));
+        metrics.register(name(WriteBehindDeviceTracker.class, "queue-depth"), new Gauge<Integer>() {
+            @Override
+            public Integer getValue() {
+                return pendingDevices();
+            }
+        });
+    }
+
+    @Override
+    public boolean trackSenses(final Map<String, Long> activeSenses) {
+        swapLock.readLock().lock();
+        try {
+            mergeLatestTimestamps(pending.activeSenses, activeSenses);
+            pending.deviceIds.addAll(activeSenses.keySet());
+        } finally {
+            swapLock.readLock().unlock();
+        }
+        requestFlushIfFull();
+        return true;
+    }
+
+    @Override
+    public boolean trackPills(final Map<String, Long> activePills) {
+        swapLock.readLock().lock();
+        try {
+            mergeLatestTimestamps(pending.activePills, activePills);
+            pending.deviceIds.addAll(activePills.keySet());
+        } finally {
+            swapLock.readLock().unlock();
+        }
+        requestFlushIfFull();
+        return true;
+    }
+
+    @Override
+    public boolean trackFirmwares(final Map<String, FirmwareInfo> seenFirmwares) {
+        swapLock.readLock().lock();
+        try {
+            mergeLatestFirmwares(pending.firmwares, seenFirmwares);
+            pending.deviceIds.addAll(seenFirmwares.keySet());
+        } finally {
+            swapLock.readLock().unlock();
+        }
+        requestFlushIfFull();
+        return true;
+    }
+
+    @Override
+    public boolean trackWifiInfo(final Map<String, WifiInfo> wifiInfos) {
+        swapLock.readLock().lock();
+        try {
+            pending.wifiInfos.putAll(wifiInfos);
+            pending.deviceIds.addAll(wifiInfos.keySet());
+        } finally {
+            swapLock.readLock().unlock();
+        }
+        requestFlushIfFull();
+        return true;
+    }
+
+    @Override
+    public boolean trackUptime(final Map<String, Integer> uptimes) {
+        swapLock.readLock().lock();
+        try {
+            pending.uptimes.putAll(uptimes);
+            pending.deviceIds.addAll(uptimes.keySet());
+        } finally {
+            swapLock.readLock().unlock();
+        }
+        requestFlushIfFull();
+        return true;
+    }
+
+    @Override
+    public void start() throws Exception {
+        executorService.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                flushPending();
+            }
+        }, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+        LOGGER.info("action=write-behind-started flush_interval_millis={} max_pending_devices={}", flushIntervalMillis, maxPendingDevices);
+    }
+
+    @Override
+    public void stop() throws Exception {
+        executorService.shutdown();
+        executorService.awaitTermination(flushIntervalMillis * 2, TimeUnit.MILLISECONDS);
+        flushPending();
+        LOGGER.info("action=write-behind-stopped");
+    }
+
+    private static void mergeLatestTimestamps(final ConcurrentHashMap<String, Long> target, final Map<String, Long> updates) {
+        for(final Map.Entry<String, Long> entry : updates.entrySet()) {
+            final Long timestamp = entry.getValue();
+            Long previous = target.putIfAbsent(entry.getKey(), timestamp);
+            while (previous != null && previous < timestamp) {
+                if (target.replace(entry.getKey(), previous, timestamp)) {
+                    break;
+                }
+                previous = target.get(entry.getKey());
+            }
+        }
+    }
+
+    private static void mergeLatestFirmwares(final ConcurrentHashMap<String, FirmwareInfo> target, final Map<String, FirmwareInfo> updates) {
+        for(final Map.Entry<String, FirmwareInfo> entry : updates.entrySet()) {
+            final FirmwareInfo firmwareInfo = entry.getValue();
+            FirmwareInfo previous = target.putIfAbsent(entry.getKey(), firmwareInfo);
+            while (previous != null && previous.timestamp <= firmwareInfo.timestamp) {
+                if (target.replace(entry.getKey(), previous, firmwareInfo)) {
+                    break;
+                }
+                previous = target.get(entry.getKey());
+            }
+        }
+    }
+
+    private int pendingDevices() {
+        return pending.size();
+    }
+
+    private boolean backingOff() {
+        return System.nanoTime() - backoffUntilNanos < 0;
+    }
+
+    private void requestFlushIfFull() {
+        if (pendingDevices() < maxPendingDevices || backingOff() || !flushRequested.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            executorService.execute(new Runnable() {
+                @Override
+                public void run() {
+                    flushPending();
+                }
+            });
+        } catch (Exception e) {
+            flushRequested.set(false);
+            LOGGER.warn("error=write-behind-flush-rejected message={}", e.getMessage());
+        }
+    }
+
+    @Override
+    public boolean flush() {
+        if (backingOff() && pendingDevices() > 0) {
+            return false;
+        }
+        return flushPending();
+    }
+
+    /**
+     * Writes the pending state to the delegate on the calling thread, requeueing it unless the delegate acknowledged
+     * the writes.
+     */
+    private synchronized boolean flushPending() {
+        flushRequested.set(false);
+
+        final PendingState toFlush;
+        swapLock.writeLock().lock();
+        try {
+            toFlush = pending;
+            pending = new PendingState();
+        } finally {
+            swapLock.writeLock().unlock();
+        }
+
+        final int size = toFlush.size();
+        if (size == 0) {
+            return delegate.flush();
+        }
+
+        boolean flushed = false;
+        final Timer.Context context = flushLatency.time();
+        try {
+            // every kind is written even if an earlier one failed, the whole state is requeued on failure
+            boolean written = true;
+            if (!toFlush.activeSenses.isEmpty()) {
+                written &= delegate.trackSenses(toFlush.activeSenses);
+            }
+            if (!toFlush.activePills.isEmpty()) {
+                written &= delegate.trackPills(toFlush.activePills);
+            }
+            if (!toFlush.firmwares.isEmpty()) {
+                written &= delegate.trackFirmwares(toFlush.firmwares);
+            }
+            if (!toFlush.wifiInfos.isEmpty()) {
+                written &= delegate.trackWifiInfo(toFlush.wifiInfos);
+            }
+            if (!toFlush.uptimes.isEmpty()) {
+                written &= delegate.trackUptime(toFlush.uptimes);
+            }
+            flushed = delegate.flush() && written;
+        } catch (Exception e) {
+            LOGGER.error("error=write-behind-flush-failure message={}", e.getMessage());
+        } finally {
+            context.stop();
+        }
+
+        if (!flushed) {
+            requeue(toFlush);
+            requeuedDevices.mark(size);
+            backoffUntilNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+            LOGGER.warn("error=write-behind-flush-unacknowledged size={} backoff_millis={}", size, flushIntervalMillis);
+            return false;
+        }
+        flushSize.update(size);
+        LOGGER.debug("action=write-behind-flushed size={}", size);
+        return true;
+    }
+
+    /**
+     * Merges state that failed to flush back into the pending state, without overwriting what was tracked since.
+     */
+    private void requeue(final PendingState failed) {
+        swapLock.readLock().lock();
+        try {
+            mergeLatestTimestamps(pending.activeSenses, failed.activeSenses);
+            mergeLatestTimestamps(pending.activePills, failed.activePills);
+            mergeLatestFirmwares(pending.firmwares, failed.firmwares);
+            for (final Map.Entry<String, WifiInfo> entry : failed.wifiInfos.entrySet()) {
+                pending.wifiInfos.putIfAbsent(entry.getKey(), entry.getValue());
+            }
+            for (final Map.Entry<String, Integer> entry : failed.uptimes.entrySet()) {
+                pending.uptimes.putIfAbsent(entry.getKey(), entry.getValue());
+            }
+            pending.deviceIds.addAll(failed.deviceIds);
+        } finally {
+            swapLock.readLock().unlock();
+        }
+    }
+
+    private static class PendingState {
+        final ConcurrentHashMap<String, Long> activeSenses = new ConcurrentHashMap<>();
+        final ConcurrentHashMap<String, Long> activePills = new ConcurrentHashMap<>();
+        final ConcurrentHashMap<String, FirmwareInfo> firmwares = new ConcurrentHashMap<>();
+        final ConcurrentHashMap<String, WifiInfo> wifiInfos = new ConcurrentHashMap<>();
+        final ConcurrentHashMap<String, Integer> uptimes = new ConcurrentHashMap<>();
+        // A Sense has senses, firmware, wifi and uptime entries, it counts once
+        final Set<String> deviceIds = Sets.newConcurrentHashSet();
+
+        /**
+         * @return number of distinct devices with pending state
+         */
+        int size() {
+            return deviceIds.size();
+        }
+    }
+}
@@ -0,0 +1,34 @@
+-- KEYS[1]: active devices sorted set
+-- KEYS[2]: hourly active devices set
+-- KEYS[3]: hourly active devices hyperloglog
+-- KEYS[4]: daily active devices hyperloglog
+-- ARGV[1]: hourly keys expiration, unix seconds
+-- ARGV[2]: msgpack array of (device id, last seen millis or -1 to skip, 1 to add to the hourly set) triples
+-- ARGV[3]: daily key expiration, unix seconds
+-- ARGV[4]: msgpack array of device ids to add to the hourly hyperloglog
+local batch = cmsgpack.unpack(ARGV[2])
+local added = 0
+for i = 1, #batch, 3 do
+    if batch[i + 1] >= 0 then
+        redis.call('ZADD', KEYS[1], batch[i + 1], batch[i])
+    end
+    if batch[i + 2] == 1 then
+        redis.call('SADD', KEYS[2], batch[i])
+        added = added + 1
+    end
+end
+if added > 0 then
+    redis.call('EXPIREAT', KEYS[2], ARGV[1])
+end
+
+local members = cmsgpack.unpack(ARGV[4])
+if #members > 0 then
+    -- unpack() is bounded by the lua C stack, add in chunks
+    for i = 1, #members, 1000 do
+        redis.call('PFADD', KEYS[3], unpack(members, i, math.min(i + 999, #members)))
+    end
+    redis.call('EXPIREAT', KEYS[3], ARGV[1])
+    redis.call('PFMERGE', KEYS[4], KEYS[3])
+    redis.call('EXPIREAT', KEYS[4], ARGV[3])
+end
+return #batch / 3
@@ -0,0 +1,28 @@
+-- KEYS[1]: middle firmwares seen sorted set
+-- KEYS[2]: top firmwares seen sorted set
+-- KEYS[3..n]: per device hashes and per version sorted sets of the batch, each listed once
+-- ARGV[1]: msgpack array of (device id, device hash key index, middle version, middle version key index,
+--          top version, top version key index, timestamp millis) tuples, a key index of 0 skips that version
+local batch = cmsgpack.unpack(ARGV[1])
+for i = 1, #batch, 7 do
+    local device_id = batch[i]
+    local device_key = KEYS[batch[i + 1]]
+    local middle_version = batch[i + 2]
+    local middle_key_index = batch[i + 3]
+    local top_version = batch[i + 4]
+    local top_key_index = batch[i + 5]
+    local timestamp = batch[i + 6]
+    if middle_key_index > 0 then
+        redis.call('ZADD', KEYS[1], timestamp, middle_version)
+        redis.call('HSET', device_key, 'middle_version', middle_version)
+        redis.call('HSET', device_key, 'timestamp', timestamp)
+        redis.call('ZADD', KEYS[middle_key_index], timestamp, device_id)
+    end
+    if top_key_index > 0 then
+        redis.call('ZADD', KEYS[2], timestamp, top_version)
+        redis.call('HSET', device_key, 'top_version', top_version)
+        redis.call('HSET', device_key, 'timestamp', timestamp)
+        redis.call('ZADD', KEYS[top_key_index], timestamp, device_id)
+    end
+end
+return #batch / 7
@@ -0,0 +1,7 @@
+-- KEYS[1]: uptime hash
+-- ARGV[1]: msgpack array of (device id, uptime seconds) pairs
+local batch = cmsgpack.unpack(ARGV[1])
+for i = 1, #batch, 2 do
+    redis.call('HSET', KEYS[1], batch[i], batch[i + 1])
+end
+return #batch / 2
@@ -0,0 +1,7 @@
+-- KEYS[1]: wifi info hash
+-- ARGV[1]: msgpack array of (device id, ssid, rssi) triples
+local batch = cmsgpack.unpack(ARGV[1])
+for i = 1, #batch, 3 do
+    redis.call('HSET', KEYS[1], batch[i], batch[i + 1] .. ' : ' .. batch[i + 2])
+end
+return #batch / 3